@@ -0,0 +1,82 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+
+/**
+ * Measures the cost of downsampling a value series of a single gauge with {@link Downsampler}, using a random walk with occasional peaks
+ * and one value per minute.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownsamplerBenchmark {
+	/** the amount of values in the series */
+	@Param({"10000", "100000", "1000000"})
+	private int _valueCount;
+	/** the maximum amount of values after downsampling */
+	@Param({"500", "2000"})
+	private int _maxPoints;
+	private List<GaugeValue> _values = null;
+
+	/**
+	 * Generate the series
+	 */
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+		_values = new ArrayList<>(_valueCount);
+		long time = 1400000000000L;
+		double value = 0;
+		for(int i=0; i<_valueCount; ++i){
+			value += random.nextGaussian();
+			double sample = (random.nextInt(1000) == 0 ? value + 100 : value);
+			_values.add(new GaugeValue(String.valueOf(sample), sample, new Date(time + i * 60000L)));
+		}
+	}
+
+	/**
+	 * 
+	 * @return the downsampled series
+	 */
+	@Benchmark
+	public List<GaugeValue> largestTriangleThreeBuckets() {
+		return Downsampler.largestTriangleThreeBuckets(_values, _maxPoints);
+	}
+}
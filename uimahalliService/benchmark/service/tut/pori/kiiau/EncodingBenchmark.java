@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+import com.google.gson.Gson;
+
+import core.tut.pori.utils.JSONFormatter;
+
+/**
+ * Compares the serialization of measurement responses in the object encoding ({@value service.tut.pori.kiiau.Definitions#ENCODING_OBJECTS})
+ * with the columnar encodings ({@value service.tut.pori.kiiau.Definitions#ENCODING_COLUMNAR} and {@value service.tut.pori.kiiau.Definitions#ENCODING_COLUMNAR_DELTA}).
+ * The columnar benchmarks include the conversion of the values into columns.
+ * 
+ * The response sizes, plain and gzip compressed, are reported as the secondary results "bytes" and "gzipBytes" of each benchmark, see {@link ResponseSize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+	private static final int GAUGE_COUNT = 3;
+	/** the amount of values per gauge */
+	@Param({"1000", "10000"})
+	private int _valueCount;
+	private Gson _gson = null;
+	private List<List<GaugeValue>> _values = null;
+
+	/**
+	 * The size of the response of a benchmark. JMH sums the event counters of the measurement iterations, so the size is measured only on the first measurement iteration,
+	 * from the first response of the iteration.
+	 * 
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class ResponseSize {
+		/** the size of the response in bytes */
+		public long bytes = 0;
+		/** the size of the gzip compressed response in bytes */
+		public long gzipBytes = 0;
+		private boolean _measure = false;
+		private boolean _measured = false;
+
+		/**
+		 * Reset the sizes, the sizes of the previous iteration have already been collected
+		 * 
+		 * @param params
+		 */
+		@Setup(Level.Iteration)
+		public void reset(IterationParams params) {
+			bytes = 0;
+			gzipBytes = 0;
+			_measure = (!_measured && params.getType() == IterationType.MEASUREMENT);
+		}
+
+		/**
+		 * Measure the size of the response, if not already measured
+		 * 
+		 * @param response
+		 */
+		void measure(String response) {
+			if(!_measure){
+				return;
+			}
+			_measure = false;
+			_measured = true;
+			byte[] data = response.getBytes(StandardCharsets.UTF_8);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try(GZIPOutputStream out = new GZIPOutputStream(compressed)){
+				out.write(data);
+			} catch (IOException ex) { // not thrown by ByteArrayOutputStream
+				throw new IllegalStateException(ex);
+			}
+			bytes = data.length;
+			gzipBytes = compressed.size();
+		}
+	}
+
+	/**
+	 * Generate the values, one value per minute for each gauge
+	 */
+	@Setup
+	public void setup() {
+		_gson = JSONFormatter.createGsonSerializer();
+		Random random = new Random(1);
+		long time = 1400000000000L;
+		_values = new ArrayList<>(GAUGE_COUNT);
+		for(int g=0; g<GAUGE_COUNT; ++g){
+			List<GaugeValue> values = new ArrayList<>(_valueCount);
+			double value = 20;
+			for(int i=0; i<_valueCount; ++i){
+				value += Math.round(random.nextGaussian() * 10) / 100.0;
+				values.add(new GaugeValue(String.valueOf(value), value, new Date(time + i * 60000L)));
+			}
+			_values.add(values);
+		}
+	}
+
+	/**
+	 * 
+	 * @param size
+	 * @return the response in object encoding
+	 */
+	@Benchmark
+	public String objects(ResponseSize size) {
+		String response = _gson.toJson(createMeters());
+		size.measure(response);
+		return response;
+	}
+
+	/**
+	 * 
+	 * @param size
+	 * @return the response in columnar encoding
+	 */
+	@Benchmark
+	public String columnar(ResponseSize size) {
+		Meters meters = createMeters();
+		UimahalliCore.setColumns(meters, false);
+		String response = _gson.toJson(meters);
+		size.measure(response);
+		return response;
+	}
+
+	/**
+	 * 
+	 * @param size
+	 * @return the response in columnar encoding with delta encoded timestamps
+	 */
+	@Benchmark
+	public String columnarDelta(ResponseSize size) {
+		Meters meters = createMeters();
+		UimahalliCore.setColumns(meters, true);
+		String response = _gson.toJson(meters);
+		size.measure(response);
+		return response;
+	}
+
+	/**
+	 * 
+	 * @return new meters sharing the generated values
+	 */
+	private Meters createMeters() {
+		Meter meter = new Meter("meter");
+		for(int g=0; g<GAUGE_COUNT; ++g){
+			Gauge gauge = new Gauge("gauge"+g);
+			gauge.setDataType(DataType.DOUBLE);
+			gauge.setValues(_values.get(g));
+			meter.addGauge(gauge);
+		}
+		List<Meter> meterList = new ArrayList<>(1);
+		meterList.add(meter);
+		return Meters.getMeters(meterList);
+	}
+}
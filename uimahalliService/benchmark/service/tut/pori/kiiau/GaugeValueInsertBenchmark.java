@@ -0,0 +1,247 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+
+/**
+ * Measures the gauge value insert rate (rows per second) of the chunked multi-row insert of {@link UimahalliDAO} with different batch sizes, 
+ * and of the previous insert of one value per statement ({@link SimpleJdbcInsert}, returning the generated key), against a real database.
+ * 
+ * The values are read from the CSV files in the datasets directory (lines of "Date;Value"), the values of each file are inserted for a separate gauge key.
+ * The inserts are done in a single transaction per round, like on upload, to a temporary copy of the uh_gauge_values table, so the data of the database is not changed.
+ * The uimahalliService schema must be installed in the database.
+ * 
+ * Usage: GaugeValueInsertBenchmark [JDBC URL] [username] [password] [CSV file or directory]...
+ * 
+ * The JDBC driver must be in the class path. The results are printed to the standard output.
+ */
+public final class GaugeValueInsertBenchmark {
+	/** the batch sizes of the chunked insert, UimahalliDAO.DEFAULT_INSERT_BATCH_SIZE is 500 */
+	private static final int[] BATCH_SIZES = {1, 100, 500, 1000};
+	private static final String CSV_FILE_EXTENSION = ".csv";
+	private static final String CSV_SEPARATOR = ";";
+	private static final String CSV_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+	private static final int MEASUREMENT_ROUNDS = 11;
+	private static final String SQL_CREATE_TABLE = "CREATE TABLE";
+	private static final String SQL_CREATE_TEMPORARY_TABLE = "CREATE TEMPORARY TABLE";
+	private static final String SQL_SHOW_CREATE_TABLE = "SHOW CREATE TABLE uh_gauge_values";
+	private static final String SQL_COUNT_GAUGE_VALUES = "SELECT COUNT(*) FROM uh_gauge_values";
+	private static final String SQL_TRUNCATE_GAUGE_VALUES = "TRUNCATE TABLE uh_gauge_values";
+	private static final int WARMUP_ROUNDS = 5;
+	private JdbcTemplate _jdbcTemplate = null;
+	private TransactionTemplate _transactionTemplate = null;
+	private List<Integer> _gaugeKeys = new ArrayList<>();
+	private List<GaugeValue> _gaugeValues = new ArrayList<>();
+	
+	/**
+	 * An insert method to be measured.
+	 * 
+	 */
+	private static abstract class Inserter {
+		private String _name = null;
+		
+		/**
+		 * 
+		 * @param name
+		 */
+		public Inserter(String name){
+			_name = name;
+		}
+		
+		/**
+		 * 
+		 * @return name of the insert method
+		 */
+		public String getName() {
+			return _name;
+		}
+		
+		/**
+		 * 
+		 * @param t
+		 * @param gaugeKeys
+		 * @param gaugeValues
+		 */
+		public abstract void insert(JdbcTemplate t, List<Integer> gaugeKeys, List<GaugeValue> gaugeValues);
+	} // class Inserter
+	
+	/**
+	 * 
+	 * @param args
+	 * @throws IllegalArgumentException on invalid arguments
+	 * @throws IOException on failure to read the CSV files
+	 */
+	public static void main(String[] args) throws IllegalArgumentException, IOException {
+		if(args.length < 4){
+			throw new IllegalArgumentException("Usage: "+GaugeValueInsertBenchmark.class.getSimpleName()+" [JDBC URL] [username] [password] [CSV file or directory]...");
+		}
+		
+		GaugeValueInsertBenchmark benchmark = new GaugeValueInsertBenchmark();
+		for(int i=3; i<args.length; ++i){
+			readValues(new File(args[i]), benchmark._gaugeKeys, benchmark._gaugeValues);
+		}
+		if(benchmark._gaugeValues.isEmpty()){
+			throw new IllegalArgumentException("No values found.");
+		}
+		
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(args[0], args[1], args[2], true); // one connection, the temporary table is only visible to the connection which created it
+		try{
+			benchmark._jdbcTemplate = new JdbcTemplate(dataSource);
+			benchmark._transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+			createTemporaryTable(benchmark._jdbcTemplate);
+			
+			System.out.println("Inserting "+benchmark._gaugeValues.size()+" values of "+(benchmark._gaugeKeys.isEmpty() ? 0 : benchmark._gaugeKeys.get(benchmark._gaugeKeys.size() - 1))+" gauge(s), "+WARMUP_ROUNDS+" warm-up and "+MEASUREMENT_ROUNDS+" measurement round(s).");
+			System.out.println("Method\tRows/s (median)\tRows/s (min)\tRows/s (max)");
+			benchmark.run(new Inserter("single-row") {
+				@Override
+				public void insert(JdbcTemplate t, List<Integer> gaugeKeys, List<GaugeValue> gaugeValues) {
+					SimpleJdbcInsert sql = new SimpleJdbcInsert(t);
+					sql.setTableName("uh_gauge_values");
+					sql.setGeneratedKeyName("gauge_value_id");
+					sql.withoutTableColumnMetaDataAccess();
+					sql.usingColumns("gauge_key", "value", "row_created");
+					Map<String, Object> columns = new HashMap<>(3);
+					Iterator<Integer> keyIter = gaugeKeys.iterator();
+					for(GaugeValue gv : gaugeValues){
+						columns.put("gauge_key", keyIter.next());
+						columns.put("value", gv.getNumericValue());
+						columns.put("row_created", gv.getUpdatedTimestamp());
+						sql.executeAndReturnKey(columns);
+					}
+				}
+			});
+			for(final int batchSize : BATCH_SIZES){
+				benchmark.run(new Inserter("multi-row "+batchSize) {
+					@Override
+					public void insert(JdbcTemplate t, List<Integer> gaugeKeys, List<GaugeValue> gaugeValues) {
+						UimahalliDAO.insertGaugeValues(t, gaugeKeys, gaugeValues, batchSize);
+					}
+				});
+			}
+		} finally {
+			dataSource.destroy();
+		}
+	}
+	
+	/**
+	 * Creates a temporary table with the definition of the uh_gauge_values table, the temporary table hides the actual table from this connection.
+	 * 
+	 * CREATE TEMPORARY TABLE ... LIKE cannot be used, as the temporary table has the same name as the actual table.
+	 * 
+	 * @param t the connection of the template must not change, e.g. use a single connection data source
+	 */
+	static void createTemporaryTable(JdbcTemplate t) {
+		String definition = t.queryForMap(SQL_SHOW_CREATE_TABLE).get("Create Table").toString();
+		t.execute(SQL_CREATE_TEMPORARY_TABLE+definition.substring(SQL_CREATE_TABLE.length()));
+	}
+	
+	/**
+	 * Runs the warm-up and measurement rounds of the given insert method and prints the insert rates.
+	 * 
+	 * @param inserter
+	 * @throws IllegalStateException if the values were not inserted
+	 */
+	private void run(final Inserter inserter) throws IllegalStateException {
+		double[] rates = new double[MEASUREMENT_ROUNDS];
+		for(int round = -WARMUP_ROUNDS; round < MEASUREMENT_ROUNDS; ++round){
+			_jdbcTemplate.execute(SQL_TRUNCATE_GAUGE_VALUES);
+			long start = System.nanoTime();
+			_transactionTemplate.execute(new TransactionCallback<Void>() {
+				@Override
+				public Void doInTransaction(TransactionStatus status) {
+					inserter.insert(_jdbcTemplate, _gaugeKeys, _gaugeValues);
+					return null;
+				}
+			});
+			long elapsed = System.nanoTime() - start;
+			
+			int count = _jdbcTemplate.queryForObject(SQL_COUNT_GAUGE_VALUES, Integer.class);
+			if(count != _gaugeValues.size()){
+				throw new IllegalStateException("Inserted "+count+" values, expected "+_gaugeValues.size()+" with method: "+inserter.getName());
+			}
+			if(round >= 0){
+				rates[round] = _gaugeValues.size() * 1e9 / elapsed;
+			}
+		}
+		Arrays.sort(rates);
+		System.out.println(String.format("%s\t%.0f\t%.0f\t%.0f", inserter.getName(), rates[MEASUREMENT_ROUNDS / 2], rates[0], rates[MEASUREMENT_ROUNDS - 1]));
+	}
+	
+	/**
+	 * Reads the values of the given CSV file, or of all CSV files in the given directory. Each file is given a new gauge key.
+	 * 
+	 * @param file
+	 * @param gaugeKeys the gauge keys of the values are added to this list
+	 * @param gaugeValues the values are added to this list
+	 * @throws IllegalArgumentException on invalid file
+	 * @throws IOException
+	 */
+	static void readValues(File file, List<Integer> gaugeKeys, List<GaugeValue> gaugeValues) throws IllegalArgumentException, IOException {
+		if(file.isDirectory()){
+			File[] files = file.listFiles();
+			Arrays.sort(files);
+			for(File f : files){
+				if(f.getName().endsWith(CSV_FILE_EXTENSION)){
+					readValues(f, gaugeKeys, gaugeValues);
+				}
+			}
+			return;
+		}
+		
+		int gaugeKey = (gaugeKeys.isEmpty() ? 1 : gaugeKeys.get(gaugeKeys.size() - 1) + 1);
+		SimpleDateFormat dateFormat = new SimpleDateFormat(CSV_DATE_FORMAT);
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))){
+			String line = null;
+			while((line = reader.readLine()) != null){
+				String[] columns = line.split(CSV_SEPARATOR);
+				if(columns.length != 2 || line.isEmpty() || !Character.isDigit(line.charAt(0))){ // the meter name and the column header lines
+					continue;
+				}
+				try {
+					double value = Double.parseDouble(columns[1]);
+					gaugeKeys.add(gaugeKey);
+					gaugeValues.add(new GaugeValue(columns[1], value, dateFormat.parse(columns[0])));
+				} catch (NumberFormatException | ParseException ex) {
+					throw new IllegalArgumentException("Invalid line in file "+file.getPath()+": "+line, ex);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+/**
+ * Replays a dashboard access pattern against {@link MeasurementCache}, and prints the hit and miss counts of the cache.
+ * 
+ * The values of the CSV files in the datasets directory (lines of "Date;Value") are replayed as uploads, the values of each file as a separate gauge: 
+ * each upload invalidates the cached results of its gauge. The given amount of dashboards poll the measurements of all gauges at the given interval, 
+ * with the polls of the dashboards spread evenly over the interval. Each poll makes one request with each of the following parameters, each kind of request 
+ * uses a separate cache with the default limits:
+ * <ul>
+ * <li>latest: the latest {@value #LATEST_VALUE_COUNT} values of each gauge, without dates</li>
+ * <li>today: the values since the start of the current day (fixed start date)</li>
+ * <li>sliding: the values of the last 24 hours (start date relative to the time of the poll)</li>
+ * </ul>
+ * 
+ * The last {@value #REPLAY_DAYS} days of the data are replayed. No database is needed.
+ * 
+ * Usage: MeasurementCacheReplayBenchmark [dashboards] [poll interval in seconds] [CSV file or directory]...
+ * 
+ * The results are printed to the standard output.
+ */
+public final class MeasurementCacheReplayBenchmark {
+	private static final int LATEST_VALUE_COUNT = 100;
+	private static final long MILLISECONDS_PER_DAY = 86400000;
+	private static final int REPLAY_DAYS = 30;
+	private long[][] _timestamps = null; // the sorted timestamps of the values of each gauge
+	
+	/**
+	 * 
+	 * @param args
+	 * @throws IllegalArgumentException on invalid arguments
+	 * @throws IOException on failure to read the CSV files
+	 */
+	public static void main(String[] args) throws IllegalArgumentException, IOException {
+		if(args.length < 3){
+			throw new IllegalArgumentException("Usage: "+MeasurementCacheReplayBenchmark.class.getSimpleName()+" [dashboards] [poll interval in seconds] [CSV file or directory]...");
+		}
+		int dashboards = Integer.parseInt(args[0]);
+		long pollInterval = Long.parseLong(args[1]) * 1000;
+		if(dashboards < 1 || pollInterval < 1){
+			throw new IllegalArgumentException("Invalid dashboards: "+dashboards+" or poll interval: "+args[1]);
+		}
+		
+		List<Integer> gaugeKeys = new ArrayList<>();
+		List<GaugeValue> gaugeValues = new ArrayList<>();
+		for(int i=2; i<args.length; ++i){
+			GaugeValueInsertBenchmark.readValues(new File(args[i]), gaugeKeys, gaugeValues);
+		}
+		if(gaugeValues.isEmpty()){
+			throw new IllegalArgumentException("No values found.");
+		}
+		
+		MeasurementCacheReplayBenchmark benchmark = new MeasurementCacheReplayBenchmark();
+		benchmark.setValues(gaugeKeys, gaugeValues);
+		benchmark.replay(dashboards, pollInterval);
+	}
+	
+	/**
+	 * 
+	 * @param gaugeKeys the gauge keys, starting from 1
+	 * @param gaugeValues
+	 */
+	private void setValues(List<Integer> gaugeKeys, List<GaugeValue> gaugeValues) {
+		int gaugeCount = Collections.max(gaugeKeys);
+		int[] counts = new int[gaugeCount];
+		for(Integer gaugeKey : gaugeKeys){
+			++counts[gaugeKey - 1];
+		}
+		_timestamps = new long[gaugeCount][];
+		for(int i=0; i<gaugeCount; ++i){
+			_timestamps[i] = new long[counts[i]];
+			counts[i] = 0;
+		}
+		Iterator<Integer> keyIter = gaugeKeys.iterator();
+		for(GaugeValue gv : gaugeValues){
+			int index = keyIter.next() - 1;
+			_timestamps[index][counts[index]++] = gv.getUpdatedTimestamp().getTime();
+		}
+		for(long[] timestamps : _timestamps){
+			Arrays.sort(timestamps);
+		}
+	}
+	
+	/**
+	 * Replays the uploads and the polls of the last {@value #REPLAY_DAYS} days, and prints the cache statistics.
+	 * 
+	 * @param dashboards
+	 * @param pollInterval in milliseconds
+	 */
+	private void replay(int dashboards, long pollInterval) {
+		long end = Long.MIN_VALUE;
+		List<long[]> uploads = new ArrayList<>(); // gauge index, timestamp
+		for(long[] timestamps : _timestamps){
+			if(timestamps.length > 0){
+				end = Math.max(end, timestamps[timestamps.length - 1]);
+			}
+		}
+		long start = end - REPLAY_DAYS * MILLISECONDS_PER_DAY;
+		for(int i=0; i<_timestamps.length; ++i){
+			for(long timestamp : _timestamps[i]){
+				if(timestamp > start){
+					uploads.add(new long[]{i, timestamp});
+				}
+			}
+		}
+		Collections.sort(uploads, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] o1, long[] o2) {
+				return Long.compare(o1[1], o2[1]);
+			}
+		});
+		
+		MeasurementCache latest = new MeasurementCache();
+		MeasurementCache today = new MeasurementCache();
+		MeasurementCache sliding = new MeasurementCache();
+		Calendar calendar = Calendar.getInstance();
+		Iterator<long[]> uploadIter = uploads.iterator();
+		long[] upload = (uploadIter.hasNext() ? uploadIter.next() : null);
+		for(long poll = start; poll < end; poll += pollInterval){
+			for(int dashboard = 0; dashboard < dashboards; ++dashboard){
+				long now = poll + dashboard * pollInterval / dashboards;
+				for(; upload != null && upload[1] <= now; upload = (uploadIter.hasNext() ? uploadIter.next() : null)){
+					List<String> gaugeIds = Collections.singletonList(getGaugeId((int) upload[0]));
+					latest.invalidate(gaugeIds);
+					today.invalidate(gaugeIds);
+					sliding.invalidate(gaugeIds);
+				}
+				
+				latest.get("latest", createLoader(Long.MIN_VALUE, now, LATEST_VALUE_COUNT));
+				calendar.setTimeInMillis(now);
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.set(Calendar.SECOND, 0);
+				calendar.set(Calendar.MILLISECOND, 0);
+				long dayStart = calendar.getTimeInMillis();
+				today.get("today:"+dayStart, createLoader(dayStart, now, Integer.MAX_VALUE));
+				long slidingStart = now - MILLISECONDS_PER_DAY;
+				sliding.get("sliding:"+slidingStart, createLoader(slidingStart, now, Integer.MAX_VALUE));
+			}
+		}
+		
+		System.out.println("Replayed "+uploads.size()+" uploads of "+_timestamps.length+" gauge(s) over "+REPLAY_DAYS+" days, "+dashboards+" dashboard(s) polling every "+(pollInterval / 1000)+" s.");
+		System.out.println("Request\tHits\tMisses\tHit rate (%)\tEvictions\tInvalidations");
+		print("latest", latest);
+		print("today", today);
+		print("sliding", sliding);
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param cache
+	 */
+	private static void print(String name, MeasurementCache cache) {
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		System.out.println(String.format("%s\t%d\t%d\t%.1f\t%d\t%d", name, hits, misses, hits * 100.0 / (hits + misses), cache.getEvictionCount(), cache.getInvalidationCount()));
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return the id of the gauge with the given index
+	 */
+	private static String getGaugeId(int index) {
+		return String.valueOf(index + 1);
+	}
+	
+	/**
+	 * 
+	 * @param start exclusive
+	 * @param end inclusive
+	 * @param maxValues the maximum amount of the latest values returned for each gauge
+	 * @return loader for the values of all gauges in the given range, the values have only timestamps
+	 */
+	private Callable<Meters> createLoader(final long start, final long end, final int maxValues) {
+		return new Callable<Meters>() {
+			@Override
+			public Meters call() {
+				Meter meter = new Meter();
+				for(int i=0; i<_timestamps.length; ++i){
+					long[] timestamps = _timestamps[i];
+					int to = Arrays.binarySearch(timestamps, end);
+					to = (to < 0 ? -to - 1 : to + 1);
+					int from = Arrays.binarySearch(timestamps, start);
+					from = (from < 0 ? -from - 1 : from + 1);
+					from = Math.max(from, to - maxValues);
+					
+					Gauge gauge = new Gauge(getGaugeId(i));
+					if(from < to){
+						List<GaugeValue> values = new ArrayList<>(to - from);
+						for(int j=from; j<to; ++j){
+							values.add(new GaugeValue(null, new Date(timestamps[j])));
+						}
+						gauge.setValues(values);
+					}
+					meter.addGauge(gauge);
+				}
+				return Meters.getMeters(Collections.singletonList(meter));
+			}
+		};
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import service.tut.pori.kiiau.UimahalliDAO.GaugeValueWriter;
+import service.tut.pori.kiiau.datatypes.Definitions;
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import core.tut.pori.utils.JSONFormatter;
+
+/**
+ * Measures the heap used by a full-history measurement response, with the default JSON response ({@link Meters} with all gauge values serialized to a string) 
+ * and with the streaming response ({@link MeasurementStreamResponse}, gauge values written from a streamed result set), against a real database.
+ * 
+ * The gauge values of the database (e.g. the datasets database dump) are copied the given amount of times to a temporary copy of the uh_gauge_values table, 
+ * each copy as new gauges, so the data of the database is not changed. The responses are written to a stream which only counts the bytes.
+ * The DAO methods need the database setup of the core, so the responses are created with the same building blocks the DAO uses 
+ * ({@link UimahalliDAO#extractGaugeValue(ResultSet, DataType)}, {@link GaugeValueWriter}), one query per gauge.
+ * 
+ * The peak heap is the peak usage of the old generation heap pool during the request, minus its usage after a full collection before the request.
+ * Objects held through the request are promoted to the old generation, while short-lived objects are collected from the young generation, 
+ * so run with a serial or parallel collector and a small young generation (e.g. -XX:+UseSerialGC -Xmn16m) for stable results.
+ * The allocated bytes are the total bytes allocated by the request, as reported by the JVM.
+ * 
+ * Usage: MeasurementResponseHeapBenchmark [JDBC URL] [username] [password] [copies, optional]
+ * 
+ * The JDBC driver must be in the class path. The results are printed to the standard output.
+ */
+public final class MeasurementResponseHeapBenchmark {
+	private static final int DEFAULT_COPIES = 100;
+	private static final int MEASUREMENT_ROUNDS = 3;
+	private static final String SQL_GET_GAUGES = "SELECT gauge_key, gauge_id, data_type FROM uh_gauges ORDER BY gauge_key";
+	private static final String SQL_GET_GAUGE_VALUES = "SELECT uh_gauge_values.gauge_value_id, gauge_key, uh_gauge_values.value, uh_gauge_value_texts.value AS text_value, row_created FROM uh_gauge_values LEFT JOIN uh_gauge_value_texts ON uh_gauge_values.gauge_value_id=uh_gauge_value_texts.gauge_value_id WHERE gauge_key=? ORDER BY row_created";
+	private static final String SQL_GET_ALL_GAUGE_VALUES = "SELECT gauge_key, value, row_created FROM uh_gauge_values ORDER BY gauge_key, row_created";
+	private static final int WARMUP_ROUNDS = 2;
+	private final Gson _gson = JSONFormatter.createGsonSerializer();
+	private JdbcTemplate _jdbcTemplate = null;
+	private Map<Integer, Gauge> _gauges = new LinkedHashMap<>();
+	
+	/**
+	 * Output stream which discards the bytes, and counts them.
+	 * 
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private long _count = 0;
+		
+		@Override
+		public void write(int b) {
+			++_count;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			_count += len;
+		}
+		
+		/**
+		 * 
+		 * @return the amount of bytes written
+		 */
+		public long getCount() {
+			return _count;
+		}
+	} // class CountingOutputStream
+	
+	/**
+	 * A response to be measured.
+	 * 
+	 */
+	private static abstract class ResponseWriter {
+		private String _name = null;
+		
+		/**
+		 * 
+		 * @param name
+		 */
+		public ResponseWriter(String name){
+			_name = name;
+		}
+		
+		/**
+		 * 
+		 * @return name of the response
+		 */
+		public String getName() {
+			return _name;
+		}
+		
+		/**
+		 * 
+		 * @param out
+		 * @throws IOException
+		 */
+		public abstract void write(OutputStream out) throws IOException;
+	} // class ResponseWriter
+	
+	/**
+	 * 
+	 * @param args
+	 * @throws IllegalArgumentException on invalid arguments
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IllegalArgumentException, IOException {
+		if(args.length < 3){
+			throw new IllegalArgumentException("Usage: "+MeasurementResponseHeapBenchmark.class.getSimpleName()+" [JDBC URL] [username] [password] [copies, optional]");
+		}
+		int copies = (args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_COPIES);
+		
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(args[0], args[1], args[2], true); // one connection, the temporary table is only visible to the connection which created it
+		try{
+			final MeasurementResponseHeapBenchmark benchmark = new MeasurementResponseHeapBenchmark();
+			benchmark._jdbcTemplate = new JdbcTemplate(dataSource);
+			int valueCount = benchmark.copyGaugeValues(copies);
+			System.out.println("Writing "+valueCount+" values of "+benchmark._gauges.size()+" gauge(s), "+WARMUP_ROUNDS+" warm-up and "+MEASUREMENT_ROUNDS+" measurement round(s).");
+			System.out.println("Response\tBytes\tPeak heap (MB, median)\tPeak heap (MB, max)\tAllocated (MB, median)");
+			benchmark.run(new ResponseWriter("document") {
+				@Override
+				public void write(OutputStream out) throws IOException {
+					benchmark.writeDocument(out);
+				}
+			});
+			benchmark.run(new ResponseWriter("stream") {
+				@Override
+				public void write(OutputStream out) throws IOException {
+					benchmark.writeStream(out);
+				}
+			});
+		} finally {
+			dataSource.destroy();
+		}
+	}
+	
+	/**
+	 * Reads the gauges and gauge values of the database, and inserts the given amount of copies of the values to a temporary table. Each copy is inserted as new gauges.
+	 * 
+	 * @param copies
+	 * @return the amount of inserted values
+	 * @throws IllegalArgumentException if the database contains no values
+	 */
+	private int copyGaugeValues(int copies) throws IllegalArgumentException {
+		final Map<Integer, DataType> dataTypes = new LinkedHashMap<>();
+		_jdbcTemplate.query(SQL_GET_GAUGES, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				dataTypes.put(set.getInt(1), DataType.fromDataTypeString(set.getString(3)));
+			}
+		});
+		final List<Integer> gaugeKeys = new ArrayList<>();
+		final List<GaugeValue> gaugeValues = new ArrayList<>();
+		_jdbcTemplate.query(SQL_GET_ALL_GAUGE_VALUES, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				gaugeKeys.add(set.getInt(1));
+				GaugeValue gv = new GaugeValue();
+				double value = set.getDouble(2);
+				if(!set.wasNull()){
+					gv.setNumericValue(value);
+				}
+				gv.setUpdatedTimestamp(new Date(set.getTimestamp(3).getTime()));
+				gaugeValues.add(gv);
+			}
+		});
+		if(gaugeValues.isEmpty()){
+			throw new IllegalArgumentException("No gauge values found.");
+		}
+		
+		GaugeValueInsertBenchmark.createTemporaryTable(_jdbcTemplate);
+		int maxKey = dataTypes.isEmpty() ? 0 : Collections.max(dataTypes.keySet());
+		int inserted = 0;
+		for(int copy = 0; copy < copies; ++copy){
+			List<Integer> copyKeys = new ArrayList<>(gaugeKeys.size());
+			for(Integer gaugeKey : gaugeKeys){
+				int copyKey = gaugeKey + copy * maxKey;
+				if(!_gauges.containsKey(copyKey)){
+					Gauge gauge = new Gauge(String.valueOf(copyKey));
+					gauge.setDataType(dataTypes.get(gaugeKey));
+					_gauges.put(copyKey, gauge);
+				}
+				copyKeys.add(copyKey);
+			}
+			inserted += UimahalliDAO.insertGaugeValues(_jdbcTemplate, copyKeys, gaugeValues, UimahalliDAO.DEFAULT_INSERT_BATCH_SIZE);
+		}
+		return inserted;
+	}
+	
+	/**
+	 * Runs the warm-up and measurement rounds of the given response and prints the heap use.
+	 * 
+	 * @param responseWriter
+	 * @throws IOException
+	 */
+	private void run(ResponseWriter responseWriter) throws IOException {
+		MemoryPoolMXBean oldGeneration = null;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && !pool.getName().contains("Survivor") && !pool.getName().contains("Eden")){
+				oldGeneration = pool;
+			}
+		}
+		if(oldGeneration == null){
+			throw new IllegalStateException("Old generation memory pool not found.");
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		
+		long[] peaks = new long[MEASUREMENT_ROUNDS];
+		long[] allocated = new long[MEASUREMENT_ROUNDS];
+		long bytes = 0;
+		for(int round = -WARMUP_ROUNDS; round < MEASUREMENT_ROUNDS; ++round){
+			System.gc();
+			System.gc();
+			oldGeneration.resetPeakUsage();
+			long start = oldGeneration.getUsage().getUsed();
+			long startAllocated = threads.getThreadAllocatedBytes(threadId);
+			CountingOutputStream out = new CountingOutputStream();
+			responseWriter.write(out);
+			long endAllocated = threads.getThreadAllocatedBytes(threadId);
+			long peak = oldGeneration.getPeakUsage().getUsed() - start;
+			bytes = out.getCount();
+			if(round >= 0){
+				peaks[round] = peak;
+				allocated[round] = endAllocated - startAllocated;
+			}
+		}
+		Arrays.sort(peaks);
+		Arrays.sort(allocated);
+		System.out.println(String.format("%s\t%d\t%.1f\t%.1f\t%.1f", responseWriter.getName(), bytes, peaks[MEASUREMENT_ROUNDS / 2] / 1048576.0, peaks[MEASUREMENT_ROUNDS - 1] / 1048576.0, allocated[MEASUREMENT_ROUNDS / 2] / 1048576.0));
+	}
+	
+	/**
+	 * Writes the response as the default JSON response: the gauge values of all gauges are read into a {@link Meters} object, which is serialized to a string.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeDocument(OutputStream out) throws IOException {
+		Meter meter = new Meter();
+		for(Entry<Integer, Gauge> e : _gauges.entrySet()){
+			final Gauge source = e.getValue();
+			Gauge gauge = new Gauge(source.getId());
+			gauge.setDataType(source.getDataType());
+			List<GaugeValue> values = _jdbcTemplate.query(SQL_GET_GAUGE_VALUES, new Object[]{e.getKey()}, new RowMapper<GaugeValue>() {
+				@Override
+				public GaugeValue mapRow(ResultSet set, int rowNum) throws SQLException {
+					return UimahalliDAO.extractGaugeValue(set, source.getDataType());
+				}
+			});
+			gauge.setValues(values.isEmpty() ? null : values);
+			meter.addGauge(gauge);
+		}
+		String json = _gson.toJson(Meters.getMeters(Arrays.asList(meter)));
+		try(Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)){
+			writer.write(json);
+		}
+	}
+	
+	/**
+	 * Writes the response as the streaming response: the gauge values of each gauge are written from a streamed result set.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeStream(OutputStream out) throws IOException {
+		try(JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))){
+			writer.beginObject();
+			writer.name(Definitions.JSON_NAME_METERS);
+			writer.beginArray();
+			writer.beginObject();
+			writer.name(Definitions.JSON_NAME_GAUGES);
+			writer.beginArray();
+			for(final Entry<Integer, Gauge> e : _gauges.entrySet()){
+				Gauge gauge = e.getValue();
+				writer.beginObject();
+				UimahalliDAO.writeMembers(_gson.toJsonTree(gauge).getAsJsonObject(), _gson, writer);
+				GaugeValueWriter valueWriter = new GaugeValueWriter(gauge.getDataType(), _gson, writer);
+				_jdbcTemplate.query(new PreparedStatementCreator() {
+					@Override
+					public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+						PreparedStatement ps = con.prepareStatement(SQL_GET_GAUGE_VALUES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+						ps.setFetchSize(Integer.MIN_VALUE); // as in UimahalliDAO, streams the rows
+						ps.setInt(1, e.getKey());
+						return ps;
+					}
+				}, valueWriter);
+				valueWriter.finish();
+				writer.endObject();
+			}
+			writer.endArray();
+			writer.endObject();
+			writer.endArray();
+			writer.endObject();
+		}
+	}
+}
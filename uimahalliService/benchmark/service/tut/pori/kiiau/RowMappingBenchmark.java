@@ -0,0 +1,290 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+
+/**
+ * Compares the extraction of gauge values by column position ({@link UimahalliDAO#extractGaugeValue(ResultSet, DataType)}) with the previous extraction,
+ * which read the rows into a list of column name - value maps (queryForList, i.e. {@link ColumnMapRowMapper}) and then switched on the column names of each map.
+ * 
+ * The result set is an in-memory proxy, so no database is needed. The proxy itself allocates on each call (argument arrays and boxed values),
+ * the {@link #readOnly()} benchmark reads the same columns as the position based extraction without creating gauge values, and gives the cost of the proxy.
+ * Run with the JMH option "-prof gc" to see the allocation rate and the allocated bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class RowMappingBenchmark {
+	/** the columns of the result set, as selected with UimahalliDAO.SQL_COLUMNS_GET_GAUGE_VALUES */
+	private static final String[] COLUMNS = {"gauge_value_id", "gauge_key", "value", "text_value", "row_created"};
+	/** the amount of rows in the result set */
+	@Param({"1000000"})
+	private int _rowCount;
+	private double[] _values = null;
+	private Timestamp[] _created = null;
+
+	/**
+	 * In-memory result set over the generated rows.
+	 * 
+	 */
+	private final class ResultSetHandler implements InvocationHandler {
+		private int _row = -1;
+		private boolean _wasNull = false;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()){
+				case "next":
+					return (++_row < _rowCount);
+				case "wasNull":
+					return _wasNull;
+				case "getMetaData":
+					return Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class}, new MetaDataHandler());
+				case "getLong":
+				case "getInt":
+				case "getDouble":
+				case "getString":
+				case "getTimestamp":
+				case "getObject":
+					Object value = getValue((Integer) args[0]);
+					_wasNull = (value == null);
+					if(value == null){
+						return (method.getReturnType().isPrimitive() ? defaultValue(method.getReturnType()) : null);
+					}else if(method.getReturnType() == int.class){
+						return ((Number) value).intValue();
+					}
+					return value;
+				case "close":
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+
+		/**
+		 * 
+		 * @param column
+		 * @return the value of the column on the current row
+		 */
+		private Object getValue(int column) {
+			switch(column){
+				case 1:
+					return Long.valueOf(_row + 1);
+				case 2:
+					return Integer.valueOf(_row % 100);
+				case 3:
+					return Double.valueOf(_values[_row]);
+				case 4:
+					return null;
+				case 5:
+					return _created[_row];
+				default:
+					throw new IllegalArgumentException("Invalid column: "+column);
+			}
+		}
+
+		/**
+		 * 
+		 * @param type
+		 * @return the default value of the given primitive type
+		 */
+		private Object defaultValue(Class<?> type) {
+			if(type == boolean.class){
+				return Boolean.FALSE;
+			}else if(type == int.class){
+				return Integer.valueOf(0);
+			}else if(type == long.class){
+				return Long.valueOf(0);
+			}else{
+				return Double.valueOf(0);
+			}
+		}
+	}
+
+	/**
+	 * Meta data of the in-memory result set.
+	 * 
+	 */
+	private static final class MetaDataHandler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()){
+				case "getColumnCount":
+					return COLUMNS.length;
+				case "getColumnLabel":
+				case "getColumnName":
+					return COLUMNS[(Integer) args[0] - 1];
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+	}
+
+	/**
+	 * Generate the rows, one value per minute
+	 */
+	@Setup
+	public void setup() {
+		_values = new double[_rowCount];
+		_created = new Timestamp[_rowCount];
+		long time = 1400000000000L;
+		for(int i=0; i<_rowCount; ++i){
+			_values[i] = (i % 1000) / 10.0;
+			_created[i] = new Timestamp(time + i * 60000L);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the gauge containing the extracted values
+	 * @throws SQLException
+	 */
+	@Benchmark
+	public Gauge columnPositions() throws SQLException {
+		Gauge gauge = createGauge();
+		ResultSet set = createResultSet();
+		while(set.next()){ // as with a RowCallbackHandler
+			gauge.addGaugeValue(UimahalliDAO.extractGaugeValue(set, DataType.DOUBLE));
+		}
+		return gauge;
+	}
+
+	/**
+	 * 
+	 * @return the gauge containing the extracted values
+	 * @throws SQLException
+	 */
+	@Benchmark
+	public Gauge columnMaps() throws SQLException {
+		ColumnMapRowMapper mapper = new ColumnMapRowMapper();
+		List<Map<String, Object>> rows = new ArrayList<>();
+		ResultSet set = createResultSet();
+		for(int rowNum=0; set.next(); ++rowNum){ // as with queryForList
+			rows.add(mapper.mapRow(set, rowNum));
+		}
+		Gauge gauge = createGauge();
+		for(Map<String, Object> row : rows){
+			gauge.addGaugeValue(extractGaugeValue(row, DataType.DOUBLE));
+		}
+		return gauge;
+	}
+
+	/**
+	 * 
+	 * @return sum of the read row ids
+	 * @throws SQLException
+	 */
+	@Benchmark
+	public long readOnly() throws SQLException {
+		long sum = 0;
+		ResultSet set = createResultSet();
+		while(set.next()){
+			sum += set.getLong(1);
+			set.getDouble(3);
+			set.wasNull();
+			set.getString(4);
+			set.getTimestamp(5);
+		}
+		return sum;
+	}
+
+	/**
+	 * 
+	 * @return new result set positioned before the first row
+	 */
+	private ResultSet createResultSet() {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, new ResultSetHandler());
+	}
+
+	/**
+	 * 
+	 * @return new gauge for the extracted values
+	 */
+	private Gauge createGauge() {
+		Gauge gauge = new Gauge("gauge");
+		gauge.setDataType(DataType.DOUBLE);
+		gauge.setValues(new ArrayList<GaugeValue>(_rowCount));
+		return gauge;
+	}
+
+	/**
+	 * The previous extraction of a gauge value from a column name - value map.
+	 * 
+	 * @param row
+	 * @param dataType
+	 * @return the extracted gauge value
+	 */
+	private static GaugeValue extractGaugeValue(Map<String, Object> row, DataType dataType) {
+		GaugeValue gaugeValue = new GaugeValue();
+		Double numericValue = null;
+		String textValue = null;
+		for(Entry<String, Object> e : row.entrySet()){
+			switch(e.getKey()){
+				case "gauge_value_id":
+					gaugeValue.setRowId((Long) e.getValue());
+					break;
+				case "value":
+					numericValue = (Double) e.getValue();
+					break;
+				case "text_value":
+					textValue = (String) e.getValue();
+					break;
+				case "row_created":
+					gaugeValue.setUpdatedTimestamp((Date) e.getValue());
+					break;
+				case "gauge_key":
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown column: "+e.getKey());
+			}
+		}
+		UimahalliDAO.setValue(gaugeValue, numericValue, textValue, dataType);
+		return gaugeValue;
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+
+/**
+ * Compares {@link ValueParser} with the previous validation, which parsed the values with {@link Double#valueOf(String)} and {@link Integer#valueOf(String)}
+ * and caught the {@link NumberFormatException} of invalid values. The logging of the caught exceptions is not included in the baseline.
+ * 
+ * The batch contains the given percentage of invalid values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueParserBenchmark {
+	private static final int BATCH_SIZE = 10000;
+	/** the percentage of invalid values in the batch */
+	@Param({"0", "10", "100"})
+	private int _invalidPercentage;
+	/** the data type of the values */
+	@Param({"DOUBLE", "INTEGER"})
+	private DataType _dataType;
+	private String[] _values = null;
+
+	/**
+	 * Generate the batch
+	 */
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+		_values = new String[BATCH_SIZE];
+		for(int i=0; i<BATCH_SIZE; ++i){
+			if(random.nextInt(100) < _invalidPercentage){
+				_values[i] = "invalid"+i;
+			}else if(_dataType == DataType.INTEGER){
+				_values[i] = String.valueOf(random.nextInt(100000));
+			}else{
+				_values[i] = String.valueOf(random.nextDouble() * 1000);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the amount of valid values
+	 */
+	@Benchmark
+	public int valueParser() {
+		int valid = 0;
+		for(String value : _values){
+			if(!Double.isNaN(ValueParser.parse(value, _dataType))){
+				++valid;
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * 
+	 * @return the amount of valid values
+	 */
+	@Benchmark
+	public int valueOfWithException() {
+		int valid = 0;
+		for(String value : _values){
+			try{
+				if(_dataType == DataType.INTEGER){
+					Integer.valueOf(value);
+				}else{
+					Double.valueOf(value);
+				}
+				++valid;
+			}catch(NumberFormatException ex){
+				// invalid value
+			}
+		}
+		return valid;
+	}
+}
@@ -0,0 +1,35 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Moves numeric (DOUBLE and INTEGER) gauge values to a native numeric column.
+-- Text (STRING) values are moved to the separate uh_gauge_value_texts table.
+USE `ca_frontend`;
+
+
+-- Dumping structure for table ca_frontend.uh_gauge_value_texts
+CREATE TABLE IF NOT EXISTS `uh_gauge_value_texts` (
+  `gauge_value_id` bigint(20) NOT NULL,
+  `value` varchar(1024) NOT NULL,
+  PRIMARY KEY (`gauge_value_id`)
+) ENGINE=MyISAM DEFAULT CHARSET=utf8;
+
+
+-- Move existing text values, values of unknown gauges are kept as text
+INSERT IGNORE INTO `uh_gauge_value_texts` (`gauge_value_id`, `value`)
+  SELECT v.`gauge_value_id`, v.`value` FROM `uh_gauge_values` v LEFT JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  WHERE g.`data_type` IS NULL OR g.`data_type` NOT IN ('DOUBLE', 'INTEGER');
+
+
+-- Convert numeric values
+ALTER TABLE `uh_gauge_values` ADD COLUMN `numeric_value` double DEFAULT NULL AFTER `value`;
+
+UPDATE `uh_gauge_values` v JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  SET v.`numeric_value`=v.`value`+0E0
+  WHERE g.`data_type` IN ('DOUBLE', 'INTEGER');
+
+ALTER TABLE `uh_gauge_values` DROP COLUMN `value`;
+
+ALTER TABLE `uh_gauge_values` CHANGE COLUMN `numeric_value` `value` double DEFAULT NULL,
+  ADD KEY `index_gauge_id_row_created_value` (`gauge_id`,`row_created`,`value`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
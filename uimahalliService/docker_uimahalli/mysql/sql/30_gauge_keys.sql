@@ -0,0 +1,35 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Replaces the gauge_id (UUID) column of uh_gauge_values with a compact integer gauge key.
+-- The gauge key is an internal identifier generated in uh_gauges, the gauge_id is still used in the public API.
+USE `ca_frontend`;
+
+
+-- Generate keys for gauges
+ALTER TABLE `uh_gauges` ADD COLUMN `gauge_key` int(11) NOT NULL AUTO_INCREMENT AFTER `gauge_id`,
+  ADD UNIQUE KEY `gauge_key_UNIQUE` (`gauge_key`);
+
+
+-- Remove values of non-existing gauges, these cannot be retrieved through the service
+DELETE t FROM `uh_gauge_value_texts` t JOIN `uh_gauge_values` v ON t.`gauge_value_id`=v.`gauge_value_id` LEFT JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  WHERE g.`gauge_id` IS NULL;
+
+DELETE v FROM `uh_gauge_values` v LEFT JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  WHERE g.`gauge_id` IS NULL;
+
+
+-- Replace gauge ids with gauge keys
+ALTER TABLE `uh_gauge_values` ADD COLUMN `gauge_key` int(11) NOT NULL DEFAULT 0 AFTER `gauge_value_id`;
+
+UPDATE `uh_gauge_values` v JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  SET v.`gauge_key`=g.`gauge_key`;
+
+ALTER TABLE `uh_gauge_values` DROP KEY `unique`,
+  DROP KEY `index_gauge_id_row_created_value`,
+  DROP COLUMN `gauge_id`,
+  ALTER COLUMN `gauge_key` DROP DEFAULT,
+  ADD UNIQUE KEY `unique` (`gauge_key`,`row_created`),
+  ADD KEY `index_gauge_key_row_created_value` (`gauge_key`,`row_created`,`value`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
@@ -0,0 +1,12 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Quantile sketches of the hourly and daily aggregates of the numeric gauge values.
+-- The gauges which already have values are flagged as incomplete, so that the backfill job of the service rebuilds their aggregates with the sketches.
+USE `ca_frontend`;
+
+ALTER TABLE `uh_gauge_value_rollups` ADD COLUMN `value_sketch` blob DEFAULT NULL;
+
+UPDATE `uh_gauges` g SET g.`rollups_complete`=0 WHERE EXISTS (SELECT 1 FROM `uh_gauge_values` v WHERE v.`gauge_key`=g.`gauge_key`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
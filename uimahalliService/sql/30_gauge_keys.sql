@@ -0,0 +1,47 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Replaces the gauge_id (UUID) column of uh_gauge_values with a compact integer gauge key.
+-- The gauge key is an internal identifier generated in uh_gauges, the gauge_id is still used in the public API.
+USE `ca_frontend`;
+
+
+-- Generate keys for gauges
+ALTER TABLE `uh_gauges` ADD COLUMN `gauge_key` int(11) NOT NULL AUTO_INCREMENT AFTER `gauge_id`,
+  ADD UNIQUE KEY `gauge_key_UNIQUE` (`gauge_key`);
+
+
+-- Dumping structure for table ca_frontend.uh_gauge_values_archive
+CREATE TABLE IF NOT EXISTS `uh_gauge_values_archive` (
+  `gauge_value_id` bigint(20) NOT NULL,
+  `gauge_id` varchar(50) NOT NULL,
+  `value` double DEFAULT NULL,
+  `row_created` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`gauge_value_id`),
+  KEY `index_gauge_id` (`gauge_id`)
+) ENGINE=MyISAM DEFAULT CHARSET=utf8;
+
+
+-- Move values of non-existing gauges to the archive, these have no gauge key and cannot be retrieved through the service.
+-- The text values of the archived values are kept in uh_gauge_value_texts.
+INSERT INTO `uh_gauge_values_archive` (`gauge_value_id`, `gauge_id`, `value`, `row_created`)
+  SELECT v.`gauge_value_id`, v.`gauge_id`, v.`value`, v.`row_created` FROM `uh_gauge_values` v LEFT JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  WHERE g.`gauge_id` IS NULL;
+
+DELETE v FROM `uh_gauge_values` v JOIN `uh_gauge_values_archive` a ON v.`gauge_value_id`=a.`gauge_value_id`;
+
+
+-- Replace gauge ids with gauge keys
+ALTER TABLE `uh_gauge_values` ADD COLUMN `gauge_key` int(11) NOT NULL DEFAULT 0 AFTER `gauge_value_id`;
+
+UPDATE `uh_gauge_values` v JOIN `uh_gauges` g ON v.`gauge_id`=g.`gauge_id`
+  SET v.`gauge_key`=g.`gauge_key`;
+
+ALTER TABLE `uh_gauge_values` DROP KEY `unique`,
+  DROP KEY `index_gauge_id_row_created_value`,
+  DROP COLUMN `gauge_id`,
+  ALTER COLUMN `gauge_key` DROP DEFAULT,
+  ADD UNIQUE KEY `unique` (`gauge_key`,`row_created`),
+  ADD KEY `index_gauge_key_row_created_value` (`gauge_key`,`row_created`,`value`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
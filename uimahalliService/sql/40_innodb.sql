@@ -0,0 +1,19 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Converts the service tables to InnoDB for transactional writes and row-level locking.
+USE `ca_frontend`;
+
+ALTER TABLE `uh_alerts` ENGINE=InnoDB;
+
+ALTER TABLE `uh_gauges` ENGINE=InnoDB;
+
+ALTER TABLE `uh_gauge_values` ENGINE=InnoDB ROW_FORMAT=DYNAMIC;
+
+ALTER TABLE `uh_gauge_value_texts` ENGINE=InnoDB;
+
+ALTER TABLE `uh_locations` ENGINE=InnoDB;
+
+ALTER TABLE `uh_meters` ENGINE=InnoDB;
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
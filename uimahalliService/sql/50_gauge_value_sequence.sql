@@ -0,0 +1,9 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Index for retrieving the values of a gauge inserted after a given row id (incremental synchronization).
+USE `ca_frontend`;
+
+ALTER TABLE `uh_gauge_values` ADD KEY `index_gauge_key_gauge_value_id` (`gauge_key`,`gauge_value_id`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
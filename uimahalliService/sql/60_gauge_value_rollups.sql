@@ -0,0 +1,28 @@
+/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+/*!40101 SET NAMES utf8mb4 */;
+
+-- Hourly and daily aggregates of the numeric gauge values (period 1 = hour, 2 = day).
+-- The aggregates of the gauges which already have values are built by the backfill job of the service, the gauges are flagged as incomplete until then.
+USE `ca_frontend`;
+
+CREATE TABLE IF NOT EXISTS `uh_gauge_value_rollups` (
+  `gauge_key` int(11) NOT NULL,
+  `period` int(11) NOT NULL,
+  `period_start` timestamp NOT NULL DEFAULT '1970-01-01 00:00:01',
+  `value_count` bigint(20) NOT NULL,
+  `value_sum` double NOT NULL,
+  `value_sum_squares` double NOT NULL,
+  `value_min` double NOT NULL,
+  `value_max` double NOT NULL,
+  `first_created` timestamp NOT NULL DEFAULT '1970-01-01 00:00:01',
+  `first_value` double NOT NULL,
+  `last_created` timestamp NOT NULL DEFAULT '1970-01-01 00:00:01',
+  `last_value` double NOT NULL,
+  PRIMARY KEY (`gauge_key`,`period`,`period_start`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+ALTER TABLE `uh_gauges` ADD COLUMN `rollups_complete` tinyint(4) NOT NULL DEFAULT 1;
+
+UPDATE `uh_gauges` g SET g.`rollups_complete`=0 WHERE EXISTS (SELECT 1 FROM `uh_gauge_values` v WHERE v.`gauge_key`=g.`gauge_key`);
+
+/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
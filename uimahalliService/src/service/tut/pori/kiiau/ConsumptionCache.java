@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import service.tut.pori.kiiau.datatypes.Consumption;
+
+/**
+ * Bounded cache for the consumption of cumulative gauges, per gauge, time bucket and range.
+ * 
+ * The entries are evicted in least-recently-used order when the maximum amount of entries is exceeded, and invalidated when new values are added for the gauge.
+ * A result calculated while values were added may be stale, so results are only stored if no invalidation happened after the calculation was started.
+ * 
+ * The cached results are shared, and must not be modified.
+ * 
+ * This class is thread-safe.
+ */
+final class ConsumptionCache {
+	/** the default maximum amount of cached results */
+	static final int DEFAULT_MAX_ENTRIES = 4096;
+	private static final char KEY_SEPARATOR = '|';
+	private final LinkedHashMap<String, CacheEntry> _entries = new LinkedHashMap<>(16, 0.75f, true); // in access order
+	private long _generation = 0;
+	private final int _maxEntries;
+	
+	/**
+	 * A single cached result.
+	 * 
+	 */
+	private static final class CacheEntry {
+		private final List<Consumption> _consumption;
+		private final String _gaugeId;
+		
+		/**
+		 * 
+		 * @param gaugeId
+		 * @param consumption
+		 */
+		CacheEntry(String gaugeId, List<Consumption> consumption){
+			_gaugeId = gaugeId;
+			_consumption = consumption;
+		}
+	} // class CacheEntry
+	
+	/**
+	 * Create cache with default limits
+	 */
+	ConsumptionCache(){
+		this(DEFAULT_MAX_ENTRIES);
+	}
+	
+	/**
+	 * 
+	 * @param maxEntries
+	 * @throws IllegalArgumentException on invalid limit
+	 */
+	ConsumptionCache(int maxEntries) throws IllegalArgumentException {
+		if(maxEntries < 1){
+			throw new IllegalArgumentException("Invalid cache limit: "+maxEntries);
+		}
+		_maxEntries = maxEntries;
+	}
+	
+	/**
+	 * 
+	 * @param gaugeId
+	 * @param bucket
+	 * @param start
+	 * @param end
+	 * @return the key for the given parameters
+	 */
+	static String createKey(String gaugeId, TimeBucket bucket, long start, long end){
+		return gaugeId+KEY_SEPARATOR+bucket.toValueString()+KEY_SEPARATOR+start+KEY_SEPARATOR+end;
+	}
+	
+	/**
+	 * 
+	 * @param key
+	 * @return the cached result or null if not cached
+	 */
+	synchronized List<Consumption> get(String key){
+		CacheEntry entry = _entries.get(key);
+		return (entry == null ? null : entry._consumption);
+	}
+	
+	/**
+	 * 
+	 * @return the current generation, to be passed to {@link #put(String, String, List, long)} after calculating the result
+	 */
+	synchronized long getGeneration(){
+		return _generation;
+	}
+	
+	/**
+	 * Stores the result, if the cache has not been invalidated after the given generation.
+	 * 
+	 * @param key
+	 * @param gaugeId
+	 * @param consumption
+	 * @param generation the generation before the result was calculated
+	 */
+	synchronized void put(String key, String gaugeId, List<Consumption> consumption, long generation){
+		if(generation != _generation){
+			return;
+		}
+		_entries.put(key, new CacheEntry(gaugeId, consumption));
+		for(Iterator<CacheEntry> iter = _entries.values().iterator(); iter.hasNext() && _entries.size() > _maxEntries;){
+			iter.next();
+			iter.remove();
+		}
+	}
+	
+	/**
+	 * Removes the entries of the given gauges.
+	 * 
+	 * @param gaugeIds
+	 */
+	synchronized void invalidate(Collection<String> gaugeIds){
+		++_generation;
+		Set<String> ids = new HashSet<>(gaugeIds);
+		for(Iterator<Map.Entry<String, CacheEntry>> iter = _entries.entrySet().iterator(); iter.hasNext();){
+			if(ids.contains(iter.next().getValue()._gaugeId)){
+				iter.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all entries.
+	 */
+	synchronized void clear(){
+		++_generation;
+		_entries.clear();
+	}
+}
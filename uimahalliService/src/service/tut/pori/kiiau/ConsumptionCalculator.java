@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import service.tut.pori.kiiau.datatypes.Consumption;
+
+/**
+ * Calculates the consumption of a cumulative gauge per time bucket in a single pass over the readings of the gauge.
+ * 
+ * The increase between two consecutive readings is distributed over the interval between the readings in proportion to time, so irregular reading intervals
+ * are handled: e.g. the increase over a three day interval is divided evenly between the three days. Only the part of the interval within the requested
+ * range is counted, so the readings immediately before and after the range should be included to cover the edges of the range.
+ * 
+ * As with the daily averages of the mobile client, readings with the same time as the previous reading are ignored, and decreasing readings
+ * (e.g. replaced or reset meter) start a new series without counting the decrease.
+ * 
+ * This class is not thread-safe.
+ */
+final class ConsumptionCalculator {
+	private final long[] _boundaries;
+	private final boolean[] _covered;
+	private boolean _hasPrevious = false;
+	private long _previousTime = 0;
+	private double _previousValue = 0;
+	private final double[] _values;
+	
+	/**
+	 * 
+	 * @param bucket
+	 * @param start the start of the range (inclusive)
+	 * @param end the end of the range (exclusive)
+	 * @throws IllegalArgumentException on invalid range, see {@link TimeBucket#getBoundaries(Date, Date)}
+	 */
+	ConsumptionCalculator(TimeBucket bucket, Date start, Date end) throws IllegalArgumentException {
+		_boundaries = bucket.getBoundaries(start, end);
+		_values = new double[_boundaries.length - 1];
+		_covered = new boolean[_values.length];
+	}
+	
+	/**
+	 * Add the next reading, the readings must be added in the order of creation time.
+	 * 
+	 * @param value
+	 * @param created
+	 */
+	void add(double value, Date created){
+		long time = created.getTime();
+		if(_hasPrevious && time > _previousTime && value >= _previousValue){
+			distribute(_previousTime, time, value - _previousValue);
+		}
+		_hasPrevious = true;
+		_previousTime = time;
+		_previousValue = value;
+	}
+	
+	/**
+	 * 
+	 * @param from
+	 * @param to
+	 * @param increase the increase between from and to
+	 */
+	private void distribute(long from, long to, double increase){
+		if(to <= _boundaries[0] || from >= _boundaries[_boundaries.length - 1]){
+			return;
+		}
+		double rate = increase / (to - from);
+		int index = Math.max(0, TimeBucket.getBucketIndex(_boundaries, from)); // the bucket containing from, or the first bucket
+		for(; index < _values.length && _boundaries[index] < to; ++index){
+			long overlap = Math.min(to, _boundaries[index + 1]) - Math.max(from, _boundaries[index]);
+			if(overlap > 0){
+				_values[index] += rate * overlap;
+				_covered[index] = true;
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the consumption of each bucket of the range, the first and the last bucket may be partial, or empty list if the readings do not cover any part of the range
+	 */
+	List<Consumption> getConsumption(){
+		List<Consumption> consumption = new ArrayList<>(_values.length);
+		boolean covered = false;
+		for(int i=0; i<_values.length; ++i){
+			consumption.add(new Consumption(new Date(_boundaries[i]), (_covered[i] ? Double.valueOf(_values[i]) : null)));
+			covered |= _covered[i];
+		}
+		return (covered ? consumption : Collections.<Consumption>emptyList());
+	}
+}
@@ -51,15 +51,27 @@ public final class Definitions {
 	protected static final String METHOD_POST_MEASUREMENTS = METHOD_GET_MEASUREMENTS;
 	/** service method declaration */
 	protected static final String METHOD_GET_ALERTS = "AlertInterface";
+	/** service method declaration */
+	protected static final String METHOD_GET_MEASUREMENT_BATCH = "MeasurementBatchInterface";
+	/** service method declaration */
+	protected static final String METHOD_GET_LATEST_MEASUREMENTS = "LatestMeasurementInterface";
+	/** service method declaration */
+	protected static final String METHOD_BUCKET_STATISTICS = "BucketStatistics";
 	
 	/* parameters */
 	/** service method parameter declaration */
 	protected static final String PARAMETER_VALUE_CONTENT = "data";
 	/** service method parameter declaration */
+	protected static final String PARAMETER_CURSOR = "cursor";
+	/** service method parameter declaration */
 	protected static final String PARAMETER_END_DATE = "end_date";
 	/** service method parameter declaration */
+	protected static final String PARAMETER_ENCODING = "encoding";
+	/** service method parameter declaration */
 	protected static final String PARAMETER_LOCATION_ID = "location_id";
 	/** service method parameter declaration */
+	protected static final String PARAMETER_MAX_POINTS = "max_points";
+	/** service method parameter declaration */
 	protected static final String PARAMETER_START_DATE = "start_date";
 	/** service method parameter declaration */
 	protected static final String PARAMETER_TAG_ID = "tag_id";
@@ -69,6 +81,36 @@ public final class Definitions {
 	protected static final String PARAMETER_ALERT_STATUS = "alert_status";
 	/** service method parameter declaration */
 	protected static final String PARAMETER_SORT = "sort";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_SINCE = "since";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_ASYNC = "async";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_BATCH_ID = "batch_id";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_STREAM = "stream";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_BUCKET = "bucket";
+	/** service method parameter declaration */
+	protected static final String PARAMETER_GAUGE_ID = "gauge_id";
+	
+	/* encodings */
+	/** gauge values are returned as a list of value objects, this is the default */
+	protected static final String ENCODING_OBJECTS = "objects";
+	/** gauge values are returned as parallel arrays of timestamps and values, see {@link service.tut.pori.kiiau.datatypes.GaugeValueColumns} */
+	protected static final String ENCODING_COLUMNAR = "columnar";
+	/** as {@link #ENCODING_COLUMNAR}, but the timestamps are delta encoded */
+	protected static final String ENCODING_COLUMNAR_DELTA = "columnar_delta";
+	
+	/* time buckets */
+	/** hour of day */
+	protected static final String BUCKET_HOUR = "hour";
+	/** calendar day, from midnight to midnight, this is the default */
+	protected static final String BUCKET_DAY = "day";
+	/** calendar week, starting on Monday (ISO 8601) */
+	protected static final String BUCKET_WEEK = "week";
+	/** calendar month */
+	protected static final String BUCKET_MONTH = "month";
 		
 	/* DATA GROUPS */
 	/** data group that contains gauge details */
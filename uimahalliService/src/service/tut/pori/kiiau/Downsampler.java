@@ -0,0 +1,135 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+/**
+ * Downsampling of gauge value series for charts, using the Largest-Triangle-Three-Buckets (LTTB) algorithm.
+ * 
+ * The series is divided into buckets, and from each bucket the value forming the largest triangle with the previously selected value
+ * and the average of the next bucket is selected. The first and the last value are always retained.
+ * Unlike simply truncating the series, the shape of the whole series (including peaks) is preserved.
+ */
+final class Downsampler {
+	/** the minimum amount of points, the first and the last value, and at least one bucket */
+	static final int MIN_POINTS = 3;
+
+	/**
+	 * 
+	 */
+	private Downsampler(){
+		// nothing needed
+	}
+
+	/**
+	 * Downsample the values of all numeric gauges of the given meters. Values of text gauges are not modified.
+	 * 
+	 * @param meters
+	 * @param maxPoints the maximum amount of values per gauge
+	 * @throws IllegalArgumentException on invalid maxPoints
+	 */
+	static void downsample(Meters meters, int maxPoints) throws IllegalArgumentException {
+		if(maxPoints < MIN_POINTS){
+			throw new IllegalArgumentException("Invalid maximum amount of points: "+maxPoints+", the minimum is "+MIN_POINTS);
+		}
+		if(Meters.isEmpty(meters)){
+			return;
+		}
+		for(Meter meter : meters.getMeters()){
+			if(Meter.isEmpty(meter)){
+				continue;
+			}
+			for(Gauge gauge : meter.getGauges()){
+				if(gauge.getDataType() != DataType.STRING && !Gauge.isValuesEmpty(gauge) && gauge.getValues().size() > maxPoints){
+					gauge.setValues(largestTriangleThreeBuckets(gauge.getValues(), maxPoints));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Values without numeric value are ignored.
+	 * 
+	 * @param values the values ordered by time, either ascending or descending
+	 * @param maxPoints the maximum amount of values to return, at least {@value #MIN_POINTS}
+	 * @return the downsampled values in the original order, or the given list if it had no more than maxPoints values
+	 */
+	static List<GaugeValue> largestTriangleThreeBuckets(List<GaugeValue> values, int maxPoints){
+		List<GaugeValue> numeric = new ArrayList<>(values.size());
+		for(GaugeValue value : values){
+			if(value.hasNumericValue() && value.getUpdatedTimestamp() != null){
+				numeric.add(value);
+			}
+		}
+		int count = numeric.size();
+		if(count <= maxPoints){
+			return (count == values.size() ? values : numeric);
+		}
+
+		long origin = numeric.get(0).getUpdatedTimestamp().getTime(); // use relative times to keep the products small
+		double[] x = new double[count];
+		double[] y = new double[count];
+		for(int i=0; i<count; ++i){
+			GaugeValue value = numeric.get(i);
+			x[i] = value.getUpdatedTimestamp().getTime() - origin;
+			y[i] = value.getNumericValue();
+		}
+
+		List<GaugeValue> sampled = new ArrayList<>(maxPoints);
+		sampled.add(numeric.get(0));
+		double bucketSize = (double) (count - 2) / (maxPoints - 2); // the first and the last value are not part of any bucket
+		int selected = 0;
+		for(int bucket=0; bucket<maxPoints-2; ++bucket){
+			int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1; // the next bucket, for the average point
+			int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, count);
+			double averageX = 0;
+			double averageY = 0;
+			for(int i=nextStart; i<nextEnd; ++i){
+				averageX += x[i];
+				averageY += y[i];
+			}
+			int nextCount = nextEnd - nextStart;
+			averageX /= nextCount;
+			averageY /= nextCount;
+
+			int start = (int) Math.floor(bucket * bucketSize) + 1; // the current bucket
+			int end = nextStart;
+			double selectedX = x[selected];
+			double selectedY = y[selected];
+			double maxArea = -1;
+			int next = start;
+			for(int i=start; i<end; ++i){
+				double area = Math.abs((selectedX - averageX) * (y[i] - selectedY) - (selectedX - x[i]) * (averageY - selectedY)); // double the triangle area, sufficient for comparison
+				if(area > maxArea){
+					maxArea = area;
+					next = i;
+				}
+			}
+			sampled.add(numeric.get(next));
+			selected = next;
+		}
+		sampled.add(numeric.get(count - 1));
+		return sampled;
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.Collections;
+import java.util.Map;
+
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+
+/**
+ * In-memory catalog of gauge details required for validating and storing gauge values.
+ * 
+ * The catalog holds a complete snapshot of the gauge details, which is replaced as a whole: 
+ * the DAO loads a new snapshot after the catalog has been invalidated. 
+ * A snapshot loaded concurrently with an invalidation is discarded.
+ * 
+ * This class is thread-safe.
+ */
+final class GaugeCatalog {
+	private Map<String, GaugeDetails> _gauges = null;
+	private long _version = 0;
+	
+	/**
+	 * Details of a single gauge.
+	 * 
+	 */
+	static final class GaugeDetails {
+		private final Boolean _cumulative;
+		private final DataType _dataType;
+		private final String _gaugeId;
+		private final int _gaugeKey;
+		private final Double _max;
+		private final Double _maxIncrease;
+		private final long _meterId;
+		private final Double _min;
+		private final Double _minIncrease;
+		private final boolean _rollupsComplete;
+		private final long _userId;
+		
+		/**
+		 * 
+		 * @param gaugeId
+		 * @param gaugeKey the internal key of the gauge, used in the gauge value table
+		 * @param meterId
+		 * @param userId owner of the gauge's meter
+		 * @param dataType
+		 * @param min
+		 * @param max
+		 * @param minIncrease
+		 * @param maxIncrease
+		 * @param cumulative
+		 * @param rollupsComplete true if the hourly and daily aggregates of the gauge contain all values of the gauge
+		 */
+		GaugeDetails(String gaugeId, int gaugeKey, long meterId, long userId, DataType dataType, Double min, Double max, Double minIncrease, Double maxIncrease, Boolean cumulative, boolean rollupsComplete) {
+			_gaugeId = gaugeId;
+			_gaugeKey = gaugeKey;
+			_meterId = meterId;
+			_userId = userId;
+			_dataType = dataType;
+			_min = min;
+			_max = max;
+			_minIncrease = minIncrease;
+			_maxIncrease = maxIncrease;
+			_cumulative = cumulative;
+			_rollupsComplete = rollupsComplete;
+		}
+
+		/**
+		 * @return the cumulative
+		 */
+		Boolean isCumulative() {
+			return _cumulative;
+		}
+
+		/**
+		 * @return the dataType
+		 */
+		DataType getDataType() {
+			return _dataType;
+		}
+
+		/**
+		 * @return the gaugeId
+		 */
+		String getGaugeId() {
+			return _gaugeId;
+		}
+
+		/**
+		 * @return the internal gauge key
+		 */
+		int getGaugeKey() {
+			return _gaugeKey;
+		}
+
+		/**
+		 * @return the max
+		 */
+		Double getMax() {
+			return _max;
+		}
+
+		/**
+		 * @return the maxIncrease
+		 */
+		Double getMaxIncrease() {
+			return _maxIncrease;
+		}
+
+		/**
+		 * @return the meterId
+		 */
+		long getMeterId() {
+			return _meterId;
+		}
+
+		/**
+		 * @return the min
+		 */
+		Double getMin() {
+			return _min;
+		}
+
+		/**
+		 * @return the minIncrease
+		 */
+		Double getMinIncrease() {
+			return _minIncrease;
+		}
+
+		/**
+		 * @return true if the hourly and daily aggregates of the gauge contain all values of the gauge
+		 */
+		boolean isRollupsComplete() {
+			return _rollupsComplete;
+		}
+
+		/**
+		 * @return the owner of the gauge's meter
+		 */
+		long getUserId() {
+			return _userId;
+		}
+	} // class GaugeDetails
+	
+	/**
+	 * 
+	 * @return the current snapshot (gauge id - gauge details map), or null if the catalog has not been loaded or has been invalidated
+	 */
+	synchronized Map<String, GaugeDetails> getGauges() {
+		return _gauges;
+	}
+	
+	/**
+	 * 
+	 * @return the current version, must be retrieved before loading a new snapshot
+	 */
+	synchronized long getVersion() {
+		return _version;
+	}
+	
+	/**
+	 * 
+	 * @param gauges
+	 * @param version the version retrieved before the snapshot was loaded
+	 * @return true if the snapshot was accepted, false if the catalog was invalidated while loading the snapshot
+	 */
+	synchronized boolean setGauges(Map<String, GaugeDetails> gauges, long version) {
+		if(version != _version){
+			return false;
+		}
+		_gauges = Collections.unmodifiableMap(gauges);
+		return true;
+	}
+	
+	/**
+	 * Discard the current snapshot.
+	 */
+	synchronized void invalidate() {
+		_gauges = null;
+		++_version;
+	}
+}
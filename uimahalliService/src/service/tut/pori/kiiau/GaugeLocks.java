@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped write locks for gauges.
+ * 
+ * Each gauge id is mapped to one of a fixed number of locks (stripes). Writers of different gauges proceed in parallel (unless the gauges happen to share a stripe),
+ * and writers of the same gauge are serialized. When multiple gauges are locked at once, the stripes are always acquired in ascending order,
+ * which prevents deadlocks between concurrent writers.
+ * 
+ * This class is thread-safe.
+ */
+final class GaugeLocks {
+	/** the default number of stripes */
+	static final int DEFAULT_STRIPE_COUNT = 64;
+	private final ReentrantLock[] _locks;
+
+	/**
+	 * Create locks with the default number of stripes
+	 */
+	GaugeLocks(){
+		this(DEFAULT_STRIPE_COUNT);
+	}
+
+	/**
+	 * 
+	 * @param stripeCount
+	 * @throws IllegalArgumentException on invalid stripe count
+	 */
+	GaugeLocks(int stripeCount) throws IllegalArgumentException {
+		if(stripeCount < 1){
+			throw new IllegalArgumentException("Invalid stripe count: "+stripeCount);
+		}
+		_locks = new ReentrantLock[stripeCount];
+		for(int i=0; i<stripeCount; ++i){
+			_locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Acquire the locks for the given gauges. The locks must be released by calling {@link #unlock(int[])} with the returned stripes.
+	 * 
+	 * @param gaugeIds
+	 * @return the locked stripes
+	 */
+	int[] lock(Collection<String> gaugeIds){
+		int[] stripes = new int[gaugeIds.size()];
+		int count = 0;
+		for(String gaugeId : gaugeIds){
+			stripes[count++] = stripe(gaugeId);
+		}
+		Arrays.sort(stripes);
+
+		int unique = 0; // remove duplicates, a stripe is locked only once
+		for(int i=0; i<count; ++i){
+			if(unique == 0 || stripes[unique-1] != stripes[i]){
+				stripes[unique++] = stripes[i];
+			}
+		}
+		stripes = Arrays.copyOf(stripes, unique);
+
+		for(int i=0; i<stripes.length; ++i){
+			_locks[stripes[i]].lock();
+		}
+		return stripes;
+	}
+
+	/**
+	 * 
+	 * @param stripes the stripes returned by {@link #lock(Collection)}
+	 */
+	void unlock(int[] stripes){
+		for(int i=stripes.length-1; i>=0; --i){
+			_locks[stripes[i]].unlock();
+		}
+	}
+
+	/**
+	 * 
+	 * @param gaugeId
+	 * @return the stripe for the given gauge id
+	 */
+	private int stripe(String gaugeId){
+		int hash = gaugeId.hashCode();
+		hash ^= (hash >>> 16); // spread the higher bits
+		return (hash & Integer.MAX_VALUE) % _locks.length;
+	}
+}
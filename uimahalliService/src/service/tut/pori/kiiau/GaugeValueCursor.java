@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Continuation position for the value history of a single gauge.
+ * 
+ * The cursor identifies the last value of a page by its creation time and row id. The next page is retrieved by seeking past that position
+ * using the (gauge_key, row_created) index, so the cost of a page does not depend on how far into the history the page is.
+ * 
+ * The cursor is passed to the clients as an opaque token.
+ */
+final class GaugeValueCursor {
+	private static final char SEPARATOR = '.';
+	private static final int RADIX = Character.MAX_RADIX;
+	private final int _gaugeKey;
+	private final Date _rowCreated;
+	private final long _gaugeValueId;
+
+	/**
+	 * 
+	 * @param gaugeKey
+	 * @param rowCreated
+	 * @param gaugeValueId
+	 */
+	GaugeValueCursor(int gaugeKey, Date rowCreated, long gaugeValueId){
+		_gaugeKey = gaugeKey;
+		_rowCreated = rowCreated;
+		_gaugeValueId = gaugeValueId;
+	}
+
+	/**
+	 * @return the gauge key
+	 */
+	int getGaugeKey() {
+		return _gaugeKey;
+	}
+
+	/**
+	 * @return the creation time of the last value of the previous page
+	 */
+	Date getRowCreated() {
+		return _rowCreated;
+	}
+
+	/**
+	 * @return the row id of the last value of the previous page
+	 */
+	long getGaugeValueId() {
+		return _gaugeValueId;
+	}
+
+	/**
+	 * 
+	 * @return this cursor as a token
+	 */
+	String toToken(){
+		return Integer.toString(_gaugeKey, RADIX)+SEPARATOR+Long.toString(_rowCreated.getTime(), RADIX)+SEPARATOR+Long.toString(_gaugeValueId, RADIX);
+	}
+
+	/**
+	 * 
+	 * @param token
+	 * @return the token converted to a cursor
+	 * @throws IllegalArgumentException on invalid token
+	 */
+	static GaugeValueCursor fromToken(String token) throws IllegalArgumentException {
+		String[] parts = StringUtils.split(token, SEPARATOR);
+		if(parts == null || parts.length != 3){
+			throw new IllegalArgumentException("Invalid cursor: "+token);
+		}
+		try{
+			return new GaugeValueCursor(Integer.parseInt(parts[0], RADIX), new Date(Long.parseLong(parts[1], RADIX)), Long.parseLong(parts[2], RADIX));
+		} catch (NumberFormatException ex){
+			throw new IllegalArgumentException("Invalid cursor: "+token, ex);
+		}
+	}
+
+	/**
+	 * 
+	 * @param tokens
+	 * @return the tokens converted to cursors or null if null or empty list was given
+	 * @throws IllegalArgumentException on invalid token
+	 */
+	static List<GaugeValueCursor> fromTokens(List<String> tokens) throws IllegalArgumentException {
+		if(tokens == null || tokens.isEmpty()){
+			return null;
+		}
+		List<GaugeValueCursor> cursors = new ArrayList<>(tokens.size());
+		for(String token : tokens){
+			cursors.add(fromToken(token));
+		}
+		return cursors;
+	}
+}
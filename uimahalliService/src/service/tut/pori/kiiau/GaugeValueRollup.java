@@ -0,0 +1,329 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Aggregate of the numeric values of a single gauge over a single period (an hour or a day).
+ * 
+ * All members of the aggregate can be merged: the aggregate of a day is the merge of the aggregates of the hours of the day,
+ * and the aggregate of a longer range is the merge of the aggregates of the periods in the range. Quantiles are estimated with a {@link QuantileSketch}.
+ * 
+ * Hours are aligned to whole hours since epoch, days to the midnight of the default time zone.
+ */
+final class GaugeValueRollup {
+	private long _count = 0;
+	private Date _firstCreated = null;
+	private double _firstValue = 0;
+	private Date _lastCreated = null;
+	private double _lastValue = 0;
+	private double _max = Double.NaN;
+	private double _min = Double.NaN;
+	private final Date _periodStart;
+	private QuantileSketch _sketch = new QuantileSketch();
+	private double _sum = 0;
+	private double _sumSquares = 0;
+
+	/**
+	 * The length of the aggregation period.
+	 * 
+	 */
+	enum Period {
+		/** one hour */
+		HOUR(1),
+		/** one day, from midnight to midnight */
+		DAY(2);
+
+		private static final long HOUR_MILLIS = 3600000;
+		private final int _value;
+
+		/**
+		 * 
+		 * @param value
+		 */
+		private Period(int value){
+			_value = value;
+		}
+
+		/**
+		 * 
+		 * @return the period as integer
+		 */
+		int toInt(){
+			return _value;
+		}
+
+		/**
+		 * 
+		 * @param value
+		 * @return the value converted to period
+		 * @throws IllegalArgumentException on bad value
+		 */
+		static Period fromInt(int value) throws IllegalArgumentException {
+			for(Period p : values()){
+				if(p._value == value){
+					return p;
+				}
+			}
+			throw new IllegalArgumentException("Invalid value: "+value);
+		}
+
+		/**
+		 * 
+		 * @param date
+		 * @return the start of the period containing the given date
+		 */
+		Date getStart(Date date){
+			long time = date.getTime();
+			if(this == HOUR){
+				return new Date(time - (((time % HOUR_MILLIS) + HOUR_MILLIS) % HOUR_MILLIS));
+			}
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			calendar.set(Calendar.HOUR_OF_DAY, 0);
+			calendar.set(Calendar.MINUTE, 0);
+			calendar.set(Calendar.SECOND, 0);
+			calendar.set(Calendar.MILLISECOND, 0);
+			return calendar.getTime();
+		}
+
+		/**
+		 * 
+		 * @param start start of a period
+		 * @return the start of the next period
+		 */
+		Date getNext(Date start){
+			if(this == HOUR){
+				return new Date(start.getTime() + HOUR_MILLIS);
+			}
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(start);
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			return getStart(calendar.getTime()); // the length of a day varies on daylight saving time changes
+		}
+
+		/**
+		 * 
+		 * @param date
+		 * @return the start of the first period beginning at or after the given date
+		 */
+		Date getCeiling(Date date){
+			Date start = getStart(date);
+			return (start.equals(date) ? start : getNext(start));
+		}
+	} // enum Period
+
+	/**
+	 * 
+	 * @param periodStart
+	 */
+	GaugeValueRollup(Date periodStart){
+		_periodStart = periodStart;
+	}
+
+	/**
+	 * Add a value to the aggregate.
+	 * 
+	 * @param value
+	 * @param created
+	 */
+	void add(double value, Date created){
+		if(_count == 0){
+			_min = value;
+			_max = value;
+		}else{
+			_min = Math.min(_min, value);
+			_max = Math.max(_max, value);
+		}
+		++_count;
+		_sum += value;
+		_sumSquares += value * value;
+		_sketch.add(value);
+		if(_firstCreated == null || created.before(_firstCreated)){
+			_firstCreated = created;
+			_firstValue = value;
+		}
+		if(_lastCreated == null || !created.before(_lastCreated)){
+			_lastCreated = created;
+			_lastValue = value;
+		}
+	}
+
+	/**
+	 * Merge the given aggregate to this aggregate. Empty aggregates are ignored.
+	 * 
+	 * @param rollup
+	 */
+	void merge(GaugeValueRollup rollup){
+		if(rollup._count < 1){
+			return;
+		}
+		if(_count == 0){
+			_min = rollup._min;
+			_max = rollup._max;
+		}else{
+			_min = Math.min(_min, rollup._min);
+			_max = Math.max(_max, rollup._max);
+		}
+		_count += rollup._count;
+		_sum += rollup._sum;
+		_sumSquares += rollup._sumSquares;
+		_sketch.merge(rollup._sketch);
+		if(_firstCreated == null || rollup._firstCreated.before(_firstCreated)){
+			_firstCreated = rollup._firstCreated;
+			_firstValue = rollup._firstValue;
+		}
+		if(_lastCreated == null || !rollup._lastCreated.before(_lastCreated)){
+			_lastCreated = rollup._lastCreated;
+			_lastValue = rollup._lastValue;
+		}
+	}
+
+	/**
+	 * Set the members of the aggregate, previous members are overwritten.
+	 * 
+	 * @param count
+	 * @param sum
+	 * @param sumSquares
+	 * @param min
+	 * @param max
+	 * @param firstCreated
+	 * @param firstValue
+	 * @param lastCreated
+	 * @param lastValue
+	 * @param sketch
+	 */
+	void set(long count, double sum, double sumSquares, double min, double max, Date firstCreated, double firstValue, Date lastCreated, double lastValue, QuantileSketch sketch){
+		_count = count;
+		_sum = sum;
+		_sumSquares = sumSquares;
+		_min = min;
+		_max = max;
+		_firstCreated = firstCreated;
+		_firstValue = firstValue;
+		_lastCreated = lastCreated;
+		_lastValue = lastValue;
+		_sketch = sketch;
+	}
+
+	/**
+	 * @return the start of the period
+	 */
+	Date getPeriodStart() {
+		return _periodStart;
+	}
+
+	/**
+	 * @return the amount of values
+	 */
+	long getCount() {
+		return _count;
+	}
+
+	/**
+	 * @return the sum of the values
+	 */
+	double getSum() {
+		return _sum;
+	}
+
+	/**
+	 * @return the sum of the squares of the values
+	 */
+	double getSumSquares() {
+		return _sumSquares;
+	}
+
+	/**
+	 * @return the smallest value or NaN if there are no values
+	 */
+	double getMin() {
+		return _min;
+	}
+
+	/**
+	 * @return the largest value or NaN if there are no values
+	 */
+	double getMax() {
+		return _max;
+	}
+
+	/**
+	 * @return the creation time of the first value or null if there are no values
+	 */
+	Date getFirstCreated() {
+		return _firstCreated;
+	}
+
+	/**
+	 * @return the first value
+	 */
+	double getFirstValue() {
+		return _firstValue;
+	}
+
+	/**
+	 * @return the creation time of the last value or null if there are no values
+	 */
+	Date getLastCreated() {
+		return _lastCreated;
+	}
+
+	/**
+	 * @return the last value
+	 */
+	double getLastValue() {
+		return _lastValue;
+	}
+
+	/**
+	 * @return the quantile sketch of the values
+	 */
+	QuantileSketch getSketch() {
+		return _sketch;
+	}
+
+	/**
+	 * 
+	 * @param quantile the quantile, between 0 and 1
+	 * @return the estimated value of the given quantile, limited to the range of the values, or NaN if there are no values
+	 * @throws IllegalArgumentException on invalid quantile
+	 */
+	double getQuantile(double quantile) throws IllegalArgumentException {
+		double value = _sketch.getQuantile(quantile);
+		return (Double.isNaN(value) ? value : Math.min(_max, Math.max(_min, value)));
+	}
+
+	/**
+	 * @return the average of the values or NaN if there are no values
+	 */
+	double getAverage() {
+		return (_count < 1 ? Double.NaN : _sum / _count);
+	}
+
+	/**
+	 * @return the population variance of the values or NaN if there are no values
+	 */
+	double getVariance() {
+		if(_count < 1){
+			return Double.NaN;
+		}
+		double average = _sum / _count;
+		return Math.max(0, _sumSquares / _count - average * average); // rounding errors may cause slightly negative results
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+
+/**
+ * In-memory table of the latest (newest by creation time) value of each gauge.
+ * 
+ * The table is loaded once from the database, and kept up-to-date by the DAO as new values are added.
+ * Updates made while the table is being loaded are retained: the loaded values and the updated values are merged, and the newer value of each gauge is kept.
+ * 
+ * The stored values are shared, and must not be modified.
+ * 
+ * This class is thread-safe.
+ */
+final class LatestGaugeValues {
+	private boolean _loaded = false;
+	private final Map<Integer, GaugeValue> _values = new HashMap<>();
+
+	/**
+	 * 
+	 * @return true if the table has been loaded
+	 */
+	synchronized boolean isLoaded() {
+		return _loaded;
+	}
+
+	/**
+	 * 
+	 * @param gaugeKey
+	 * @return the latest value of the gauge or null if the gauge has no values
+	 */
+	synchronized GaugeValue get(int gaugeKey) {
+		return _values.get(gaugeKey);
+	}
+
+	/**
+	 * Merge the loaded values to the table, and mark the table as loaded. On equal creation times, the loaded value replaces the current value.
+	 *
+	 * @param values gauge key - latest value map
+	 */
+	synchronized void load(Map<Integer, GaugeValue> values) {
+		for(Entry<Integer, GaugeValue> e : values.entrySet()){
+			GaugeValue value = e.getValue();
+			GaugeValue current = _values.get(e.getKey());
+			if(current == null || !value.getUpdatedTimestamp().before(current.getUpdatedTimestamp())){
+				_values.put(e.getKey(), value);
+			}
+		}
+		_loaded = true;
+	}
+
+	/**
+	 * Set the given value as the latest value of the gauge, if the value is newer than the current latest value.
+	 * 
+	 * Values with the same creation time as the current value are ignored, as the database keeps the existing value on duplicate timestamps.
+	 * 
+	 * @param gaugeKey
+	 * @param value
+	 */
+	synchronized void update(int gaugeKey, GaugeValue value) {
+		GaugeValue current = _values.get(gaugeKey);
+		if(current == null || value.getUpdatedTimestamp().after(current.getUpdatedTimestamp())){
+			_values.put(gaugeKey, value);
+		}
+	}
+}
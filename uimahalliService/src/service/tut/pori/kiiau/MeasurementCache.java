@@ -0,0 +1,289 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.GaugeValueColumns;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+/**
+ * Bounded cache for measurement query results.
+ * 
+ * The results are cached by a normalized request key, and evicted in least-recently-used order when either the maximum amount of entries
+ * or the maximum total amount of gauge values in the cached results is exceeded. Concurrent requests with the same key are coalesced:
+ * only the first request executes the query, the other requests wait for its result.
+ * 
+ * The cached results are shared between requests, and must not be modified.
+ * 
+ * An entry is invalidated when new values are added for any of the gauges in the entry's result. Entries which are still being loaded
+ * are invalidated on any invalidation, as their gauges are not yet known.
+ * 
+ * The hit, miss, eviction and invalidation counts are logged on info level after every {@value #STATISTICS_LOG_INTERVAL} requests.
+ * 
+ * This class is thread-safe.
+ */
+final class MeasurementCache {
+	/** the default maximum amount of cached results */
+	static final int DEFAULT_MAX_ENTRIES = 256;
+	/** the default maximum amount of gauge values in all cached results */
+	static final long DEFAULT_MAX_VALUES = 1000000;
+	/** the amount of requests between the statistics log entries */
+	static final int STATISTICS_LOG_INTERVAL = 1000;
+	private static final Logger LOGGER = Logger.getLogger(MeasurementCache.class);
+	private final LinkedHashMap<String, CacheEntry> _entries = new LinkedHashMap<>(16, 0.75f, true); // in access order
+	private final AtomicLong _evictionCount = new AtomicLong();
+	private final AtomicLong _hitCount = new AtomicLong();
+	private final AtomicLong _invalidationCount = new AtomicLong();
+	private final int _maxEntries;
+	private final long _maxValues;
+	private final AtomicLong _missCount = new AtomicLong();
+	private final AtomicLong _requestCount = new AtomicLong();
+	private long _valueCount = 0;
+
+	/**
+	 * A single cached result.
+	 * 
+	 */
+	private static final class CacheEntry {
+		private Set<String> _gaugeIds = null; // null while loading
+		private final FutureTask<Meters> _task;
+		private long _valueCount = 0;
+
+		/**
+		 * 
+		 * @param task
+		 */
+		CacheEntry(FutureTask<Meters> task){
+			_task = task;
+		}
+	} // class CacheEntry
+
+	/**
+	 * Create cache with default limits
+	 */
+	MeasurementCache(){
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUES);
+	}
+
+	/**
+	 * 
+	 * @param maxEntries
+	 * @param maxValues
+	 * @throws IllegalArgumentException on invalid limits
+	 */
+	MeasurementCache(int maxEntries, long maxValues) throws IllegalArgumentException {
+		if(maxEntries < 1 || maxValues < 1){
+			throw new IllegalArgumentException("Invalid cache limits, entries: "+maxEntries+", values: "+maxValues);
+		}
+		_maxEntries = maxEntries;
+		_maxValues = maxValues;
+	}
+
+	/**
+	 * Returns the cached result for the given key. If no result is cached, the result is loaded using the given loader and stored in the cache.
+	 * 
+	 * @param key
+	 * @param loader
+	 * @return the result, which must not be modified
+	 * @throws IllegalArgumentException if thrown by the loader
+	 */
+	Meters get(String key, Callable<Meters> loader) throws IllegalArgumentException {
+		CacheEntry entry = null;
+		boolean loading = false;
+		synchronized (_entries) {
+			entry = _entries.get(key);
+			if(entry == null){
+				entry = new CacheEntry(new FutureTask<>(loader));
+				_entries.put(key, entry);
+				loading = true;
+			}
+		}
+
+		if(loading){
+			_missCount.incrementAndGet();
+			entry._task.run();
+		}else{
+			_hitCount.incrementAndGet();
+		}
+		if(_requestCount.incrementAndGet() % STATISTICS_LOG_INTERVAL == 0){
+			LOGGER.info("Measurement cache statistics, "+getStatistics());
+		}
+
+		Meters meters = null;
+		try {
+			meters = entry._task.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the result.", ex);
+		} catch (ExecutionException ex) {
+			synchronized (_entries) {
+				if(_entries.get(key) == entry){
+					_entries.remove(key);
+				}
+			}
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Failed to load the result.", cause);
+		}
+
+		if(loading){
+			loaded(key, entry, meters);
+		}
+		return meters;
+	}
+
+	/**
+	 * Stores the details of a loaded entry, and evicts entries if the limits are exceeded.
+	 * 
+	 * @param key
+	 * @param entry
+	 * @param meters
+	 */
+	private void loaded(String key, CacheEntry entry, Meters meters){
+		Set<String> gaugeIds = new HashSet<>();
+		long valueCount = 0;
+		if(!Meters.isEmpty(meters)){
+			for(Meter meter : meters.getMeters()){
+				List<Gauge> gauges = meter.getGauges();
+				if(gauges == null){
+					continue;
+				}
+				for(Gauge gauge : gauges){
+					gaugeIds.add(gauge.getId());
+					if(!Gauge.isValuesEmpty(gauge)){
+						valueCount += gauge.getValues().size();
+					}
+					GaugeValueColumns columns = gauge.getColumns();
+					if(columns != null){
+						valueCount += columns.getTimestamps().length;
+					}
+				}
+			}
+		}
+
+		synchronized (_entries) {
+			if(_entries.get(key) != entry){
+				LOGGER.debug("The entry was invalidated while loading.");
+				return;
+			}
+			if(valueCount > _maxValues){
+				LOGGER.debug("The result is too large to be cached, value count: "+valueCount);
+				_entries.remove(key);
+				return;
+			}
+			entry._gaugeIds = (gaugeIds.isEmpty() ? Collections.<String>emptySet() : gaugeIds);
+			entry._valueCount = valueCount;
+			_valueCount += valueCount;
+			for(Iterator<Map.Entry<String, CacheEntry>> iter = _entries.entrySet().iterator(); iter.hasNext() && (_entries.size() > _maxEntries || _valueCount > _maxValues);){
+				CacheEntry eldest = iter.next().getValue();
+				if(eldest == entry){
+					continue;
+				}
+				iter.remove();
+				_valueCount -= eldest._valueCount;
+				_evictionCount.incrementAndGet();
+			}
+		}
+		if(LOGGER.isDebugEnabled()){
+			LOGGER.debug("Cached result with "+valueCount+" values, "+getStatistics());
+		}
+	}
+
+	/**
+	 * Removes the entries containing any of the given gauges, and all entries being loaded.
+	 * 
+	 * @param gaugeIds
+	 */
+	void invalidate(Collection<String> gaugeIds){
+		synchronized (_entries) {
+			for(Iterator<CacheEntry> iter = _entries.values().iterator(); iter.hasNext();){
+				CacheEntry entry = iter.next();
+				if(entry._gaugeIds == null || !Collections.disjoint(entry._gaugeIds, gaugeIds)){
+					iter.remove();
+					_valueCount -= entry._valueCount;
+					_invalidationCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear(){
+		synchronized (_entries) {
+			_invalidationCount.addAndGet(_entries.size());
+			_entries.clear();
+			_valueCount = 0;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the hit rate, and the hit, miss, eviction and invalidation counts as a string
+	 */
+	String getStatistics(){
+		long hits = _hitCount.get();
+		long misses = _missCount.get();
+		return "hits: "+hits+", misses: "+misses+", hit rate: "+(hits + misses == 0 ? 0 : hits * 100 / (hits + misses))+" %, evictions: "+_evictionCount.get()+", invalidations: "+_invalidationCount.get();
+	}
+
+	/**
+	 * @return the amount of requests served from the cache
+	 */
+	long getHitCount(){
+		return _hitCount.get();
+	}
+
+	/**
+	 * @return the amount of requests for which the result was loaded
+	 */
+	long getMissCount(){
+		return _missCount.get();
+	}
+
+	/**
+	 * @return the amount of entries evicted because of the cache limits
+	 */
+	long getEvictionCount(){
+		return _evictionCount.get();
+	}
+
+	/**
+	 * @return the amount of entries removed because of changed data
+	 */
+	long getInvalidationCount(){
+		return _invalidationCount.get();
+	}
+}
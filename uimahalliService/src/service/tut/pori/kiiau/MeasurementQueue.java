@@ -0,0 +1,479 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.MeasurementBatch;
+import service.tut.pori.kiiau.datatypes.MeasurementBatch.BatchStatus;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+import com.google.gson.Gson;
+
+import core.tut.pori.context.ServiceInitializer;
+import core.tut.pori.utils.JSONFormatter;
+
+/**
+ * Write-behind queue for validated measurements.
+ * 
+ * Accepted batches are appended to a local spill file before they are acknowledged, and a single writer thread 
+ * drains the queue to the database in group commits limited by row count and time. The spill file is truncated
+ * whenever the queue has been fully drained, and the remaining contents are re-queued on start-up. 
+ * Re-inserting an already committed batch is harmless, as duplicate gauge values are ignored by the database.
+ * Batches that cannot be written are moved from the spill file to a dead-letter file (the spill file name followed by {@value #DEAD_LETTER_FILE_SUFFIX}),
+ * which is never replayed automatically, so that a batch which always fails is not retried on every start-up.
+ * 
+ * This class is thread-safe.
+ */
+public final class MeasurementQueue {
+	/** the default maximum amount of gauge values waiting in the queue */
+	public static final int DEFAULT_MAX_QUEUED_ROWS = 100000;
+	/** the default maximum amount of gauge values written in a single group commit */
+	public static final int DEFAULT_MAX_GROUP_ROWS = 5000;
+	/** the default maximum time in milliseconds a group commit waits for additional batches */
+	public static final long DEFAULT_MAX_GROUP_DELAY = 200;
+	/** the default time in milliseconds a producer waits for free queue capacity */
+	public static final long DEFAULT_OFFER_TIMEOUT = 5000;
+	/** the suffix appended to the name of the spill file for the name of the dead-letter file */
+	public static final String DEAD_LETTER_FILE_SUFFIX = ".failed";
+	private static final Logger LOGGER = Logger.getLogger(MeasurementQueue.class);
+	private static final int MAX_BATCH_STATUSES = 10000;
+	private static final char SPILL_SEPARATOR = '\t';
+	private final Map<String, BatchState> _batchStatuses = new LinkedHashMap<String, BatchState>(){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, BatchState> eldest) {
+			return size() > MAX_BATCH_STATUSES;
+		}
+	};
+	private final Semaphore _capacity;
+	private final File _deadLetterFile;
+	private final int _maxGroupRows;
+	private final long _maxGroupDelay;
+	private final int _maxQueuedRows;
+	private final long _offerTimeout;
+	private final Gson _parser = JSONFormatter.createGsonSerializer();
+	private final LinkedBlockingQueue<Batch> _queue = new LinkedBlockingQueue<>();
+	private final File _spillFile;
+	private final Object _spillLock = new Object();
+	private FileOutputStream _spillStream = null;
+	private Thread _writer = null;
+	
+	/**
+	 * A single accepted upload.
+	 * 
+	 */
+	private static class Batch {
+		private String _batchId = null;
+		private Meters _meters = null;
+		private int _permits = 0;
+		private int _rowCount = 0;
+		private Long _userId = null;
+	} // class Batch
+	
+	/**
+	 * The status and the owner of a batch.
+	 * 
+	 */
+	private static class BatchState {
+		private final BatchStatus _status;
+		private final Long _userId;
+		
+		/**
+		 * 
+		 * @param userId
+		 * @param status
+		 */
+		public BatchState(Long userId, BatchStatus status) {
+			_userId = userId;
+			_status = status;
+		}
+	} // class BatchState
+	
+	/**
+	 * Creates a queue with the default settings
+	 * 
+	 * @param spillFile the spill file, should be located on persistent storage (e.g. not in the system temp directory, which may be cleared on reboot)
+	 * @throws IllegalArgumentException on invalid spill file
+	 */
+	public MeasurementQueue(File spillFile) throws IllegalArgumentException {
+		this(DEFAULT_MAX_QUEUED_ROWS, DEFAULT_MAX_GROUP_ROWS, DEFAULT_MAX_GROUP_DELAY, DEFAULT_OFFER_TIMEOUT, spillFile);
+	}
+	
+	/**
+	 * 
+	 * @param maxQueuedRows
+	 * @param maxGroupRows
+	 * @param maxGroupDelay in milliseconds
+	 * @param offerTimeout in milliseconds
+	 * @param spillFile
+	 * @throws IllegalArgumentException on invalid values
+	 */
+	public MeasurementQueue(int maxQueuedRows, int maxGroupRows, long maxGroupDelay, long offerTimeout, File spillFile) throws IllegalArgumentException {
+		if(maxQueuedRows < 1 || maxGroupRows < 1 || maxGroupDelay < 0 || offerTimeout < 0 || spillFile == null){
+			throw new IllegalArgumentException("Invalid queue settings.");
+		}
+		_maxQueuedRows = maxQueuedRows;
+		_capacity = new Semaphore(maxQueuedRows);
+		_maxGroupRows = maxGroupRows;
+		_maxGroupDelay = maxGroupDelay;
+		_offerTimeout = offerTimeout;
+		_spillFile = spillFile;
+		_deadLetterFile = new File(spillFile.getPath()+DEAD_LETTER_FILE_SUFFIX);
+	}
+	
+	/**
+	 * Re-queues the contents of the spill file (if any) and starts the writer thread. Calling start for an already started queue has no effect.
+	 * 
+	 * @throws IllegalStateException if the spill file could not be opened
+	 */
+	public synchronized void start() throws IllegalStateException {
+		if(_writer != null){
+			LOGGER.debug("Queue already started.");
+			return;
+		}
+		synchronized (_spillLock) {
+			try {
+				File directory = _spillFile.getAbsoluteFile().getParentFile();
+				if(directory != null && !directory.isDirectory() && !directory.mkdirs()){
+					throw new IOException("Failed to create spill file directory: "+directory.getAbsolutePath());
+				}
+				replay();
+				_spillStream = new FileOutputStream(_spillFile, true);
+			} catch (IOException ex) {
+				LOGGER.error(ex, ex);
+				throw new IllegalStateException("Failed to open spill file: "+_spillFile.getAbsolutePath());
+			}
+		}
+		_writer = new Thread(new Writer(), MeasurementQueue.class.getSimpleName());
+		_writer.setDaemon(true);
+		_writer.start();
+	}
+	
+	/**
+	 * Add validated measurements to the queue. If the queue is full, this will block until capacity is available or the offer timeout expires.
+	 * 
+	 * @param userId the owner of the measurements
+	 * @param meters validated measurements, with resolved gauge data types
+	 * @return the queued batch
+	 * @throws IllegalStateException if the queue is full or the batch could not be written to the spill file
+	 */
+	public MeasurementBatch add(Long userId, Meters meters) throws IllegalStateException {
+		Batch batch = new Batch();
+		batch._batchId = UUID.randomUUID().toString();
+		batch._meters = meters;
+		batch._userId = userId;
+		batch._rowCount = countRows(meters);
+		batch._permits = Math.min(batch._rowCount, _maxQueuedRows);
+		try {
+			if(!_capacity.tryAcquire(batch._permits, _offerTimeout, TimeUnit.MILLISECONDS)){
+				throw new IllegalStateException("Measurement queue is full.");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for queue capacity.");
+		}
+		
+		String line = toSpillLine(batch);
+		synchronized (_spillLock) {
+			try {
+				if(_spillStream == null){
+					throw new IOException("The queue has not been started.");
+				}
+				_spillStream.write(line.getBytes(StandardCharsets.UTF_8));
+				_spillStream.getFD().sync();
+			} catch (IOException ex) {
+				LOGGER.error(ex, ex);
+				_capacity.release(batch._permits);
+				throw new IllegalStateException("Failed to write batch to spill file.");
+			}
+			setStatus(batch, BatchStatus.QUEUED);
+			_queue.add(batch);
+		}
+		return new MeasurementBatch(batch._batchId, BatchStatus.QUEUED);
+	}
+	
+	/**
+	 * 
+	 * @param userId
+	 * @param batchId
+	 * @return the batch or null if no batch owned by the given user was found with the given id (the statuses of old batches are not retained)
+	 */
+	public MeasurementBatch getBatch(Long userId, String batchId) {
+		BatchState state = null;
+		synchronized (_batchStatuses) {
+			state = _batchStatuses.get(batchId);
+		}
+		if(state == null){
+			return null;
+		}else if(state._userId == null || !state._userId.equals(userId)){
+			LOGGER.debug("User, id: "+userId+" is not the owner of batch, id: "+batchId);
+			return null;
+		}else{
+			return new MeasurementBatch(batchId, state._status);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param batch
+	 * @param status
+	 */
+	private void setStatus(Batch batch, BatchStatus status) {
+		synchronized (_batchStatuses) {
+			_batchStatuses.put(batch._batchId, new BatchState(batch._userId, status));
+		}
+	}
+	
+	/**
+	 * 
+	 * @param batch
+	 * @return the batch as a line of the spill file: batch id, user id and the measurements as JSON, separated by tabs
+	 */
+	private String toSpillLine(Batch batch) {
+		return batch._batchId+SPILL_SEPARATOR+batch._userId+SPILL_SEPARATOR+_parser.toJson(batch._meters)+'\n';
+	}
+	
+	/**
+	 * Read the spill file contents into the queue, must be called with the spill lock held
+	 * 
+	 * @throws IOException
+	 */
+	private void replay() throws IOException {
+		if(!_spillFile.exists()){
+			return;
+		}
+		int count = 0;
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(_spillFile), StandardCharsets.UTF_8))){
+			String line = null;
+			while((line = reader.readLine()) != null){
+				int index = line.indexOf(SPILL_SEPARATOR);
+				if(index < 1){
+					LOGGER.warn("Ignored invalid spill file row.");
+					continue;
+				}
+				Batch batch = new Batch();
+				batch._batchId = line.substring(0, index);
+				try{
+					int jsonIndex = line.indexOf(SPILL_SEPARATOR, index + 1);
+					if(jsonIndex < 0){ // rows written before the user ids were stored have no owner
+						jsonIndex = index;
+					}else{
+						batch._userId = Long.valueOf(line.substring(index + 1, jsonIndex));
+					}
+					batch._meters = _parser.fromJson(line.substring(jsonIndex + 1), Meters.class);
+				} catch (RuntimeException ex) { // most likely a partially written last row
+					LOGGER.warn("Ignored unreadable spill file row for batch, id: "+batch._batchId, ex);
+					continue;
+				}
+				batch._rowCount = countRows(batch._meters);
+				int permits = Math.min(batch._rowCount, _capacity.availablePermits());
+				if(_capacity.tryAcquire(permits)){ // replayed batches are never refused
+					batch._permits = permits;
+				}
+				setStatus(batch, BatchStatus.QUEUED);
+				_queue.add(batch);
+				++count;
+			}
+		}
+		LOGGER.info("Re-queued "+count+" batch(es) from spill file: "+_spillFile.getAbsolutePath());
+	}
+	
+	/**
+	 * 
+	 * @param meters
+	 * @return the amount of gauge values in the given meters
+	 */
+	private static int countRows(Meters meters) {
+		int count = 0;
+		if(!Meters.isEmpty(meters)){
+			for(Meter meter : meters.getMeters()){
+				if(Meter.isEmpty(meter)){
+					continue;
+				}
+				for(Gauge gauge : meter.getGauges()){
+					if(!Gauge.isValuesEmpty(gauge)){
+						count += gauge.getValues().size();
+					}
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Writes the given batches to the database in a single transaction. If the transaction fails, the batches are retried one by one, 
+	 * and the batches that still fail are moved to the dead-letter file.
+	 * 
+	 * @param group
+	 */
+	private void commit(List<Batch> group) {
+		int permits = 0;
+		for(Batch batch : group){
+			permits += batch._permits;
+		}
+		List<Batch> failed = new ArrayList<>();
+		try{
+			if(!write(group)){
+				if(group.size() > 1){
+					LOGGER.warn("Group commit failed, retrying "+group.size()+" batches separately...");
+					for(Batch batch : group){
+						if(!write(Arrays.asList(batch))){
+							failed.add(batch);
+						}
+					}
+				}else{
+					failed.addAll(group);
+				}
+			}
+		} finally {
+			_capacity.release(permits);
+		}
+		
+		synchronized (_spillLock) {
+			boolean truncate = _queue.isEmpty(); // everything accepted so far has been processed
+			if(!failed.isEmpty() && !deadLetter(failed)){
+				truncate = false; // keep the failed batches in the spill file for the next start-up
+			}
+			if(truncate){
+				try {
+					_spillStream.getChannel().truncate(0);
+				} catch (IOException ex) {
+					LOGGER.error(ex, ex);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Marks the given batches failed and moves them to the dead-letter file, used when the processing of the batches was aborted by an unexpected error.
+	 * The batches may have been written to the database before the error, in which case re-processing them is harmless.
+	 * 
+	 * @param batches
+	 */
+	private void abort(List<Batch> batches) {
+		for(Batch batch : batches){
+			setStatus(batch, BatchStatus.FAILED);
+		}
+		synchronized (_spillLock) {
+			deadLetter(batches);
+		}
+	}
+	
+	/**
+	 * Appends the given batches to the dead-letter file, must be called with the spill lock held
+	 * 
+	 * @param batches
+	 * @return true if the batches were written to the dead-letter file
+	 */
+	private boolean deadLetter(List<Batch> batches) {
+		try(FileOutputStream out = new FileOutputStream(_deadLetterFile, true)){
+			for(Batch batch : batches){
+				out.write(toSpillLine(batch).getBytes(StandardCharsets.UTF_8));
+			}
+			out.getFD().sync();
+		} catch (IOException ex) {
+			LOGGER.error(ex, ex);
+			return false;
+		}
+		LOGGER.error("Moved "+batches.size()+" failed batch(es) to dead-letter file: "+_deadLetterFile.getAbsolutePath());
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param batches
+	 * @return true on success
+	 */
+	private boolean write(List<Batch> batches) {
+		List<Meter> meterList = new ArrayList<>();
+		for(Batch batch : batches){
+			if(!Meters.isEmpty(batch._meters)){
+				meterList.addAll(batch._meters.getMeters());
+			}
+		}
+		BatchStatus status = BatchStatus.COMMITTED;
+		try{
+			ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).addMeasurements(Meters.getMeters(meterList));
+		} catch (RuntimeException ex) {
+			LOGGER.error(ex, ex);
+			status = BatchStatus.FAILED;
+		}
+		for(Batch batch : batches){
+			setStatus(batch, status);
+		}
+		LOGGER.debug("Commit of "+batches.size()+" batch(es) finished with status: "+status.name());
+		return (status == BatchStatus.COMMITTED);
+	}
+	
+	/**
+	 * The writer task. The writer is the only consumer of the queue, so an unexpected error in a group commit is logged and the writer continues with the next group.
+	 * 
+	 */
+	private class Writer implements Runnable {
+		@Override
+		public void run() {
+			LOGGER.debug("Writer started.");
+			List<Batch> group = new ArrayList<>();
+			try{
+				while(true){
+					Batch batch = _queue.take();
+					group.add(batch);
+					int rows = batch._rowCount;
+					long deadline = System.currentTimeMillis() + _maxGroupDelay;
+					while(rows < _maxGroupRows){
+						long wait = deadline - System.currentTimeMillis();
+						if(wait < 1 || (batch = _queue.poll(wait, TimeUnit.MILLISECONDS)) == null){
+							break;
+						}
+						group.add(batch);
+						rows += batch._rowCount;
+					}
+					try{
+						commit(group);
+					} catch (Throwable ex) { // do not let anything stop the writer
+						LOGGER.error("Processing of "+group.size()+" batch(es) failed unexpectedly.", ex);
+						abort(group);
+					} finally {
+						group.clear();
+					}
+				}
+			} catch (InterruptedException ex) {
+				LOGGER.warn("Writer interrupted, queued batches remain in the spill file: "+_spillFile.getAbsolutePath());
+			}
+		}
+	} // class Writer
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.stream.JsonWriter;
+
+import core.tut.pori.context.ServiceInitializer;
+import core.tut.pori.http.Response;
+import core.tut.pori.http.parameters.Limits;
+import core.tut.pori.http.parameters.SortOptions;
+import core.tut.pori.users.UserIdentity;
+import core.tut.pori.utils.JSONFormatter;
+
+/**
+ * Response which writes the measurements (meters, gauges and gauge values) directly from the database to the servlet output stream.
+ * 
+ * The content is the same as with the default {@link core.tut.pori.http.JSONResponse} containing {@link service.tut.pori.kiiau.datatypes.Meters},
+ * but the gauge values are never held in memory as a whole: the memory use does not depend on the amount of gauge values.
+ * 
+ * As the status is sent before the content is complete, a failure cannot always be reported with an error status. 
+ * If the writing fails before any content has been sent to the client, the response is reset and an internal server error is returned. 
+ * If the writing fails after the first bytes have been sent, an exception is thrown to the servlet container, which closes the connection 
+ * without completing the (chunked) response, so that the client receives an incomplete response instead of a truncated JSON document with status OK.
+ */
+public class MeasurementStreamResponse extends Response {
+	private static final String CONTENT_TYPE = "application/json";
+	private static final String ENCODING = "UTF-8";
+	private static final Logger LOGGER = Logger.getLogger(MeasurementStreamResponse.class);
+	private final UserIdentity _authenticatedUser;
+	private final Date _endDate;
+	private final Limits _limits;
+	private final SortOptions _sortOptions;
+	private final Date _startDate;
+	private final List<String> _tagIds;
+
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param limits applied separately to the values of each gauge, can be null
+	 * @param sortOptions can be null
+	 * @param tagIds can be null
+	 * @param endDate can be null
+	 * @param startDate can be null
+	 */
+	public MeasurementStreamResponse(UserIdentity authenticatedUser, Limits limits, SortOptions sortOptions, List<String> tagIds, Date endDate, Date startDate) {
+		_authenticatedUser = authenticatedUser;
+		_limits = limits;
+		_sortOptions = sortOptions;
+		_tagIds = tagIds;
+		_endDate = endDate;
+		_startDate = startDate;
+	}
+
+	/**
+	 * @throws IllegalStateException if writing the content failed after a part of the content had already been sent to the client
+	 */
+	@Override
+	public void writeTo(HttpServletResponse response) throws IllegalStateException {
+		response.setContentType(CONTENT_TYPE);
+		response.setCharacterEncoding(ENCODING);
+		try {
+			JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), ENCODING)));
+			ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).writeMeters(_authenticatedUser, _limits, _sortOptions, _tagIds, _endDate, _startDate, JSONFormatter.createGsonSerializer(), writer);
+			writer.flush();
+		} catch (IOException | RuntimeException ex) { // e.g. a DataAccessException while reading the gauge values
+			LOGGER.error(ex, ex);
+			if(response.isCommitted()){
+				throw new IllegalStateException("Failed to write the measurements, the response is incomplete.", ex); // the content buffered by the writer is not flushed, the container aborts the connection
+			}
+			response.reset(); // discards the content buffered by the container, the content buffered by the writer is never flushed
+			try {
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			} catch (IOException ex1) {
+				LOGGER.error(ex1, ex1);
+			}
+		}
+	}
+}
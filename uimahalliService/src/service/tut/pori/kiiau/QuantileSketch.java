@@ -0,0 +1,265 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Mergeable sketch for estimating quantiles of a set of values, based on logarithmic bins (DDSketch).
+ * 
+ * Each value is counted to the bin covering the value, the bins grow exponentially with the distance from zero. The quantiles estimated from the sketch
+ * have a relative error of at most {@value #RELATIVE_ACCURACY}. Sketches are merged by adding the bin counts, so the sketch of a range can be combined
+ * from the sketches of the hours and days of the range, and the result is the same as if all values had been added to a single sketch.
+ * 
+ * The amount of bins is bounded by the relative span of the values, e.g. values from 0.001 to 1000000 take at most ~1000 bins. Values closer to zero than
+ * {@value #MIN_INDEXABLE_VALUE} are counted as zeros.
+ * 
+ * This class is not thread-safe.
+ */
+final class QuantileSketch {
+	/** the maximum relative error of the estimated quantiles */
+	static final double RELATIVE_ACCURACY = 0.01;
+	private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+	private static final double MIN_INDEXABLE_VALUE = 1e-9;
+	private static final int VERSION = 1;
+	private long _count = 0;
+	private final TreeMap<Integer, Long> _negativeBins = new TreeMap<>();
+	private final TreeMap<Integer, Long> _positiveBins = new TreeMap<>();
+	private long _zeroCount = 0;
+
+	/**
+	 * Add a value to the sketch. NaN and infinite values are ignored.
+	 * 
+	 * @param value
+	 */
+	void add(double value){
+		if(Double.isNaN(value) || Double.isInfinite(value)){
+			return;
+		}
+		if(value > MIN_INDEXABLE_VALUE){
+			increment(_positiveBins, getIndex(value), 1);
+		}else if(value < -MIN_INDEXABLE_VALUE){
+			increment(_negativeBins, getIndex(-value), 1);
+		}else{
+			++_zeroCount;
+		}
+		++_count;
+	}
+
+	/**
+	 * Merge the given sketch to this sketch.
+	 * 
+	 * @param sketch
+	 */
+	void merge(QuantileSketch sketch){
+		for(Entry<Integer, Long> e : sketch._positiveBins.entrySet()){
+			increment(_positiveBins, e.getKey(), e.getValue());
+		}
+		for(Entry<Integer, Long> e : sketch._negativeBins.entrySet()){
+			increment(_negativeBins, e.getKey(), e.getValue());
+		}
+		_zeroCount += sketch._zeroCount;
+		_count += sketch._count;
+	}
+
+	/**
+	 * 
+	 * @return the amount of values in the sketch
+	 */
+	long getCount(){
+		return _count;
+	}
+
+	/**
+	 * 
+	 * @param quantile the quantile, between 0 and 1, e.g. 0.5 for the median
+	 * @return the estimated value of the given quantile or NaN if the sketch is empty
+	 * @throws IllegalArgumentException on invalid quantile
+	 */
+	double getQuantile(double quantile) throws IllegalArgumentException {
+		if(!(quantile >= 0 && quantile <= 1)){
+			throw new IllegalArgumentException("Invalid quantile: "+quantile);
+		}
+		if(_count < 1){
+			return Double.NaN;
+		}
+		long rank = (long) (quantile * (_count - 1)); // the zero-based rank of the value
+		long seen = 0;
+		for(Entry<Integer, Long> e : _negativeBins.descendingMap().entrySet()){ // from the most negative
+			seen += e.getValue();
+			if(seen > rank){
+				return -getValue(e.getKey());
+			}
+		}
+		seen += _zeroCount;
+		if(seen > rank){
+			return 0;
+		}
+		for(Entry<Integer, Long> e : _positiveBins.entrySet()){
+			seen += e.getValue();
+			if(seen > rank){
+				return getValue(e.getKey());
+			}
+		}
+		return getValue(_positiveBins.lastKey()); // not reached with consistent counts
+	}
+
+	/**
+	 * 
+	 * @return the sketch serialized as bytes
+	 * @see #fromBytes(byte[])
+	 */
+	byte[] toBytes(){
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 + 4 * (_positiveBins.size() + _negativeBins.size()));
+		writeVarLong(out, VERSION);
+		writeVarLong(out, _zeroCount);
+		writeBins(out, _positiveBins);
+		writeBins(out, _negativeBins);
+		return out.toByteArray();
+	}
+
+	/**
+	 * 
+	 * @param bytes
+	 * @return the sketch deserialized from the given bytes
+	 * @throws IllegalArgumentException on invalid bytes
+	 * @see #toBytes()
+	 */
+	static QuantileSketch fromBytes(byte[] bytes) throws IllegalArgumentException {
+		int[] position = {0};
+		long version = readVarLong(bytes, position);
+		if(version != VERSION){
+			throw new IllegalArgumentException("Invalid sketch version: "+version);
+		}
+		QuantileSketch sketch = new QuantileSketch();
+		sketch._zeroCount = readVarLong(bytes, position);
+		sketch._count = sketch._zeroCount + readBins(bytes, position, sketch._positiveBins) + readBins(bytes, position, sketch._negativeBins);
+		if(position[0] != bytes.length){
+			throw new IllegalArgumentException("Invalid sketch length: "+bytes.length);
+		}
+		return sketch;
+	}
+
+	/**
+	 * 
+	 * @param value positive value
+	 * @return index of the bin covering the value
+	 */
+	private static int getIndex(double value){
+		return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+	}
+
+	/**
+	 * 
+	 * @param index
+	 * @return the representative value of the bin, with at most the relative error from all values of the bin
+	 */
+	private static double getValue(int index){
+		return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+	}
+
+	/**
+	 * 
+	 * @param bins
+	 * @param index
+	 * @param count
+	 */
+	private static void increment(TreeMap<Integer, Long> bins, int index, long count){
+		Long current = bins.get(index);
+		bins.put(index, (current == null ? count : current + count));
+	}
+
+	/**
+	 * Writes the amount of bins, followed by the index (as a difference to the previous index) and the count of each bin.
+	 * 
+	 * @param out
+	 * @param bins
+	 */
+	private static void writeBins(ByteArrayOutputStream out, TreeMap<Integer, Long> bins){
+		writeVarLong(out, bins.size());
+		long previous = 0;
+		for(Entry<Integer, Long> e : bins.entrySet()){
+			long index = e.getKey();
+			long delta = index - previous;
+			writeVarLong(out, (delta << 1) ^ (delta >> 63)); // zig-zag, the first index may be negative
+			writeVarLong(out, e.getValue());
+			previous = index;
+		}
+	}
+
+	/**
+	 * 
+	 * @param bytes
+	 * @param position
+	 * @param bins
+	 * @return the total count of the read bins
+	 * @throws IllegalArgumentException on invalid bytes
+	 */
+	private static long readBins(byte[] bytes, int[] position, TreeMap<Integer, Long> bins) throws IllegalArgumentException {
+		long binCount = readVarLong(bytes, position);
+		long total = 0;
+		long index = 0;
+		for(long i=0; i<binCount; ++i){
+			long delta = readVarLong(bytes, position);
+			index += (delta >>> 1) ^ -(delta & 1);
+			long count = readVarLong(bytes, position);
+			if(count < 1 || index < Integer.MIN_VALUE || index > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("Invalid sketch bin.");
+			}
+			bins.put((int) index, count);
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * 
+	 * @param out
+	 * @param value non-negative value
+	 */
+	private static void writeVarLong(ByteArrayOutputStream out, long value){
+		while((value & ~0x7FL) != 0){
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * 
+	 * @param bytes
+	 * @param position the position to read from, advanced past the read value
+	 * @return the value
+	 * @throws IllegalArgumentException on invalid bytes
+	 */
+	private static long readVarLong(byte[] bytes, int[] position) throws IllegalArgumentException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7){
+			if(position[0] >= bytes.length){
+				throw new IllegalArgumentException("Unexpected end of sketch.");
+			}
+			byte b = bytes[position[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Invalid sketch value.");
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Synchronization position of a client, used for retrieving only the gauge values inserted after the previous synchronization.
+ * 
+ * The position is tracked by the gauge value row id (gauge_value_id), which increases in insertion order, and not by the creation time
+ * of the values: late values (backfills) have an old creation time, but a new row id. The position is kept separately for each gauge,
+ * because the writes of a single gauge are serialized (see {@link GaugeLocks}), and thus the values of a gauge become visible in row id order,
+ * whereas concurrent writes of different gauges may become visible in any order.
+ * 
+ * The watermark is passed to the clients as an opaque token, the token {@value #INITIAL_TOKEN} denotes the initial synchronization.
+ */
+final class SyncWatermark {
+	/** the token for initial synchronization, i.e. for retrieving all values */
+	static final String INITIAL_TOKEN = "0";
+	private static final char SEPARATOR_ENTRY = '.';
+	private static final char SEPARATOR_VALUE = '-';
+	private static final int RADIX = Character.MAX_RADIX;
+	private final Map<Integer, Long> _positions;
+
+	/**
+	 * Create a watermark for the initial synchronization
+	 */
+	SyncWatermark(){
+		_positions = new HashMap<>();
+	}
+
+	/**
+	 * 
+	 * @param gaugeKey
+	 * @return the row id of the last value of the gauge seen by the client, or 0 if the client has not seen any values of the gauge
+	 */
+	long getPosition(int gaugeKey){
+		Long position = _positions.get(gaugeKey);
+		return (position == null ? 0 : position);
+	}
+
+	/**
+	 * Moves the position of the given gauge forward, if the given row id is past the current position.
+	 * 
+	 * @param gaugeKey
+	 * @param gaugeValueId
+	 */
+	void advance(int gaugeKey, long gaugeValueId){
+		if(gaugeValueId > getPosition(gaugeKey)){
+			_positions.put(gaugeKey, gaugeValueId);
+		}
+	}
+
+	/**
+	 * 
+	 * @return this watermark as a token
+	 */
+	String toToken(){
+		if(_positions.isEmpty()){
+			return INITIAL_TOKEN;
+		}
+		StringBuilder token = new StringBuilder();
+		for(Iterator<Entry<Integer, Long>> iter = _positions.entrySet().iterator(); iter.hasNext();){
+			Entry<Integer, Long> e = iter.next();
+			token.append(Integer.toString(e.getKey(), RADIX));
+			token.append(SEPARATOR_VALUE);
+			token.append(Long.toString(e.getValue(), RADIX));
+			if(iter.hasNext()){
+				token.append(SEPARATOR_ENTRY);
+			}
+		}
+		return token.toString();
+	}
+
+	/**
+	 * 
+	 * @param token
+	 * @return the token converted to a watermark or null if null or empty token was given
+	 * @throws IllegalArgumentException on invalid token
+	 */
+	static SyncWatermark fromToken(String token) throws IllegalArgumentException {
+		if(StringUtils.isBlank(token)){
+			return null;
+		}
+		SyncWatermark watermark = new SyncWatermark();
+		if(INITIAL_TOKEN.equals(token)){
+			return watermark;
+		}
+		try{
+			for(String entry : StringUtils.split(token, SEPARATOR_ENTRY)){
+				String[] parts = StringUtils.split(entry, SEPARATOR_VALUE);
+				if(parts.length != 2){
+					throw new IllegalArgumentException("Invalid watermark: "+token);
+				}
+				watermark.advance(Integer.parseInt(parts[0], RADIX), Long.parseLong(parts[1], RADIX));
+			}
+		} catch (NumberFormatException ex){
+			throw new IllegalArgumentException("Invalid watermark: "+token, ex);
+		}
+		return watermark;
+	}
+}
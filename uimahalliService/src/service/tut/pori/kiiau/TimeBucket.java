@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Calendar periods used for grouping statistics. The periods are aligned to the default time zone.
+ * 
+ */
+enum TimeBucket {
+	/** hour of day */
+	HOUR(Definitions.BUCKET_HOUR),
+	/** calendar day */
+	DAY(Definitions.BUCKET_DAY),
+	/** calendar week, starting on Monday */
+	WEEK(Definitions.BUCKET_WEEK),
+	/** calendar month */
+	MONTH(Definitions.BUCKET_MONTH);
+	
+	/** the maximum amount of buckets in a range */
+	static final int MAX_BUCKETS = 10000;
+	private final String _value;
+	
+	/**
+	 * 
+	 * @param value
+	 */
+	private TimeBucket(String value){
+		_value = value;
+	}
+	
+	/**
+	 * 
+	 * @return the bucket as string
+	 */
+	String toValueString(){
+		return _value;
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return the value converted to bucket
+	 * @throws IllegalArgumentException on bad value
+	 */
+	static TimeBucket fromString(String value) throws IllegalArgumentException {
+		for(TimeBucket b : values()){
+			if(b._value.equalsIgnoreCase(value)){
+				return b;
+			}
+		}
+		throw new IllegalArgumentException("Invalid value: "+value);
+	}
+	
+	/**
+	 * 
+	 * @param date
+	 * @return the start of the bucket containing the given date
+	 */
+	Date getStart(Date date){
+		Calendar calendar = Calendar.getInstance();
+		calendar.setFirstDayOfWeek(Calendar.MONDAY);
+		calendar.setTime(date);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		if(this == HOUR){
+			return calendar.getTime();
+		}
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		switch(this){
+			case WEEK:
+				calendar.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+				break;
+			case MONTH:
+				calendar.set(Calendar.DAY_OF_MONTH, 1);
+				break;
+			default:
+				break;
+		}
+		return calendar.getTime();
+	}
+	
+	/**
+	 * 
+	 * @param start start of a bucket
+	 * @return the start of the next bucket
+	 */
+	Date getNext(Date start){
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(start);
+		switch(this){
+			case HOUR:
+				calendar.add(Calendar.HOUR_OF_DAY, 1);
+				break;
+			case WEEK:
+				calendar.add(Calendar.WEEK_OF_YEAR, 1);
+				break;
+			case MONTH:
+				calendar.add(Calendar.MONTH, 1);
+				break;
+			default:
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+				break;
+		}
+		return getStart(calendar.getTime()); // the length of a day varies on daylight saving time changes
+	}
+	
+	/**
+	 * The first bucket starts at the start of the range and the last bucket ends at the end of the range, so the first and the last bucket may be partial.
+	 * 
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @return the boundaries of the buckets in the range in ascending order, as milliseconds since epoch, bucket i starts at boundary i and ends at boundary i+1
+	 * @throws IllegalArgumentException if the start is not before the end, or if the range has more than {@value #MAX_BUCKETS} buckets
+	 */
+	long[] getBoundaries(Date start, Date end) throws IllegalArgumentException {
+		if(!start.before(end)){
+			throw new IllegalArgumentException("Start date is not before end date.");
+		}
+		List<Long> boundaries = new ArrayList<>();
+		boundaries.add(start.getTime());
+		for(Date next = getNext(getStart(start)); next.before(end); next = getNext(next)){
+			if(boundaries.size() >= MAX_BUCKETS){
+				throw new IllegalArgumentException("Too many buckets, the maximum is "+MAX_BUCKETS);
+			}
+			boundaries.add(next.getTime());
+		}
+		boundaries.add(end.getTime());
+		long[] array = new long[boundaries.size()];
+		for(int i=0; i<array.length; ++i){
+			array[i] = boundaries.get(i);
+		}
+		return array;
+	}
+	
+	/**
+	 * 
+	 * @param boundaries the boundaries of the buckets, as returned by {@link #getBoundaries(Date, Date)}
+	 * @param time
+	 * @return the index of the bucket containing the given time, or -1 if the time is outside the boundaries
+	 */
+	static int getBucketIndex(long[] boundaries, long time){
+		if(time < boundaries[0] || time >= boundaries[boundaries.length - 1]){
+			return -1;
+		}
+		int index = Arrays.binarySearch(boundaries, time);
+		return (index < 0 ? -index - 2 : index);
+	}
+}
@@ -15,14 +15,17 @@
  */
 package service.tut.pori.kiiau;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -31,11 +34,14 @@ import service.tut.pori.kiiau.datatypes.Alert;
 import service.tut.pori.kiiau.datatypes.Alert.AlertStatus;
 import service.tut.pori.kiiau.datatypes.Alerts;
 import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.GaugeValueColumns;
 import service.tut.pori.kiiau.datatypes.Locations;
+import service.tut.pori.kiiau.datatypes.MeasurementBatch;
 import service.tut.pori.kiiau.datatypes.Meter;
 import service.tut.pori.kiiau.datatypes.Meters;
 import service.tut.pori.kiiau.datatypes.Meters.ValueValidity;
 import service.tut.pori.kiiau.datatypes.Statistics;
+import service.tut.pori.kiiau.parser.MeasurementStreamParser;
 import service.tut.pori.kiiau.parser.WatchLoggerParser;
 import core.tut.pori.context.ServiceInitializer;
 import core.tut.pori.http.parameters.DataGroups;
@@ -45,11 +51,14 @@ import core.tut.pori.users.UserIdentity;
 
 /**
  * The core methods for Uimahalli Service.
- *
+ * 
  */
 public final class UimahalliCore {
+	private static final char CACHE_KEY_SEPARATOR = '|';
 	private static final EnumSet<AlertStatus> DEFAULT_STATUSES = EnumSet.of(AlertStatus.NEW);
 	private static final Logger LOGGER = Logger.getLogger(UimahalliCore.class);
+	private static MeasurementQueue _measurementQueue = null;
+	private static boolean _backgroundTasksStarted = false;
 	
 	/**
 	 * 
@@ -65,10 +74,175 @@ public final class UimahalliCore {
 	 * @param sortOptions 
 	 * @param limits 
 	 * @param tagIds 
-	 * @return measurements or null if none was found
+	 * @param endDate if given, only gauge values created at or before this date are returned. Aggregated values (see maxPoints) do not include the values created exactly at the end date.
+	 * @param startDate if given, only gauge values created at or after this date are returned
+	 * @param maxPoints if given, the values of numeric gauges are downsampled to at most the given amount of values per gauge, using hourly or daily aggregates when the dates are at midnight, and otherwise the Largest-Triangle-Three-Buckets algorithm
+	 * @param cursors if given, values are returned only for the gauges of the cursors, starting after the last value of the previous page. The page size is the maximum amount of items in the limits.
+	 * @param since if given, only the values inserted after the given watermark are returned, and the returned meters contain the new watermark
+	 * @param encoding the encoding of the gauge values, if null, {@value service.tut.pori.kiiau.Definitions#ENCODING_OBJECTS} is used
+	 * @return measurements or null if none was found, the measurements may be shared with other requests, and must not be modified
+	 * @throws IllegalArgumentException on invalid date range, maxPoints, cursor, watermark or encoding
+	 */
+	public static Meters getMeasurements(final UserIdentity authenticatedUser, final DataGroups dataGroups, final Limits limits, final SortOptions sortOptions, final List<String> tagIds, final Date endDate, final Date startDate, final Integer maxPoints, List<String> cursors, final String since, String encoding) throws IllegalArgumentException {
+		if(endDate != null && startDate != null && startDate.after(endDate)){
+			throw new IllegalArgumentException("Start date is after end date.");
+		}
+		if(maxPoints != null && maxPoints < Downsampler.MIN_POINTS){
+			throw new IllegalArgumentException("Invalid maximum amount of points: "+maxPoints+", the minimum is "+Downsampler.MIN_POINTS);
+		}
+		SyncWatermark watermark = SyncWatermark.fromToken(since);
+		if(watermark != null && (limits != null || (cursors != null && !cursors.isEmpty()))){
+			throw new IllegalArgumentException("Limits or cursors cannot be used with a watermark.");
+		}
+		boolean columnar = false;
+		boolean delta = false;
+		if(encoding != null){
+			switch(encoding){
+				case Definitions.ENCODING_OBJECTS:
+					break;
+				case Definitions.ENCODING_COLUMNAR_DELTA:
+					delta = true;
+					// fall through
+				case Definitions.ENCODING_COLUMNAR:
+					columnar = true;
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid encoding: "+encoding);
+			}
+		}
+		final UimahalliDAO dao = ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class);
+		final List<GaugeValueCursor> gaugeValueCursors = GaugeValueCursor.fromTokens(cursors);
+		final String cacheKey = createCacheKey(authenticatedUser, dataGroups, limits, sortOptions, tagIds, endDate, startDate, maxPoints, cursors, since, columnar, delta);
+		final boolean columnarEncoding = columnar;
+		final boolean deltaEncoding = delta;
+		return dao.getMeasurementCache().get(cacheKey, new Callable<Meters>() {
+			@Override
+			public Meters call() {
+				Meters meters = dao.getMeters(authenticatedUser, dataGroups, limits, sortOptions, tagIds, endDate, startDate, gaugeValueCursors, SyncWatermark.fromToken(since), maxPoints);
+				if(maxPoints != null){
+					Downsampler.downsample(meters, maxPoints);
+				}
+				if(columnarEncoding){
+					setColumns(meters, deltaEncoding);
+				}
+				return meters;
+			}
+		});
+	}
+	
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param dataGroups
+	 * @param limits
+	 * @param sortOptions
+	 * @param tagIds
+	 * @param endDate
+	 * @param startDate
+	 * @param maxPoints
+	 * @param cursors
+	 * @param since
+	 * @param columnar
+	 * @param delta
+	 * @return key for the measurement cache, equivalent requests have the same key regardless of the order of the parameter values
+	 */
+	private static String createCacheKey(UserIdentity authenticatedUser, DataGroups dataGroups, Limits limits, SortOptions sortOptions, List<String> tagIds, Date endDate, Date startDate, Integer maxPoints, List<String> cursors, String since, boolean columnar, boolean delta){
+		boolean gauges = DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGES, dataGroups);
+		boolean values = gauges && (DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGE_VALUES, dataGroups));
+		StringBuilder key = new StringBuilder();
+		key.append(authenticatedUser.getUserId());
+		key.append(CACHE_KEY_SEPARATOR).append(gauges).append(CACHE_KEY_SEPARATOR).append(values);
+		key.append(CACHE_KEY_SEPARATOR);
+		if(limits != null){
+			key.append(limits.getStartItem()).append('-').append(limits.getEndItem());
+		}
+		key.append(CACHE_KEY_SEPARATOR).append(UimahalliDAO.getDateOrderDirection(sortOptions));
+		key.append(CACHE_KEY_SEPARATOR).append(toSortedString(tagIds));
+		key.append(CACHE_KEY_SEPARATOR).append(endDate == null ? "" : endDate.getTime());
+		key.append(CACHE_KEY_SEPARATOR).append(startDate == null ? "" : startDate.getTime());
+		key.append(CACHE_KEY_SEPARATOR).append(maxPoints == null ? "" : maxPoints);
+		key.append(CACHE_KEY_SEPARATOR).append(toSortedString(cursors));
+		key.append(CACHE_KEY_SEPARATOR).append(since == null ? "" : since);
+		key.append(CACHE_KEY_SEPARATOR).append(columnar).append(CACHE_KEY_SEPARATOR).append(delta);
+		return key.toString();
+	}
+	
+	/**
+	 * 
+	 * @param values
+	 * @return the given values in sorted order as a string, or empty string if null or empty list was given
+	 */
+	private static String toSortedString(List<String> values){
+		if(values == null || values.isEmpty()){
+			return "";
+		}
+		List<String> sorted = new ArrayList<>(new HashSet<>(values));
+		Collections.sort(sorted);
+		return sorted.toString();
+	}
+	
+	/**
+	 * Retrieves the meters with gauge details (without gauge values). The results are not cached, and can be freely modified.
+	 * 
+	 * @param authenticatedUser
+	 * @param tagIds optional tag id filter
+	 * @return meters or null if none was found
+	 */
+	public static Meters getMeterDetails(UserIdentity authenticatedUser, List<String> tagIds) {
+		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).getMeters(authenticatedUser, new DataGroups(Definitions.DATA_GROUP_GAUGES), null, null, tagIds, null, null, null, null, null);
+	}
+	
+	/**
+	 * Retrieves the meters with gauge details and the latest value of each gauge.
+	 * 
+	 * @param authenticatedUser
+	 * @param tagIds optional tag id filter
+	 * @param locationIds optional location id filter
+	 * @return meters or null if none was found, the gauge values are shared with other requests, and must not be modified
 	 */
-	public static Meters getMeasurements(UserIdentity authenticatedUser, DataGroups dataGroups, Limits limits, SortOptions sortOptions, List<String> tagIds) {
-		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).getMeters(authenticatedUser, dataGroups, limits, sortOptions, tagIds);
+	public static Meters getLatestMeasurements(UserIdentity authenticatedUser, List<String> tagIds, long[] locationIds) {
+		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).getLatestMeasurements(authenticatedUser, tagIds, locationIds);
+	}
+	
+	/**
+	 * Converts the values of all gauges of the given meters into columnar representation.
+	 * 
+	 * @param meters
+	 * @param delta
+	 */
+	static void setColumns(Meters meters, boolean delta){
+		if(Meters.isEmpty(meters)){
+			return;
+		}
+		for(Meter meter : meters.getMeters()){
+			if(Meter.isEmpty(meter)){
+				continue;
+			}
+			for(Gauge gauge : meter.getGauges()){
+				if(!Gauge.isValuesEmpty(gauge)){
+					gauge.setColumns(new GaugeValueColumns(gauge.getValues(), gauge.getDataType(), delta));
+					gauge.setValues(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param limits applied separately to the values of each gauge
+	 * @param sortOptions
+	 * @param tagIds
+	 * @param endDate if given, only gauge values created at or before this date are returned
+	 * @param startDate if given, only gauge values created at or after this date are returned
+	 * @return response which writes the measurements directly from the database, without holding the gauge values in memory
+	 * @throws IllegalArgumentException on invalid date range
+	 */
+	public static MeasurementStreamResponse getMeasurementStream(UserIdentity authenticatedUser, Limits limits, SortOptions sortOptions, List<String> tagIds, Date endDate, Date startDate) throws IllegalArgumentException {
+		if(endDate != null && startDate != null && startDate.after(endDate)){
+			throw new IllegalArgumentException("Start date is after end date.");
+		}
+		return new MeasurementStreamResponse(authenticatedUser, limits, sortOptions, tagIds, endDate, startDate);
 	}
 
 	/**
@@ -78,9 +252,144 @@ public final class UimahalliCore {
 	 * @throws IllegalArgumentException
 	 */
 	public static void postMeasurements(UserIdentity authenticatedUser, Meters meters) throws IllegalArgumentException {
+		if(validateMeasurements(authenticatedUser, meters)){
+			ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).addMeasurements(meters);
+		}
+	}
+	
+	/**
+	 * Incrementally parse, validate and store the measurements from the given JSON data.
+	 * 
+	 * The data is read twice, once for validation and once for storing, and the {@link Meters} object graph is not created. The data itself is
+	 * received as a string, so the memory use still grows with the size of the data: only the memory used for the parsed gauge values is bounded by the chunk size.
+	 * 
+	 * The whole data is validated before anything is stored, invalid data is never partially stored. The values are stored in chunks with separate transactions,
+	 * if storing a chunk fails (e.g. on a database error), the values of the preceding chunks remain stored.
+	 * 
+	 * @param authenticatedUser
+	 * @param data measurements in the {@link Meters} JSON format
+	 * @throws IllegalArgumentException on invalid data
+	 */
+	public static void streamMeasurements(UserIdentity authenticatedUser, String data) throws IllegalArgumentException {
+		if(StringUtils.isBlank(data)){
+			LOGGER.warn("Ignored empty data.");
+			return;
+		}
+		UimahalliDAO dao = ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class);
+		MeasurementStreamParser parser = new MeasurementStreamParser(authenticatedUser, dao, dao.getInsertBatchSize());
+		parser.validate(new StringReader(data));
+		parser.parse(new StringReader(data));
+	}
+	
+	/**
+	 * Validate the measurements and add them to the asynchronous write queue.
+	 * 
+	 * @param authenticatedUser
+	 * @param meters
+	 * @return the queued batch or null if there was nothing to add
+	 * @throws IllegalArgumentException on invalid measurements
+	 * @throws IllegalStateException if the queue is full
+	 */
+	public static MeasurementBatch queueMeasurements(UserIdentity authenticatedUser, Meters meters) throws IllegalArgumentException, IllegalStateException {
+		if(validateMeasurements(authenticatedUser, meters)){
+			return getMeasurementQueue().add(authenticatedUser.getUserId(), meters);
+		}else{
+			return null;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param batchId
+	 * @return the batch
+	 * @throws IllegalArgumentException on unknown batch id or if the batch is not owned by the user
+	 */
+	public static MeasurementBatch getMeasurementBatch(UserIdentity authenticatedUser, String batchId) throws IllegalArgumentException {
+		MeasurementBatch batch = getMeasurementQueue().getBatch(authenticatedUser.getUserId(), batchId);
+		if(batch == null){
+			throw new IllegalArgumentException("Unknown batch id: "+batchId);
+		}
+		return batch;
+	}
+	
+	/**
+	 * Starts the background tasks of the service: the measurement queue is started, and the measurements accepted before a possible crash are re-queued from the spill file.
+	 * 
+	 * The in-memory table of the latest gauge values is loaded and the rebuild of the incomplete gauge value aggregates is started in the background,
+	 * so that the latest values and the aggregates are available as soon as possible.
+	 * 
+	 * Calling this method for an already initialized service has no effect.
+	 */
+	public static void initialize() {
+		startBackgroundTasks();
+		try{
+			getMeasurementQueue();
+		}catch(IllegalStateException ex){ // the start is retried on the next asynchronous upload
+			LOGGER.error(ex, ex);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the measurement queue, the queue is started on the first call
+	 */
+	private static synchronized MeasurementQueue getMeasurementQueue() {
+		if(_measurementQueue == null){
+			LOGGER.debug("Starting measurement queue...");
+			MeasurementQueue queue = new MeasurementQueue(ServiceInitializer.getPropertyHandler().getSystemProperties(UimahalliProperties.class).getQueueSpillFile());
+			queue.start();
+			_measurementQueue = queue;
+		}
+		return _measurementQueue;
+	}
+	
+	/**
+	 * Starts loading the latest gauge values and then rebuilding the incomplete gauge value aggregates in a background thread, called on service initialization,
+	 * the tasks are started only once.
+	 * 
+	 * Until the latest values are loaded, they are loaded on the first request for the latest values. Until the aggregates of a gauge are complete,
+	 * the statistics and measurements of the gauge are calculated from the gauge values.
+	 */
+	private static synchronized void startBackgroundTasks() {
+		if(_backgroundTasksStarted){
+			return;
+		}
+		_backgroundTasksStarted = true;
+		LOGGER.debug("Starting latest gauge value load and gauge value aggregate rebuild...");
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				UimahalliDAO dao = ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class);
+				try{
+					dao.loadLatestGaugeValues();
+				}catch(RuntimeException ex){ // loaded again on the first request
+					LOGGER.error(ex, ex);
+				}
+				try{
+					int count = dao.rebuildRollups();
+					LOGGER.debug("Rebuilt aggregates for "+count+" gauge(s).");
+				}catch(RuntimeException ex){
+					LOGGER.error(ex, ex);
+				}
+			}
+		}, "UimahalliStartup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Checks the permissions and values of the given measurements, and resolves the gauge data types.
+	 * 
+	 * @param authenticatedUser
+	 * @param meters
+	 * @return true if the meters contain gauges to add, false if there is nothing to add
+	 * @throws IllegalArgumentException on invalid measurements
+	 */
+	private static boolean validateMeasurements(UserIdentity authenticatedUser, Meters meters) throws IllegalArgumentException {
 		if(Meters.isEmpty(meters)){
 			LOGGER.warn("Ignored empty meters.");
-			return;
+			return false;
 		}
 		
 		List<Gauge> gauges = new ArrayList<>();
@@ -97,7 +406,7 @@ public final class UimahalliCore {
 		}
 		if(gaugeIds.isEmpty()){
 			LOGGER.warn("Ignored meters without gauges.");
-			return;
+			return false;
 		}
 		
 		UimahalliDAO dao = ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class);
@@ -112,10 +421,7 @@ public final class UimahalliCore {
 		if(Meters.hasValidValues(meters) != ValueValidity.VALID){
 			throw new IllegalArgumentException("Bad Meters.");
 		}
-		
-		for(Gauge gauge : gauges){
-			dao.addGaugeValues(gauge);
-		} // for gauges
+		return true;
 	}
 	
 	/**
@@ -220,24 +526,37 @@ public final class UimahalliCore {
 		
 		Meters meters = new Meters();
 		meters.setMeters(Arrays.asList(meter));
-		postMeasurements(authenticatedUser, meters);
-		
-		Alert temp = parser.getLastLowTemperatureAlert();
-		if(temp != null){
-			dao.addAlert(temp);
-		}
-		temp = parser.getLastHighTemperatureAlert();
-		if(temp != null){
-			dao.addAlert(temp);
+		if(!validateMeasurements(authenticatedUser, meters)){
+			return;
 		}
-		temp = parser.getLastLowHumidityAlert();
-		if(temp != null){
-			dao.addAlert(temp);
+		
+		List<Alert> alerts = new ArrayList<>();
+		for(Alert alert : new Alert[]{parser.getLastLowTemperatureAlert(), parser.getLastHighTemperatureAlert(), parser.getLastLowHumidityAlert(), parser.getLastHighHumidityAlert()}){
+			if(alert != null){
+				alerts.add(alert);
+			}
 		}
-		temp = parser.getLastHighHumidityAlert();
-		if(temp != null){
-			dao.addAlert(temp);
+		dao.addMeasurements(meters, alerts); // the alerts are linked to the values in the same transaction
+	}
+
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param endDate
+	 * @param startDate
+	 * @param tagIds
+	 * @param bucket the time bucket for the consumption of cumulative gauges, if null, {@value service.tut.pori.kiiau.Definitions#BUCKET_DAY} is used
+	 * @return statistics or null if none was found
+	 * @throws IllegalArgumentException on invalid bucket
+	 */
+	public static Statistics getStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIds, String bucket) throws IllegalArgumentException {
+		if(endDate == null){
+			LOGGER.debug("No end date, using current date.");
+			endDate = new Date();
 		}
+		TimeBucket timeBucket = (bucket == null ? TimeBucket.DAY : TimeBucket.fromString(bucket));
+		
+		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).calculateStatistics(authenticatedUser, endDate, startDate, tagIds, timeBucket);
 	}
 
 	/**
@@ -246,15 +565,19 @@ public final class UimahalliCore {
 	 * @param endDate
 	 * @param startDate
 	 * @param tagIds
+	 * @param gaugeIds
+	 * @param bucket the time bucket, if null, {@value service.tut.pori.kiiau.Definitions#BUCKET_DAY} is used
 	 * @return statistics or null if none was found
+	 * @throws IllegalArgumentException on invalid bucket or range
 	 */
-	public static Statistics getStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIds){
+	public static Statistics getBucketStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIds, List<String> gaugeIds, String bucket) throws IllegalArgumentException {
 		if(endDate == null){
 			LOGGER.debug("No end date, using current date.");
 			endDate = new Date();
 		}
+		TimeBucket timeBucket = (bucket == null ? TimeBucket.DAY : TimeBucket.fromString(bucket));
 		
-		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).calculateStatistics(authenticatedUser, endDate, startDate, tagIds);
+		return ServiceInitializer.getDAOHandler().getDAO(UimahalliDAO.class).calculateBucketStatistics(authenticatedUser, endDate, startDate, tagIds, gaugeIds, timeBucket);
 	}
 
 	/**
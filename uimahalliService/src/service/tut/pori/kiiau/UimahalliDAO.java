@@ -15,34 +15,49 @@
  */
 package service.tut.pori.kiiau;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowCallbackHandler;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 
+import service.tut.pori.kiiau.GaugeCatalog.GaugeDetails;
+import service.tut.pori.kiiau.GaugeValueRollup.Period;
 import service.tut.pori.kiiau.datatypes.Alert;
 import service.tut.pori.kiiau.datatypes.Alert.AlertStatus;
 import service.tut.pori.kiiau.datatypes.Alert.AlertType;
 import service.tut.pori.kiiau.datatypes.Alerts;
+import service.tut.pori.kiiau.datatypes.BucketStatistics;
+import service.tut.pori.kiiau.datatypes.Consumption;
 import service.tut.pori.kiiau.datatypes.Gauge;
 import service.tut.pori.kiiau.datatypes.Gauge.DataType;
 import service.tut.pori.kiiau.datatypes.GaugeStatistics;
@@ -53,6 +68,13 @@ import service.tut.pori.kiiau.datatypes.Meter;
 import service.tut.pori.kiiau.datatypes.MeterStatistics;
 import service.tut.pori.kiiau.datatypes.Meters;
 import service.tut.pori.kiiau.datatypes.Statistics;
+import service.tut.pori.kiiau.datatypes.ValueParser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
 import core.tut.pori.dao.SQLDAO;
 import core.tut.pori.dao.SQLSelectBuilder;
 import core.tut.pori.dao.SQLSelectBuilder.OrderDirection;
@@ -71,7 +93,7 @@ import core.tut.pori.users.UserIdentity;
 
 /**
  * DAO for saving, retrieving and modifying meter and gauge details, and for updating collected gauge values.
- *
+ * 
  */
 public class UimahalliDAO extends SQLDAO {
 	private static final Logger LOGGER = Logger.getLogger(UimahalliDAO.class);
@@ -79,6 +101,8 @@ public class UimahalliDAO extends SQLDAO {
 	/* tables */
 	private static final String TABLE_ALERTS = DATABASE+".uh_alerts";
 	private static final String TABLE_GAUGE_VALUES = DATABASE+".uh_gauge_values";
+	private static final String TABLE_GAUGE_VALUE_ROLLUPS = DATABASE+".uh_gauge_value_rollups";
+	private static final String TABLE_GAUGE_VALUE_TEXTS = DATABASE+".uh_gauge_value_texts";
 	private static final String TABLE_GAUGES = DATABASE+".uh_gauges";
 	private static final String TABLE_LOCATIONS = DATABASE+".uh_locations";
 	private static final String TABLE_METERS = DATABASE+".uh_meters";
@@ -87,10 +111,15 @@ public class UimahalliDAO extends SQLDAO {
 	private static final String COLUMN_CUMULATIVE = "cumulative";
 	private static final String COLUMN_DATA_TYPE = "data_type";
 	private static final String COLUMN_DESCRIPTION = "description";
+	private static final String COLUMN_FIRST_CREATED = "first_created";
+	private static final String COLUMN_FIRST_VALUE = "first_value";
 	private static final String COLUMN_FLOOR_PLAN_URL = "floor_plan_url";
 	private static final String COLUMN_GAUGE_ID = "gauge_id";
 	private static final String COLUMN_GAUGE_VALUE_ID = "gauge_value_id";
 	private static final String COLUMN_GAUGE_INDEX = "gauge_index";
+	private static final String COLUMN_GAUGE_KEY = "gauge_key";
+	private static final String COLUMN_LAST_CREATED = "last_created";
+	private static final String COLUMN_LAST_VALUE = "last_value";
 	private static final String COLUMN_LOCATION_ID = "location_id";
 	private static final String COLUMN_LOCATION_X = "location_x";
 	private static final String COLUMN_LOCATION_Y = "location_y";
@@ -101,24 +130,34 @@ public class UimahalliDAO extends SQLDAO {
 	private static final String COLUMN_MIN_INCREASE = "min_increase";
 	private static final String COLUMN_NAME = "name";
 	private static final String COLUMN_OPTIONS = "options";
+	private static final String COLUMN_PERIOD = "period";
+	private static final String COLUMN_PERIOD_START = "period_start";
+	private static final String COLUMN_ROLLUPS_COMPLETE = "rollups_complete";
 	private static final String COLUMN_STATUS = "status";
 	private static final String COLUMN_TAG_ID = "id";
+	private static final String COLUMN_TEXT_VALUE = "text_value";
 	private static final String COLUMN_TYPE = "type";
 	private static final String COLUMN_UNIT = "unit";
 	private static final String COLUMN_VALUE = "value";
+	private static final String COLUMN_VALUE_COUNT = "value_count";
+	private static final String COLUMN_VALUE_MAX = "value_max";
+	private static final String COLUMN_VALUE_MIN = "value_min";
+	private static final String COLUMN_VALUE_SUM = "value_sum";
+	private static final String COLUMN_VALUE_SKETCH = "value_sketch";
+	private static final String COLUMN_VALUE_SUM_SQUARES = "value_sum_squares";
 	private static final String COLUMN_ALERT_ID = "alert_id";
-	private static final String COLUMN_VAR_POP = "VAR_POP(value)";
-	private static final String COLUMN_AVG = "AVG(value)";
-	private static final String COLUMN_STDDEV_POP = "STDDEV_POP(value)";
 	
 	/* sql scripts */
+	private static final String[] SQL_COLUMNS_GET_ALERTS = {TABLE_ALERTS+"."+COLUMN_ALERT_ID, COLUMN_STATUS, COLUMN_TYPE, TABLE_ALERTS+"."+COLUMN_GAUGE_VALUE_ID, TABLE_ALERTS+"."+COLUMN_TAG_ID, TABLE_GAUGES+"."+COLUMN_GAUGE_ID, TABLE_GAUGE_VALUES+"."+COLUMN_VALUE, TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_VALUE+" AS "+COLUMN_TEXT_VALUE, COLUMN_ROW_CREATED};
+	private static final String[] SQL_COLUMNS_GET_GAUGE_VALUES = {TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID, COLUMN_GAUGE_KEY, TABLE_GAUGE_VALUES+"."+COLUMN_VALUE, TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_VALUE+" AS "+COLUMN_TEXT_VALUE, COLUMN_ROW_CREATED};
+	private static final String[] SQL_COLUMNS_GET_GAUGES = {COLUMN_GAUGE_ID, COLUMN_METER_ID, COLUMN_GAUGE_INDEX, COLUMN_NAME, COLUMN_DESCRIPTION, COLUMN_DATA_TYPE, COLUMN_OPTIONS, COLUMN_UNIT, COLUMN_MIN, COLUMN_MAX, COLUMN_MIN_INCREASE, COLUMN_MAX_INCREASE, COLUMN_CUMULATIVE};
 	private static final String[] SQL_COLUMNS_GET_LOCATIONS = {COLUMN_LOCATION_ID, COLUMN_NAME, COLUMN_FLOOR_PLAN_URL};
-	private static final String[] SQL_COLUMNS_RESOLVE_DATA_TYPES = {COLUMN_GAUGE_ID, COLUMN_DATA_TYPE};
-	private static final String[] SQL_COLUMNS_GAUGE_VALUES = {COLUMN_GAUGE_ID, COLUMN_VALUE, COLUMN_ROW_CREATED};
-	private static final String[] SQL_COLUMNS_STATISTICS = {COLUMN_TAG_ID, COLUMN_GAUGE_ID};
+	private static final String[] SQL_COLUMNS_GET_ROLLUPS = {COLUMN_GAUGE_KEY, COLUMN_PERIOD_START, COLUMN_VALUE_COUNT, COLUMN_VALUE_SUM, COLUMN_VALUE_SUM_SQUARES, COLUMN_VALUE_MIN, COLUMN_VALUE_MAX, COLUMN_FIRST_CREATED, COLUMN_FIRST_VALUE, COLUMN_LAST_CREATED, COLUMN_LAST_VALUE, COLUMN_VALUE_SKETCH};
+	private static final String[] SQL_COLUMNS_GET_METERS = {COLUMN_METER_ID, COLUMN_TAG_ID, COLUMN_NAME, COLUMN_LOCATION_ID, COLUMN_USER_ID, COLUMN_LOCATION_X, COLUMN_LOCATION_Y};
+	private static final String[] SQL_COLUMNS_STATISTICS = {COLUMN_TAG_ID, COLUMN_GAUGE_ID, COLUMN_GAUGE_KEY};
+	private static final String[] SQL_COLUMNS_STATISTICS_VALUES = {COLUMN_GAUGE_KEY, COLUMN_VALUE, COLUMN_ROW_CREATED};
 	
-	private static final String SQL_CALCULATE_STATISTICS = "SELECT "+COLUMN_STDDEV_POP+", "+COLUMN_AVG+", "+COLUMN_VAR_POP+", "+COLUMN_COUNT+" FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_ID+"=? AND "+COLUMN_ROW_CREATED+">? AND "+COLUMN_ROW_CREATED+"<?";
-	private static final int[] SQL_CALCULATE_STATISTICS_SQL_TYPES = {SQLType.STRING.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.TIMESTAMP.toInt()};
+	private static final String SQL_JOIN_GAUGE_VALUE_TEXTS = "LEFT JOIN "+TABLE_GAUGE_VALUE_TEXTS+" ON "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID+"="+TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_GAUGE_VALUE_ID;
 	
 	private static final String SQL_COUNT_TAG_ID = "SELECT "+COLUMN_COUNT+" FROM "+TABLE_METERS+" WHERE "+COLUMN_TAG_ID+"=?";
 	private static final int[] SQL_COUNT_TAG_ID_SQL_TYPES = {SQLType.STRING.toInt()};
@@ -126,24 +165,152 @@ public class UimahalliDAO extends SQLDAO {
 	private static final String SQL_INSERT_ALERT = "INSERT INTO "+TABLE_ALERTS+" ("+COLUMN_STATUS+", "+COLUMN_TYPE+", "+COLUMN_GAUGE_VALUE_ID+", "+COLUMN_TAG_ID+") VALUES (?,?,?,?)";
 	private static final int[] SQL_INSERT_ALERT_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.INTEGER.toInt(), SQLType.LONG.toInt(), SQLType.STRING.toInt()};
 	
+	private static final String SQL_INSERT_ALERT_BY_TIMESTAMP = "INSERT INTO "+TABLE_ALERTS+" ("+COLUMN_STATUS+", "+COLUMN_TYPE+", "+COLUMN_GAUGE_VALUE_ID+", "+COLUMN_TAG_ID+") SELECT ?, ?, "+COLUMN_GAUGE_VALUE_ID+", ? FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_ROW_CREATED+"=?";
+	private static final int[] SQL_INSERT_ALERT_BY_TIMESTAMP_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.INTEGER.toInt(), SQLType.STRING.toInt(), SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt()};
+	
 	private static final String SQL_INSERT_GAUGE = "INSERT INTO "+TABLE_GAUGES+" ("+COLUMN_GAUGE_ID+", "+COLUMN_METER_ID+", "+COLUMN_GAUGE_INDEX+", "+COLUMN_NAME+", "+COLUMN_DESCRIPTION+", "+COLUMN_DATA_TYPE+", "+COLUMN_OPTIONS+", "+COLUMN_UNIT+", "+COLUMN_MIN+", "+COLUMN_MAX+", "+COLUMN_MIN_INCREASE+", "+COLUMN_MAX_INCREASE+", "+COLUMN_CUMULATIVE+") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)";
 	private static final int[] SQL_INSERT_GAUGE_SQL_TYPES = {SQLType.STRING.toInt(), SQLType.LONG.toInt(), SQLType.INTEGER.toInt(), SQLType.STRING.toInt(), SQLType.STRING.toInt(), SQLType.STRING.toInt(), SQLType.STRING.toInt(), SQLType.STRING.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.INTEGER.toInt()};
 	
+	private static final String SQL_INSERT_GAUGE_VALUES = "INSERT INTO "+TABLE_GAUGE_VALUES+" ("+COLUMN_GAUGE_KEY+", "+COLUMN_VALUE+", "+COLUMN_ROW_CREATED+") VALUES ";
+	private static final String SQL_INSERT_GAUGE_VALUES_ROW = "(?,?,?)";
+	private static final String SQL_INSERT_GAUGE_VALUES_IGNORE_DUPLICATES = " ON DUPLICATE KEY UPDATE "+COLUMN_GAUGE_VALUE_ID+"="+COLUMN_GAUGE_VALUE_ID; // no-op update, the existing row is kept as-is
+	
+	private static final String SQL_INSERT_GAUGE_VALUE_TEXT = "INSERT INTO "+TABLE_GAUGE_VALUE_TEXTS+" ("+COLUMN_GAUGE_VALUE_ID+", "+COLUMN_VALUE+") SELECT "+COLUMN_GAUGE_VALUE_ID+", ? FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_ROW_CREATED+"=?"
+			+" ON DUPLICATE KEY UPDATE "+TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_GAUGE_VALUE_ID+"="+TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_GAUGE_VALUE_ID;
+	private static final int[] SQL_INSERT_GAUGE_VALUE_TEXT_SQL_TYPES = {SQLType.STRING.toInt(), SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt()};
+	
 	private static final String SQL_INSERT_METER = "INSERT INTO "+TABLE_METERS+" ("+COLUMN_TAG_ID+", "+COLUMN_NAME+", "+COLUMN_LOCATION_ID+", "+COLUMN_USER_ID+", "+COLUMN_LOCATION_X+", "+COLUMN_LOCATION_Y+") VALUES (?,?,?,?,?,?)";
 	private static final int[] SQL_INSERT_METER_SQL_TYPES = {SQLType.STRING.toInt(), SQLType.STRING.toInt(), SQLType.LONG.toInt(), SQLType.LONG.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt()};
 
+	private static final String SQL_SELECT_GAUGE_CATALOG = "SELECT "+TABLE_GAUGES+"."+COLUMN_GAUGE_ID+", "+COLUMN_GAUGE_KEY+", "+TABLE_GAUGES+"."+COLUMN_METER_ID+", "+TABLE_METERS+"."+COLUMN_USER_ID+", "+COLUMN_DATA_TYPE+", "+COLUMN_MIN+", "+COLUMN_MAX+", "+COLUMN_MIN_INCREASE+", "+COLUMN_MAX_INCREASE+", "+COLUMN_CUMULATIVE+", "+COLUMN_ROLLUPS_COMPLETE
+			+" FROM "+TABLE_GAUGES+" JOIN "+TABLE_METERS+" ON "+TABLE_GAUGES+"."+COLUMN_METER_ID+"="+TABLE_METERS+"."+COLUMN_METER_ID;
+	
 	private static final String SQL_SELECT_METER_ID = "SELECT "+COLUMN_COUNT+", "+COLUMN_METER_ID+" FROM "+TABLE_METERS+" WHERE "+COLUMN_TAG_ID+"=? AND "+COLUMN_USER_ID+"=?";
 	private static final int[] SQL_SELECT_METER_ID_SQL_TYPES = {SQLType.STRING.toInt(), SQLType.LONG.toInt()};
 	
 	private static final String SQL_SET_ALERT_STATUS = "UPDATE "+TABLE_ALERTS+" SET "+COLUMN_STATUS+"=? WHERE "+COLUMN_TAG_ID+"=?";
 	private static final int[] SQL_SET_ALERT_STATUS_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.STRING.toInt()};
 	
+	private static final String SQL_ALIAS_GAUGE_VALUES = "gauge_value_rows";
+	private static final String SQL_ALIAS_LATEST_GAUGE_VALUES = "latest_gauge_value_rows";
+	
+	private static final String SQL_SELECT_LATEST_GAUGE_VALUES = "SELECT "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID+", "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_KEY+", "+TABLE_GAUGE_VALUES+"."+COLUMN_VALUE+", "+TABLE_GAUGE_VALUE_TEXTS+"."+COLUMN_VALUE+" AS "+COLUMN_TEXT_VALUE+", "+TABLE_GAUGE_VALUES+"."+COLUMN_ROW_CREATED
+			+" FROM "+TABLE_GAUGE_VALUES+" JOIN (SELECT "+COLUMN_GAUGE_KEY+", MAX("+COLUMN_ROW_CREATED+") AS "+COLUMN_ROW_CREATED+" FROM "+TABLE_GAUGE_VALUES+" GROUP BY "+COLUMN_GAUGE_KEY+") AS "+SQL_ALIAS_LATEST_GAUGE_VALUES
+			+" ON "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_KEY+"="+SQL_ALIAS_LATEST_GAUGE_VALUES+"."+COLUMN_GAUGE_KEY+" AND "+TABLE_GAUGE_VALUES+"."+COLUMN_ROW_CREATED+"="+SQL_ALIAS_LATEST_GAUGE_VALUES+"."+COLUMN_ROW_CREATED
+			+" "+SQL_JOIN_GAUGE_VALUE_TEXTS; // the columns are in the order of SQL_COLUMNS_GET_GAUGE_VALUES
+	
+	private static final String SQL_INSERT_ROLLUP = "INSERT INTO "+TABLE_GAUGE_VALUE_ROLLUPS+" ("+COLUMN_GAUGE_KEY+", "+COLUMN_PERIOD+", "+COLUMN_PERIOD_START+", "+COLUMN_VALUE_COUNT+", "+COLUMN_VALUE_SUM+", "+COLUMN_VALUE_SUM_SQUARES+", "+COLUMN_VALUE_MIN+", "+COLUMN_VALUE_MAX+", "+COLUMN_FIRST_CREATED+", "+COLUMN_FIRST_VALUE+", "+COLUMN_LAST_CREATED+", "+COLUMN_LAST_VALUE+", "+COLUMN_VALUE_SKETCH+") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)"
+			+" ON DUPLICATE KEY UPDATE "+COLUMN_VALUE_COUNT+"=VALUES("+COLUMN_VALUE_COUNT+"), "+COLUMN_VALUE_SUM+"=VALUES("+COLUMN_VALUE_SUM+"), "+COLUMN_VALUE_SUM_SQUARES+"=VALUES("+COLUMN_VALUE_SUM_SQUARES+"), "+COLUMN_VALUE_MIN+"=VALUES("+COLUMN_VALUE_MIN+"), "+COLUMN_VALUE_MAX+"=VALUES("+COLUMN_VALUE_MAX+")"
+			+", "+COLUMN_FIRST_CREATED+"=VALUES("+COLUMN_FIRST_CREATED+"), "+COLUMN_FIRST_VALUE+"=VALUES("+COLUMN_FIRST_VALUE+"), "+COLUMN_LAST_CREATED+"=VALUES("+COLUMN_LAST_CREATED+"), "+COLUMN_LAST_VALUE+"=VALUES("+COLUMN_LAST_VALUE+"), "+COLUMN_VALUE_SKETCH+"=VALUES("+COLUMN_VALUE_SKETCH+")";
+	private static final int[] SQL_INSERT_ROLLUP_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.LONG.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.DOUBLE.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.DOUBLE.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.DOUBLE.toInt(), Types.VARBINARY};
+	
+	private static final String SQL_SELECT_ROLLUP_SOURCE_VALUES = "SELECT "+COLUMN_GAUGE_KEY+", "+COLUMN_VALUE+", "+COLUMN_ROW_CREATED+" FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_VALUE+" IS NOT NULL AND ";
+	private static final String SQL_SELECT_ROLLUP_SOURCE_VALUES_RANGE = "("+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_ROW_CREATED+">=? AND "+COLUMN_ROW_CREATED+"<?)";
+	
+	/** the readings of a single gauge in a range, including the closest readings before and after the range */
+	private static final String SQL_SELECT_CONSUMPTION_READINGS = "SELECT "+COLUMN_GAUGE_KEY+", "+COLUMN_VALUE+", "+COLUMN_ROW_CREATED+" FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_VALUE+" IS NOT NULL"
+			+" AND "+COLUMN_ROW_CREATED+">=IFNULL((SELECT MAX("+COLUMN_ROW_CREATED+") FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_VALUE+" IS NOT NULL AND "+COLUMN_ROW_CREATED+"<=?), ?)"
+			+" AND "+COLUMN_ROW_CREATED+"<=IFNULL((SELECT MIN("+COLUMN_ROW_CREATED+") FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_VALUE+" IS NOT NULL AND "+COLUMN_ROW_CREATED+">=?), ?)";
+	private static final int[] SQL_SELECT_CONSUMPTION_READINGS_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.TIMESTAMP.toInt()};
+	
+	private static final String SQL_SELECT_ROLLUPS = "SELECT "+StringUtils.join(SQL_COLUMNS_GET_ROLLUPS, ", ")+" FROM "+TABLE_GAUGE_VALUE_ROLLUPS+" WHERE "+COLUMN_PERIOD+"=? AND ";
+	private static final String SQL_SELECT_ROLLUPS_RANGE = "("+COLUMN_GAUGE_KEY+"=? AND "+COLUMN_PERIOD_START+">=? AND "+COLUMN_PERIOD_START+"<?)";
+	
+	private static final String SQL_SELECT_VALUE_RANGE = "SELECT MIN("+COLUMN_ROW_CREATED+"), MAX("+COLUMN_ROW_CREATED+") FROM "+TABLE_GAUGE_VALUES+" WHERE "+COLUMN_GAUGE_KEY+"=?";
+	private static final int[] SQL_SELECT_VALUE_RANGE_SQL_TYPES = {SQLType.INTEGER.toInt()};
+	
+	private static final String SQL_SET_ROLLUPS_COMPLETE = "UPDATE "+TABLE_GAUGES+" SET "+COLUMN_ROLLUPS_COMPLETE+"=1 WHERE "+COLUMN_GAUGE_KEY+"=?";
+	private static final int[] SQL_SET_ROLLUPS_COMPLETE_SQL_TYPES = {SQLType.INTEGER.toInt()};
+	
+	/** the types of the gauge key, range start and range end values of a range condition */
+	private static final int[] SQL_RANGE_SQL_TYPES = {SQLType.INTEGER.toInt(), SQLType.TIMESTAMP.toInt(), SQLType.TIMESTAMP.toInt()};
+	
+	/** the maximum amount of gauges whose values are retrieved with a single query */
+	private static final int MAX_GAUGES_PER_QUERY = 100;
+	/** the amount of days whose aggregates are rebuilt in a single transaction */
+	private static final int ROLLUP_REBUILD_DAYS = 7;
+	/* the quantiles of the gauge statistics */
+	private static final double QUANTILE_MEDIAN = 0.5;
+	private static final double QUANTILE_PERCENTILE_5 = 0.05;
+	private static final double QUANTILE_PERCENTILE_95 = 0.95;
+	/** the number of queries executed by the latest getMeters call of each thread */
+	private static final ThreadLocal<int[]> QUERY_COUNT = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+	
+	/** the default maximum amount of gauge values inserted with a single multi-row insert */
+	public static final int DEFAULT_INSERT_BATCH_SIZE = 500;
+	
 	private static final SortOptions DEFAULT_SORT_OPTIONS;
 	static{
 		DEFAULT_SORT_OPTIONS = new SortOptions();
 		DEFAULT_SORT_OPTIONS.addSortOption(new SortOptions.Option(service.tut.pori.kiiau.datatypes.Definitions.JSON_NAME_DATE, OrderDirection.ASCENDING, null));
 	}
 	
+	/* row mappers, the columns are read by their position in the respective select column list */
+	/** maps rows selected with {@link #SQL_COLUMNS_GET_LOCATIONS} */
+	private static final RowMapper<Location> LOCATION_MAPPER = new RowMapper<Location>() {
+		@Override
+		public Location mapRow(ResultSet set, int rowNum) throws SQLException {
+			Location location = new Location();
+			location.setLocationId(set.getLong(1));
+			location.setName(set.getString(2));
+			location.setFloorPlanUrl(set.getString(3));
+			return location;
+		}
+	};
+	/** maps rows selected with {@link #SQL_COLUMNS_GET_METERS} */
+	private static final RowMapper<Meter> METER_MAPPER = new RowMapper<Meter>() {
+		@Override
+		public Meter mapRow(ResultSet set, int rowNum) throws SQLException {
+			Meter meter = new Meter();
+			meter.setMeterId(set.getLong(1));
+			meter.setId(set.getString(2));
+			meter.setName(set.getString(3));
+			meter.setLocationId(getLong(set, 4));
+			meter.setUserId(set.getLong(5));
+			meter.setLocationX(getDouble(set, 6));
+			meter.setLocationY(getDouble(set, 7));
+			return meter;
+		}
+	};
+	private final GaugeCatalog _gaugeCatalog = new GaugeCatalog();
+	private final GaugeLocks _gaugeLocks = new GaugeLocks();
+	private final LatestGaugeValues _latestGaugeValues = new LatestGaugeValues();
+	private final ConsumptionCache _consumptionCache = new ConsumptionCache();
+	private final MeasurementCache _measurementCache = new MeasurementCache();
+	private int _insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+	
+	/**
+	 * @return the maximum amount of gauge values inserted with a single statement
+	 */
+	public int getInsertBatchSize() {
+		return _insertBatchSize;
+	}
+
+	/**
+	 * @param insertBatchSize the maximum amount of gauge values inserted with a single statement, must be at least 1
+	 * @throws IllegalArgumentException on invalid batch size
+	 */
+	public void setInsertBatchSize(int insertBatchSize) throws IllegalArgumentException {
+		if(insertBatchSize < 1){
+			throw new IllegalArgumentException("Invalid batch size: "+insertBatchSize);
+		}
+		_insertBatchSize = insertBatchSize;
+	}
+	
+	/**
+	 * The cache is invalidated by this DAO when the gauge values, gauges or meters are modified.
+	 * 
+	 * @return the cache for measurement query results
+	 */
+	MeasurementCache getMeasurementCache() {
+		return _measurementCache;
+	}
+	
 	/**
 	 * 
 	 * @param status
@@ -156,60 +323,470 @@ public class UimahalliDAO extends SQLDAO {
 	/**
 	 * Set gauge values from the given gauge (if the gauge contains values)
 	 * 
+	 * Values which already exist for the gauge (with the same timestamp) are ignored. Note that the row ids of the given values are not resolved.
+	 * See {@link #addMeasurements(Meters, List)} for the handling of the timestamps.
+	 * 
 	 * @param gauge
 	 */
-	public void addGaugeValues(final Gauge gauge){
+	public void addGaugeValues(Gauge gauge){
 		if(Gauge.isValuesEmpty(gauge)){
 			LOGGER.debug("Ignored empty gauge...");
 			return;
 		}
-		getTransactionTemplate().execute(new TransactionCallback<Void>() {
+		addGaugeValues(Arrays.asList(gauge), null);
+	}
+	
+	/**
+	 * Set gauge values from all gauges of the given meters. 
+	 * 
+	 * The values are added in a single transaction using batched multi-row inserts. Duplicate values are suppressed by the unique (gauge_id, row_created) key,
+	 * values which already exist for a gauge (with the same timestamp) are ignored. Note that the row ids of the given values are not resolved.
+	 * 
+	 * @param meters
+	 * @see #addMeasurements(Meters, List)
+	 */
+	public void addMeasurements(Meters meters){
+		addMeasurements(meters, null);
+	}
+	
+	/**
+	 * Set gauge values from all gauges of the given meters, and add the given alerts in the same transaction.
+	 * 
+	 * The timestamps of the given values are truncated to whole seconds, the precision of the database. If the given values contain more than one value 
+	 * with the same (truncated) timestamp for a gauge, the last of the values is used. The values of the alerts are resolved by the gauge id and the timestamp
+	 * of the value, if the row id of the value is not known. The values of the alerts should be the instances contained in the given meters, or have timestamps 
+	 * with the precision of the database.
+	 * 
+	 * @param meters
+	 * @param alerts optional alerts for the given values
+	 * @throws IllegalArgumentException on invalid values, or if the value of an alert does not exist, in which case nothing is added
+	 */
+	public void addMeasurements(Meters meters, List<Alert> alerts) throws IllegalArgumentException {
+		if(Meters.isEmpty(meters)){
+			LOGGER.debug("Ignored empty meters...");
+			return;
+		}
+		List<Gauge> gauges = new ArrayList<>();
+		for(Meter meter : meters.getMeters()){
+			if(Meter.isEmpty(meter)){
+				continue;
+			}
+			for(Gauge gauge : meter.getGauges()){
+				if(!Gauge.isValuesEmpty(gauge)){
+					gauges.add(gauge);
+				}
+			}
+		}
+		if(gauges.isEmpty()){
+			LOGGER.debug("No gauge values...");
+			return;
+		}
+		addGaugeValues(gauges, alerts);
+	}
+	
+	/**
+	 * The write locks of the given gauges are held for the duration of the transaction: concurrent writes to the same gauge are serialized, 
+	 * writes to different gauges are executed in parallel. After the transaction has been committed, the latest values of the gauges are updated,
+	 * and the cached measurements containing the gauges are invalidated.
+	 * 
+	 * @param gauges non-empty list of gauges with values
+	 * @param alerts optional alerts to add in the same transaction
+	 */
+	private void addGaugeValues(final List<Gauge> gauges, List<Alert> alerts){
+		List<String> gaugeIds = new ArrayList<>(gauges.size());
+		for(Gauge gauge : gauges){
+			gaugeIds.add(gauge.getId());
+		}
+		int[] stripes = _gaugeLocks.lock(gaugeIds);
+		try{
+			for(Entry<Integer, GaugeValue> e : insertGaugeValues(gauges, alerts).entrySet()){
+				_latestGaugeValues.update(e.getKey(), e.getValue());
+			}
+			_measurementCache.invalidate(gaugeIds);
+			_consumptionCache.invalidate(gaugeIds);
+		}finally{
+			_gaugeLocks.unlock(stripes);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param gauges non-empty list of gauges with values
+	 * @param alerts optional alerts to add in the same transaction
+	 * @return gauge key - newest given value map, the values are copies of the given values, formatted as they would be when retrieved from the database
+	 */
+	private Map<Integer, GaugeValue> insertGaugeValues(final List<Gauge> gauges, final List<Alert> alerts){
+		return getTransactionTemplate().execute(new TransactionCallback<Map<Integer, GaugeValue>>() {
 
 			@Override
-			public Void doInTransaction(TransactionStatus status) {
-				JdbcTemplate t = getJdbcTemplate();
-				
-				Collection<GaugeValue> gaugeValues = gauge.getValues();
-				Map<Date, GaugeValue> values = new HashMap<>(gaugeValues.size());
-				for(GaugeValue gv : gaugeValues){
-					values.put(gv.getUpdatedTimestamp(), gv);
+			public Map<Integer, GaugeValue> doInTransaction(TransactionStatus status) {
+				Map<String, GaugeDetails> catalog = getGaugeCatalog();
+				List<Integer> gaugeKeys = new ArrayList<>();
+				List<GaugeValue> gaugeValues = new ArrayList<>();
+				List<Object[]> texts = new ArrayList<>();
+				Map<Integer, GaugeValue> newestValues = new HashMap<>(gauges.size());
+				Map<Integer, Set<Date>> rollupHours = new HashMap<>(gauges.size());
+				Map<String, Map<Date, GaugeValue>> valueMap = new LinkedHashMap<>(gauges.size()); // gauge id - timestamp - value, the last given value of each timestamp is used
+				for(Gauge gauge : gauges){
+					Map<Date, GaugeValue> values = valueMap.get(gauge.getId());
+					if(values == null){
+						values = new LinkedHashMap<>(gauge.getValues().size());
+						valueMap.put(gauge.getId(), values);
+					}
+					for(GaugeValue gv : gauge.getValues()){
+						gv.setUpdatedTimestamp(toDatabasePrecision(gv.getUpdatedTimestamp()));
+						values.put(gv.getUpdatedTimestamp(), gv);
+					}
 				}
-				String gaugeId = gauge.getId();
-				SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
-				sql.addSelectColumn(COLUMN_ROW_CREATED);
-				sql.addSelectColumn(COLUMN_GAUGE_VALUE_ID);
-				sql.addWhereClause(new AndClause(COLUMN_GAUGE_ID, gaugeId, SQLType.STRING));
-				sql.addWhereClause(new AndClause(COLUMN_ROW_CREATED, values.keySet(), SQLType.TIMESTAMP));
-				List<Map<String, Object>> rows = t.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes());
-				
-				if(!rows.isEmpty()){
-					for (Map<String, Object> map : rows) {
-						GaugeValue value = values.remove(new Date(((Date)map.get(COLUMN_ROW_CREATED)).getTime())); // convert sql timestamp to java.util.date
-						value.setRowId((Long)map.get(COLUMN_GAUGE_VALUE_ID));
+				for(Entry<String, Map<Date, GaugeValue>> e : valueMap.entrySet()){
+					String gaugeId = e.getKey();
+					GaugeDetails details = catalog.get(gaugeId);
+					if(details == null){
+						throw new IllegalArgumentException("Non-existing gauge, id: "+gaugeId);
+					}
+					Integer gaugeKey = details.getGaugeKey();
+					DataType dataType = details.getDataType();
+					if(dataType == null){
+						dataType = DataType.DEFAULT_DATATYPE;
+					}
+					Set<Date> hours = null;
+					if(dataType != DataType.STRING){
+						hours = rollupHours.get(gaugeKey);
+						if(hours == null){
+							hours = new HashSet<>();
+							rollupHours.put(gaugeKey, hours);
+						}
+					}
+					GaugeValue newest = null;
+					for(GaugeValue gv : e.getValue().values()){
+						if(newest == null || gv.getUpdatedTimestamp().after(newest.getUpdatedTimestamp())){
+							newest = gv;
+						}
+						if(dataType == DataType.STRING){
+							gv.setNumericValue(Double.NaN); // text values are stored separately
+							texts.add(new Object[]{gv.getValue(), gaugeKey, gv.getUpdatedTimestamp()});
+						}else if(!gv.hasNumericValue()){
+							double value = ValueParser.parse(gv.getValue(), dataType);
+							if(Double.isNaN(value)){
+								throw new IllegalArgumentException("Invalid value for gauge, id: "+gaugeId);
+							}
+							gv.setNumericValue(value);
+						}
+						if(hours != null){
+							hours.add(Period.HOUR.getStart(gv.getUpdatedTimestamp()));
+						}
+						gaugeKeys.add(gaugeKey);
+						gaugeValues.add(gv);
+					}
+					GaugeValue previous = newestValues.get(gaugeKey);
+					if(previous == null || newest.getUpdatedTimestamp().after(previous.getUpdatedTimestamp())){
+						newestValues.put(gaugeKey, copyGaugeValue(newest, dataType));
 					}
 				}
 				
-				gaugeValues = values.values();
-				if(gaugeValues.isEmpty()){
-					LOGGER.debug("No new gauge values for gauge, id: "+gaugeId);
-				}else{
-					LOGGER.debug("Inserting "+gaugeValues.size()+" new gauge values for gauge, id: "+gaugeId);
-					SimpleJdbcInsert insert = new SimpleJdbcInsert(t);
-					insert.setTableName(TABLE_GAUGE_VALUES);
-					insert.setGeneratedKeyName(COLUMN_GAUGE_VALUE_ID);
-					insert.withoutTableColumnMetaDataAccess();
-					insert.usingColumns(SQL_COLUMNS_GAUGE_VALUES);
-					Map<String,Object> map = new HashMap<>(SQL_COLUMNS_GAUGE_VALUES.length);
-					map.put(COLUMN_GAUGE_ID, gaugeId);
-					for(GaugeValue gv : gaugeValues){
-						map.put(COLUMN_VALUE, gv.getValue());
-						map.put(COLUMN_ROW_CREATED, gv.getUpdatedTimestamp());
-						gv.setRowId((Long)insert.executeAndReturnKey(map));
+				LOGGER.debug("Inserting "+gaugeValues.size()+" gauge values for "+gauges.size()+" gauge(s).");
+				JdbcTemplate t = getJdbcTemplate();
+				LOGGER.debug("New gauge values: "+insertGaugeValues(t, gaugeKeys, gaugeValues, _insertBatchSize));
+				if(!texts.isEmpty()){
+					LOGGER.debug("Inserting "+texts.size()+" text values.");
+					t.batchUpdate(SQL_INSERT_GAUGE_VALUE_TEXT, texts, SQL_INSERT_GAUGE_VALUE_TEXT_SQL_TYPES);
+				}
+				if(alerts != null){
+					for(Alert alert : alerts){
+						insertAlert(t, catalog, alert);
 					}
 				}
-				return null;
+				if(!rollupHours.isEmpty()){
+					updateRollups(t, rollupHours);
+				}
+				return newestValues;
+			}
+		});
+	}
+	
+	/**
+	 * Recalculates the hourly aggregates of the given hours from the gauge values, and the daily aggregates of the days containing the given hours
+	 * from the hourly aggregates. The aggregates are recalculated instead of adding the new values to the existing aggregates, as the re-sent values
+	 * already existing in the database are not inserted again.
+	 * 
+	 * Only the given hours and days are read: the values and the hourly aggregates are queried with a range for each run of consecutive hours or days.
+	 * 
+	 * @param t
+	 * @param hours gauge key - starts of the hours map
+	 */
+	private void updateRollups(JdbcTemplate t, Map<Integer, Set<Date>> hours){
+		final Map<Integer, Map<Date, GaugeValueRollup>> hourly = new HashMap<>(hours.size());
+		final Map<Integer, Map<Date, GaugeValueRollup>> daily = new HashMap<>(hours.size());
+		List<Object[]> hourRanges = new ArrayList<>(hours.size());
+		List<Object[]> dayRanges = new ArrayList<>(hours.size());
+		for(Entry<Integer, Set<Date>> e : hours.entrySet()){
+			if(e.getValue().isEmpty()){
+				continue;
+			}
+			Integer gaugeKey = e.getKey();
+			Map<Date, GaugeValueRollup> gaugeHours = new HashMap<>();
+			TreeMap<Date, GaugeValueRollup> gaugeDays = new TreeMap<>();
+			for(Date hour : new TreeSet<>(e.getValue())){ // in order, for building the ranges
+				gaugeHours.put(hour, new GaugeValueRollup(hour));
+				addRange(hourRanges, gaugeKey, hour, Period.HOUR.getNext(hour));
+				Date day = Period.DAY.getStart(hour);
+				if(!gaugeDays.containsKey(day)){
+					gaugeDays.put(day, new GaugeValueRollup(day));
+				}
+			}
+			for(Date day : gaugeDays.keySet()){
+				addRange(dayRanges, gaugeKey, day, Period.DAY.getNext(day));
+			}
+			hourly.put(gaugeKey, gaugeHours);
+			daily.put(gaugeKey, gaugeDays);
+		}
+		
+		queryRanges(t, SQL_SELECT_ROLLUP_SOURCE_VALUES, SQL_SELECT_ROLLUP_SOURCE_VALUES_RANGE, null, hourRanges, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				Date created = new Date(set.getTimestamp(3).getTime());
+				GaugeValueRollup rollup = hourly.get(set.getInt(1)).get(Period.HOUR.getStart(created));
+				if(rollup != null){ // the range may contain hours without new values
+					rollup.add(set.getDouble(2), created);
+				}
+			}
+		});
+		int updated = insertRollups(t, Period.HOUR, hourly);
+		
+		queryRanges(t, SQL_SELECT_ROLLUPS, SQL_SELECT_ROLLUPS_RANGE, Period.HOUR, dayRanges, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				GaugeValueRollup hour = extractRollup(set);
+				GaugeValueRollup day = daily.get(set.getInt(1)).get(Period.DAY.getStart(hour.getPeriodStart()));
+				if(day != null){ // only the days of the given hours are aggregated
+					day.merge(hour);
+				}
 			}
 		});
+		updated += insertRollups(t, Period.DAY, daily);
+		LOGGER.debug("Updated "+updated+" aggregates for "+hours.size()+" gauge(s).");
+	}
+	
+	/**
+	 * Adds the given range to the list of ranges, or extends the last range of the list if the given range continues the last range of the same gauge.
+	 * 
+	 * The ranges of a gauge must be added in order.
+	 * 
+	 * @param ranges gauge key, range start and range end for each range
+	 * @param gaugeKey
+	 * @param start
+	 * @param end
+	 */
+	private static void addRange(List<Object[]> ranges, Integer gaugeKey, Date start, Date end){
+		if(!ranges.isEmpty()){
+			Object[] last = ranges.get(ranges.size() - 1);
+			if(last[0].equals(gaugeKey) && last[2].equals(start)){
+				last[2] = end;
+				return;
+			}
+		}
+		ranges.add(new Object[]{gaugeKey, start, end});
+	}
+	
+	/**
+	 * Executes the given query for the given ranges. At most {@value #MAX_GAUGES_PER_QUERY} ranges are queried with a single query.
+	 * 
+	 * @param t
+	 * @param sql the query, ending with the beginning of the range condition
+	 * @param rangeCondition the condition for a single range, taking the gauge key, range start (inclusive) and range end (exclusive) as parameters
+	 * @param period if not null, given as the first parameter of the query
+	 * @param ranges gauge key, range start and range end for each range
+	 * @param handler
+	 */
+	private void queryRanges(JdbcTemplate t, String sql, String rangeCondition, Period period, List<Object[]> ranges, RowCallbackHandler handler){
+		int rangeCount = ranges.size();
+		for(int start = 0; start < rangeCount; start += MAX_GAUGES_PER_QUERY){
+			List<Object[]> batch = ranges.subList(start, Math.min(start + MAX_GAUGES_PER_QUERY, rangeCount));
+			StringBuilder query = new StringBuilder(sql);
+			query.append('(');
+			Object[] values = ArrayUtils.EMPTY_OBJECT_ARRAY;
+			int[] types = ArrayUtils.EMPTY_INT_ARRAY;
+			if(period != null){
+				values = ArrayUtils.add(values, period.toInt());
+				types = ArrayUtils.add(types, SQLType.INTEGER.toInt());
+			}
+			for(Iterator<Object[]> iter = batch.iterator(); iter.hasNext();){
+				query.append(rangeCondition);
+				if(iter.hasNext()){
+					query.append(" OR ");
+				}
+				values = ArrayUtils.addAll(values, iter.next());
+				types = ArrayUtils.addAll(types, SQL_RANGE_SQL_TYPES);
+			}
+			query.append(')');
+			query(t, query.toString(), values, types, handler);
+		}
+	}
+	
+	/**
+	 * Inserts or replaces the given aggregates. Empty aggregates are ignored.
+	 * 
+	 * @param t
+	 * @param period
+	 * @param rollups gauge key - period start - aggregate map
+	 * @return the amount of non-empty aggregates
+	 */
+	private int insertRollups(JdbcTemplate t, Period period, Map<Integer, Map<Date, GaugeValueRollup>> rollups){
+		List<Object[]> rows = new ArrayList<>();
+		for(Entry<Integer, Map<Date, GaugeValueRollup>> e : rollups.entrySet()){
+			Integer gaugeKey = e.getKey();
+			for(GaugeValueRollup rollup : e.getValue().values()){
+				if(rollup.getCount() > 0){
+					rows.add(new Object[]{gaugeKey, period.toInt(), rollup.getPeriodStart(), rollup.getCount(), rollup.getSum(), rollup.getSumSquares(), rollup.getMin(), rollup.getMax(), rollup.getFirstCreated(), rollup.getFirstValue(), rollup.getLastCreated(), rollup.getLastValue(), rollup.getSketch().toBytes()});
+				}
+			}
+		}
+		if(!rows.isEmpty()){
+			t.batchUpdate(SQL_INSERT_ROLLUP, rows, SQL_INSERT_ROLLUP_SQL_TYPES);
+		}
+		return rows.size();
+	}
+	
+	/**
+	 * Rebuilds the hourly and daily aggregates of all gauges whose aggregates are not complete, and marks the aggregates of the gauges complete.
+	 * 
+	 * The aggregates of a gauge are rebuilt in transactions of {@value #ROLLUP_REBUILD_DAYS} days, the writes to the gauge are blocked for the duration of each transaction.
+	 * The aggregates can be rebuilt while new values are added: new values update the aggregates of the gauge regardless of whether the aggregates are complete.
+	 * 
+	 * @return the amount of gauges whose aggregates were rebuilt
+	 */
+	public int rebuildRollups(){
+		int rebuilt = 0;
+		for(GaugeDetails details : getGaugeCatalog().values()){
+			if(!details.isRollupsComplete()){
+				rebuildRollups(details);
+				++rebuilt;
+			}
+		}
+		if(rebuilt > 0){
+			_gaugeCatalog.invalidate();
+		}
+		return rebuilt;
+	}
+	
+	/**
+	 * 
+	 * @param details
+	 */
+	private void rebuildRollups(GaugeDetails details){
+		JdbcTemplate t = getJdbcTemplate();
+		final int gaugeKey = details.getGaugeKey();
+		if(details.getDataType() == DataType.STRING){
+			LOGGER.debug("No aggregates for text gauge, id: "+details.getGaugeId());
+		}else{
+			Date[] range = t.queryForObject(SQL_SELECT_VALUE_RANGE, new Object[]{gaugeKey}, SQL_SELECT_VALUE_RANGE_SQL_TYPES, new RowMapper<Date[]>() {
+				@Override
+				public Date[] mapRow(ResultSet set, int rowNum) throws SQLException {
+					Timestamp first = set.getTimestamp(1);
+					return (first == null ? null : new Date[]{new Date(first.getTime()), new Date(set.getTimestamp(2).getTime())});
+				}
+			});
+			if(range != null){
+				LOGGER.debug("Rebuilding aggregates for gauge, id: "+details.getGaugeId());
+				Date end = Period.DAY.getNext(Period.DAY.getStart(range[1]));
+				List<String> gaugeIds = Arrays.asList(details.getGaugeId());
+				for(Date windowStart = Period.DAY.getStart(range[0]); windowStart.before(end);){
+					final Map<Integer, Set<Date>> hours = new HashMap<>(1);
+					Set<Date> windowHours = new HashSet<>();
+					hours.put(gaugeKey, windowHours);
+					Date windowEnd = windowStart;
+					for(int i=0; i<ROLLUP_REBUILD_DAYS && windowEnd.before(end); ++i){
+						windowEnd = Period.DAY.getNext(windowEnd);
+					}
+					for(Date hour = windowStart; hour.before(windowEnd); hour = Period.HOUR.getNext(hour)){
+						windowHours.add(hour);
+					}
+					int[] stripes = _gaugeLocks.lock(gaugeIds);
+					try{
+						getTransactionTemplate().execute(new TransactionCallback<Void>() {
+							@Override
+							public Void doInTransaction(TransactionStatus status) {
+								updateRollups(getJdbcTemplate(), hours);
+								return null;
+							}
+						});
+					}finally{
+						_gaugeLocks.unlock(stripes);
+					}
+					windowStart = windowEnd;
+				} // for windows
+			}
+		}
+		t.update(SQL_SET_ROLLUPS_COMPLETE, new Object[]{gaugeKey}, SQL_SET_ROLLUPS_COMPLETE_SQL_TYPES);
+	}
+	
+	/**
+	 * 
+	 * @param gaugeValue
+	 * @param dataType
+	 * @return copy of the given value without row id, formatted as it would be when retrieved from the database
+	 */
+	private static GaugeValue copyGaugeValue(GaugeValue gaugeValue, DataType dataType){
+		GaugeValue copy = new GaugeValue();
+		if(dataType == DataType.STRING){
+			setValue(copy, null, gaugeValue.getValue(), dataType);
+		}else{
+			setValue(copy, gaugeValue.getNumericValue(), null, dataType);
+		}
+		copy.setUpdatedTimestamp(new Date(gaugeValue.getUpdatedTimestamp().getTime()));
+		return copy;
+	}
+	
+	/**
+	 * Inserts the given values using multi-row inserts of at most batchSize rows. 
+	 * 
+	 * Values already existing in the database are ignored. The numeric value of each gauge value is stored, values without numeric value (text values) are stored as nulls,
+	 * the actual text content must be inserted separately.
+	 * 
+	 * @param t
+	 * @param gaugeKeys the internal gauge key for each value in gaugeValues list
+	 * @param gaugeValues
+	 * @param batchSize the maximum amount of rows per insert statement
+	 * @return the amount of inserted values, as reported by the database
+	 */
+	static int insertGaugeValues(JdbcTemplate t, List<Integer> gaugeKeys, List<GaugeValue> gaugeValues, int batchSize){
+		int valueCount = gaugeValues.size();
+		int inserted = 0;
+		for(int start = 0; start < valueCount; start += batchSize){
+			int end = Math.min(start + batchSize, valueCount);
+			final List<Integer> batchKeys = gaugeKeys.subList(start, end);
+			final List<GaugeValue> batch = gaugeValues.subList(start, end);
+			int rowCount = batch.size();
+			StringBuilder sql = new StringBuilder(SQL_INSERT_GAUGE_VALUES.length() + rowCount * (SQL_INSERT_GAUGE_VALUES_ROW.length() + 1) + SQL_INSERT_GAUGE_VALUES_IGNORE_DUPLICATES.length());
+			sql.append(SQL_INSERT_GAUGE_VALUES);
+			sql.append(SQL_INSERT_GAUGE_VALUES_ROW);
+			for(int i=1; i<rowCount; ++i){
+				sql.append(',');
+				sql.append(SQL_INSERT_GAUGE_VALUES_ROW);
+			}
+			sql.append(SQL_INSERT_GAUGE_VALUES_IGNORE_DUPLICATES);
+			final String sqlString = sql.toString();
+			
+			inserted += t.update(new PreparedStatementCreator() {
+				@Override
+				public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+					PreparedStatement ps = con.prepareStatement(sqlString);
+					int index = 0;
+					Iterator<Integer> keyIter = batchKeys.iterator();
+					for(GaugeValue gv : batch){
+						ps.setInt(++index, keyIter.next());
+						if(gv.hasNumericValue()){
+							ps.setDouble(++index, gv.getNumericValue());
+						}else{
+							ps.setNull(++index, Types.DOUBLE);
+						}
+						ps.setTimestamp(++index, new Timestamp(gv.getUpdatedTimestamp().getTime()));
+					}
+					return ps;
+				}
+			});
+		} // for batches
+		return inserted;
 	}
 	
 	/**
@@ -229,296 +806,805 @@ public class UimahalliDAO extends SQLDAO {
 			sql.addWhereClause(new AndClause(COLUMN_LOCATION_ID, locationIds));
 		}
 		
-		List<Map<String, Object>> rows = getJdbcTemplate().queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes());
+		List<Location> rows = getJdbcTemplate().query(sql.toSQLString(), sql.getValues(), sql.getValueTypes(), LOCATION_MAPPER);
 		if(rows.isEmpty()){
 			LOGGER.debug("No locations found.");
 			return null;
 		}
 		
 		Locations locations = new Locations();
-		for(Map<String, Object> row : rows){
-			locations.addLocation(extractLocation(row));
+		for(Location location : rows){
+			locations.addLocation(location);
 		}
 		return locations;
 	}
 	
 	/**
 	 * 
-	 * @param row
-	 * @return location extracted from the given row map
+	 * @param authenticatedUser
+	 * @param dataGroups
+	 * @param sortOptions 
+	 * @param limits 
+	 * @param tagIds
+	 * @param endDate if not null, only gauge values created at or before the date are retrieved
+	 * @param startDate if not null, only gauge values created at or after the date are retrieved
+	 * @param cursors if not null, gauge values are retrieved only for the gauges of the cursors, starting after the cursor position
+	 * @param since if not null, only the gauge values inserted after the watermark are retrieved, the watermark is advanced past the retrieved values and set to the returned meters
+	 * @param maxPoints if not null, the values of numeric gauges with more values than this may be replaced by hourly or daily aggregates, see {@link #getGaugeValues(List, Limits, SortOptions, Date, Date, List, SyncWatermark, Integer)}
+	 * @return meters or null if none was found
+	 */
+	public Meters getMeters(UserIdentity authenticatedUser, DataGroups dataGroups, Limits limits, SortOptions sortOptions, List<String> tagIds, Date endDate, Date startDate, List<GaugeValueCursor> cursors, SyncWatermark since, Integer maxPoints) {
+		QUERY_COUNT.get()[0] = 0;
+		Meters meterList = selectMeters(authenticatedUser, tagIds, null);
+		if(meterList == null){
+			return null;
+		}
+		if(DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGES, dataGroups)){
+			getGauges(meterList, dataGroups, limits, sortOptions, endDate, startDate, cursors, since, maxPoints);	//get only meters and gauges
+		}
+		if(since != null){
+			meterList.setWatermark(since.toToken());
+		}
+		LOGGER.debug("Meters retrieved with "+getQueryCount()+" queries.");
+		return meterList;
+	}
+	
+	/**
+	 * Retrieves the meters with gauges, each gauge containing only its latest value. The latest values are served from memory, the gauge value table
+	 * is only read once for loading the latest values of all gauges.
+	 * 
+	 * @param authenticatedUser
+	 * @param tagIds optional tag id filter
+	 * @param locationIds optional location id filter
+	 * @return meters or null if none was found, the returned gauge values are shared and must not be modified
+	 */
+	public Meters getLatestMeasurements(UserIdentity authenticatedUser, List<String> tagIds, long[] locationIds) {
+		QUERY_COUNT.get()[0] = 0;
+		Meters meterList = selectMeters(authenticatedUser, tagIds, locationIds);
+		if(meterList == null){
+			return null;
+		}
+		getGauges(meterList, new DataGroups(Definitions.DATA_GROUP_GAUGES), null, null, null, null, null, null, null);
+		if(!_latestGaugeValues.isLoaded()){ // normally loaded on service initialization
+			loadLatestGaugeValues();
+		}
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		for(Meter meter : meterList.getMeters()){
+			List<Gauge> gauges = meter.getGauges();
+			if(gauges == null){
+				continue;
+			}
+			for(Gauge gauge : gauges){
+				GaugeDetails details = catalog.get(gauge.getId());
+				if(details == null){
+					LOGGER.warn("Gauge not found from catalog, id: "+gauge.getId());
+					continue;
+				}
+				GaugeValue latest = _latestGaugeValues.get(details.getGaugeKey());
+				if(latest != null){
+					gauge.addGaugeValue(latest);
+				}
+			}
+		}
+		LOGGER.debug("Latest measurements retrieved with "+getQueryCount()+" queries.");
+		return meterList;
+	}
+	
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param tagIds optional tag id filter
+	 * @param locationIds optional location id filter
+	 * @return the meters of the user (without gauges) or null if none was found
+	 */
+	private Meters selectMeters(UserIdentity authenticatedUser, List<String> tagIds, long[] locationIds) {
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_METERS);
+		sql.addSelectColumns(SQL_COLUMNS_GET_METERS);
+		if(tagIds != null && !tagIds.isEmpty()){
+			LOGGER.debug("Adding tag id filter...");
+			sql.addWhereClause(new AndClause(COLUMN_TAG_ID, tagIds.toArray(), SQLType.STRING));
+		}
+		if(!ArrayUtils.isEmpty(locationIds)){
+			LOGGER.debug("Adding location id filter...");
+			sql.addWhereClause(new AndClause(COLUMN_LOCATION_ID, locationIds));
+		}
+		sql.addWhereClause(new AndClause(COLUMN_USER_ID, authenticatedUser.getUserId(), SQLType.LONG));	//get data of logged user
+		sql.addOrderBy(COLUMN_LOCATION_ID, OrderDirection.ASCENDING);
+		sql.addOrderBy(COLUMN_NAME, OrderDirection.ASCENDING);
+		
+		List<Meter> meters = query(getJdbcTemplate(), sql.toSQLString(), sql.getValues(), sql.getValueTypes(), METER_MAPPER);
+		if(meters.isEmpty()){
+			LOGGER.debug("No meters found.");
+			return null;
+		}
+		Meters meterList = new Meters();
+		meterList.setMeters(meters);
+		return meterList;
+	}
+	
+	/**
+	 * 
+	 * @return the number of database queries executed by the latest {@link #getMeters(UserIdentity, DataGroups, Limits, SortOptions, List, Date, Date, List, SyncWatermark, Integer)} call of the current thread
+	 */
+	public int getQueryCount(){
+		return QUERY_COUNT.get()[0];
+	}
+	
+	/**
+	 * Executes the query and increases the query count of the current thread.
+	 * 
+	 * @param t
+	 * @param sql
+	 * @param values
+	 * @param types
+	 * @param mapper
+	 * @return the mapped rows
+	 * @see #getQueryCount()
+	 */
+	private <T> List<T> query(JdbcTemplate t, String sql, Object[] values, int[] types, RowMapper<T> mapper){
+		++QUERY_COUNT.get()[0];
+		return t.query(sql, values, types, mapper);
+	}
+	
+	/**
+	 * Executes the query and increases the query count of the current thread.
+	 * 
+	 * @param t
+	 * @param sql
+	 * @param values
+	 * @param types
+	 * @param handler
+	 * @see #getQueryCount()
+	 */
+	private void query(JdbcTemplate t, String sql, Object[] values, int[] types, RowCallbackHandler handler){
+		++QUERY_COUNT.get()[0];
+		t.query(sql, values, types, handler);
+	}
+	
+	/**
+	 * Makes a check if the user has permission to add gauge values which were posted.
+	 * @param authenticatedUser
+	 * @param gaugeIds
+	 * @return true if the user has permissions for the given gauge ids
+	 */
+	public boolean hasPermissions(UserIdentity authenticatedUser, Set<String> gaugeIds){
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		long userId = authenticatedUser.getUserId();
+		for(String gaugeId : gaugeIds){
+			GaugeDetails details = catalog.get(gaugeId);
+			if(details == null || details.getUserId() != userId){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @return the gauge catalog, the catalog is loaded from the database if it has been invalidated
+	 */
+	private Map<String, GaugeDetails> getGaugeCatalog(){
+		Map<String, GaugeDetails> gauges = _gaugeCatalog.getGauges();
+		if(gauges != null){
+			return gauges;
+		}
+		
+		long version = _gaugeCatalog.getVersion();
+		final Map<String, GaugeDetails> loaded = new HashMap<>();
+		++QUERY_COUNT.get()[0];
+		getJdbcTemplate().query(SQL_SELECT_GAUGE_CATALOG, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				String gaugeId = set.getString(1);
+				loaded.put(gaugeId, new GaugeDetails(gaugeId, set.getInt(2), set.getLong(3), set.getLong(4), DataType.fromDataTypeString(set.getString(5)), (Double) set.getObject(6), (Double) set.getObject(7), (Double) set.getObject(8), (Double) set.getObject(9), BooleanUtils.toBooleanObject((Integer) set.getObject(10)), set.getBoolean(11)));
+			}
+		});
+		LOGGER.debug("Loaded gauge catalog, gauge count: "+loaded.size());
+		if(!_gaugeCatalog.setGauges(loaded, version)){
+			LOGGER.debug("Gauge catalog was invalidated while loading.");
+		}
+		return loaded;
+	}
+	
+	/**
+	 * Loads the latest value of each gauge with a single query. The latest values are resolved by the (gauge_key, row_created) index,
+	 * without reading the other values of the gauges.
+	 * 
+	 * Values added while loading are retained, so the values can be loaded while the service is in use.
+	 */
+	public void loadLatestGaugeValues(){
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		final Map<Integer, DataType> dataTypes = new HashMap<>(catalog.size());
+		for(GaugeDetails details : catalog.values()){
+			dataTypes.put(details.getGaugeKey(), details.getDataType());
+		}
+		final Map<Integer, GaugeValue> loaded = new HashMap<>(dataTypes.size());
+		++QUERY_COUNT.get()[0];
+		getJdbcTemplate().query(SQL_SELECT_LATEST_GAUGE_VALUES, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				int gaugeKey = set.getInt(2);
+				loaded.put(gaugeKey, extractGaugeValue(set, dataTypes.get(gaugeKey)));
+			}
+		});
+		LOGGER.debug("Loaded latest gauge values, gauge count: "+loaded.size());
+		_latestGaugeValues.load(loaded);
+	}
+	
+	/**
+	 * Retrieves the gauges of all given meters with a single query.
+	 * 
+	 * @param meterList
+	 * @param dataGroups
+	 * @param sortOptions 
+	 * @param limits 
+	 * @param endDate
+	 * @param startDate
+	 * @param cursors
+	 * @param since
+	 * @param maxPoints
+	 */
+	private void getGauges(Meters meterList, DataGroups dataGroups, Limits limits, SortOptions sortOptions, Date endDate, Date startDate, List<GaugeValueCursor> cursors, SyncWatermark since, Integer maxPoints){
+		if(Meters.isEmpty(meterList)){
+			return;
+		}
+		List<Meter> meters = meterList.getMeters();
+		final Map<Long, Meter> meterMap = new HashMap<>(meters.size());
+		for(Meter meter : meters){
+			meterMap.put(meter.getMeterId(), meter);
+		}
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGES);
+		sql.addSelectColumns(SQL_COLUMNS_GET_GAUGES);
+		sql.addWhereClause(new AndClause(COLUMN_METER_ID, meterMap.keySet(), SQLType.LONG));
+		sql.addOrderBy(COLUMN_METER_ID, OrderDirection.ASCENDING);
+		sql.addOrderBy(COLUMN_GAUGE_INDEX, OrderDirection.ASCENDING);
+		final List<Gauge> gaugeList = new ArrayList<>();
+		query(getJdbcTemplate(), sql.toSQLString(), sql.getValues(), sql.getValueTypes(), new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				Gauge gauge = extractGauge(set);
+				meterMap.get(set.getLong(2)).addGauge(gauge);
+				gaugeList.add(gauge);
+			}
+		});
+		if(gaugeList.isEmpty()){
+			LOGGER.debug("No gauges found.");
+			return;
+		}
+		
+		if(DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGE_VALUES, dataGroups)){
+			getGaugeValues(gaugeList, limits, sortOptions, endDate, startDate, cursors, since, maxPoints);
+		}
+	}
+	
+	/**
+	 * Retrieves the values of the given gauges. The values of at most {@value #MAX_GAUGES_PER_QUERY} gauges are retrieved with a single query.
+	 * 
+	 * If limits are given, the limits are applied separately for each gauge, and a cursor for the next page is set for each gauge whose page was full.
+	 * 
+	 * If cursors are given, values are retrieved only for the gauges of the cursors. The values of each gauge start after the position of the gauge's cursor,
+	 * and the maximum amount of items of the limits is used as the page size.
+	 * 
+	 * If a watermark is given, only the values inserted after the watermark position of each gauge are retrieved, and the watermark is advanced past the retrieved values.
+	 * 
+	 * If the maximum amount of points is given without limits, cursors or watermark, and the range is given in whole days, the values of numeric gauges with complete aggregates
+	 * and with more values than the maximum amount of points are replaced by hourly or daily aggregates, see {@link #setRollupValues(Map, Map, int, SortOptions, Date, Date)}.
+	 * 
+	 * @param gaugeList
+	 * @param limits
+	 * @param sortOptions
+	 * @param endDate if not null, only values created at or before the date are retrieved
+	 * @param startDate if not null, only values created at or after the date are retrieved
+	 * @param cursors
+	 * @param since
+	 * @param maxPoints
+	 */
+	private void getGaugeValues(List<Gauge> gaugeList, Limits limits, SortOptions sortOptions, Date endDate, Date startDate, List<GaugeValueCursor> cursors, final SyncWatermark since, Integer maxPoints){
+		if(gaugeList == null || gaugeList.isEmpty()){
+			return;
+		}
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		final Map<Integer, Gauge> gauges = new HashMap<>(gaugeList.size());
+		for(Gauge gauge : gaugeList){
+			GaugeDetails details = catalog.get(gauge.getId());
+			if(details == null){
+				LOGGER.warn("Gauge not found from catalog, id: "+gauge.getId());
+			}else{
+				gauges.put(details.getGaugeKey(), gauge);
+			}
+		}
+		
+		Map<Integer, GaugeValueCursor> cursorMap = null;
+		if(cursors != null){
+			cursorMap = new HashMap<>(cursors.size());
+			for(GaugeValueCursor cursor : cursors){
+				cursorMap.put(cursor.getGaugeKey(), cursor);
+			}
+			gauges.keySet().retainAll(cursorMap.keySet());
+			if(limits != null){
+				limits = new Limits(0, limits.getMaxItems() - 1); // the page starts from the cursor position, not from an offset
+			}
+		}
+		
+		if(maxPoints != null && limits == null && cursorMap == null && since == null){
+			setRollupValues(gauges, catalog, maxPoints, sortOptions, endDate, startDate);
+		}
+		
+		RowCallbackHandler handler = new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				int gaugeKey = set.getInt(2);
+				Gauge gauge = gauges.get(gaugeKey);
+				GaugeValue value = extractGaugeValue(set, gauge.getDataType());
+				gauge.addGaugeValue(value);
+				if(since != null){
+					since.advance(gaugeKey, value.getRowId());
+				}
+			}
+		};
+		JdbcTemplate t = getJdbcTemplate();
+		List<Integer> gaugeKeys = new ArrayList<>(gauges.keySet());
+		int gaugeCount = gaugeKeys.size();
+		for(int start = 0; start < gaugeCount; start += MAX_GAUGES_PER_QUERY){
+			List<Integer> batch = gaugeKeys.subList(start, Math.min(start + MAX_GAUGES_PER_QUERY, gaugeCount));
+			if(limits == null && cursorMap == null && since == null){
+				queryGaugeValues(t, batch, sortOptions, endDate, startDate, handler);
+			}else{
+				queryGaugeValues(t, batch, limits, sortOptions, endDate, startDate, cursorMap, since, handler);
+			}
+		}
+		
+		if(limits != null){
+			setCursors(gauges, limits.getMaxItems());
+		}
+	}
+	
+	/**
+	 * Sets aggregated values for the numeric gauges with complete aggregates, if the amount of values of the gauge in the given range exceeds the maximum amount of points.
+	 * 
+	 * The range must start and end at midnight. Hourly aggregates are used if the range has at most the maximum amount of hours, otherwise daily aggregates are used
+	 * if the range has at most the maximum amount of days. The aggregated values cover the values created at or after the start and before the end of the range.
+	 * Note that this differs from the gauge values returned without aggregation, for which the end date is inclusive: the values created exactly at the end date
+	 * (midnight) belong to the period following the range, and are not included.
+	 * 
+	 * For cumulative gauges, the last value of each period is used, for other gauges the average of the values of the period, timestamped at the start of the period.
+	 * 
+	 * @param gauges gauge key - gauge map, the gauges for which aggregated values were set are removed from the map
+	 * @param catalog
+	 * @param maxPoints
+	 * @param sortOptions
+	 * @param endDate
+	 * @param startDate
+	 */
+	private void setRollupValues(Map<Integer, Gauge> gauges, Map<String, GaugeDetails> catalog, int maxPoints, SortOptions sortOptions, Date endDate, Date startDate){
+		if(startDate == null || endDate == null || !startDate.before(endDate) || !Period.DAY.getStart(startDate).equals(startDate) || !Period.DAY.getStart(endDate).equals(endDate)){
+			return;
+		}
+		Period period = null;
+		for(Period p : new Period[]{Period.HOUR, Period.DAY}){
+			int count = 0;
+			for(Date start = startDate; start.before(endDate) && count <= maxPoints; start = p.getNext(start)){
+				++count;
+			}
+			if(count <= maxPoints){
+				period = p;
+				break;
+			}
+		}
+		if(period == null){
+			LOGGER.debug("The range has too many days for aggregated values.");
+			return;
+		}
+		
+		List<Object[]> ranges = new ArrayList<>();
+		for(Entry<Integer, Gauge> e : gauges.entrySet()){
+			Gauge gauge = e.getValue();
+			GaugeDetails details = catalog.get(gauge.getId());
+			if(gauge.getDataType() != DataType.STRING && details.isRollupsComplete()){
+				ranges.add(new Object[]{e.getKey(), startDate, endDate});
+			}
+		}
+		if(ranges.isEmpty()){
+			return;
+		}
+		final Map<Integer, List<GaugeValueRollup>> rollups = new HashMap<>(ranges.size());
+		queryRanges(getJdbcTemplate(), SQL_SELECT_ROLLUPS, SQL_SELECT_ROLLUPS_RANGE, period, ranges, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				int gaugeKey = set.getInt(1);
+				List<GaugeValueRollup> list = rollups.get(gaugeKey);
+				if(list == null){
+					list = new ArrayList<>();
+					rollups.put(gaugeKey, list);
+				}
+				list.add(extractRollup(set));
+			}
+		});
+		
+		boolean descending = (getDateOrderDirection(sortOptions) == OrderDirection.DESCENDING);
+		for(Entry<Integer, List<GaugeValueRollup>> e : rollups.entrySet()){
+			List<GaugeValueRollup> list = e.getValue();
+			long count = 0;
+			for(GaugeValueRollup rollup : list){
+				count += rollup.getCount();
+			}
+			if(count <= maxPoints){
+				continue; // the values are few enough to be retrieved as such
+			}
+			Collections.sort(list, new Comparator<GaugeValueRollup>() {
+				@Override
+				public int compare(GaugeValueRollup o1, GaugeValueRollup o2) {
+					return o1.getPeriodStart().compareTo(o2.getPeriodStart());
+				}
+			});
+			Gauge gauge = gauges.remove(e.getKey());
+			boolean cumulative = BooleanUtils.isTrue(gauge.isCumulative());
+			List<GaugeValue> values = new ArrayList<>(list.size());
+			for(GaugeValueRollup rollup : list){
+				GaugeValue value = new GaugeValue();
+				if(cumulative){
+					setValue(value, rollup.getLastValue(), null, gauge.getDataType());
+					value.setUpdatedTimestamp(rollup.getLastCreated());
+				}else{
+					setValue(value, rollup.getAverage(), null, gauge.getDataType());
+					value.setUpdatedTimestamp(rollup.getPeriodStart());
+				}
+				values.add(value);
+			}
+			if(descending){
+				Collections.reverse(values);
+			}
+			gauge.setValues(values);
+		}
+	}
+	
+	/**
+	 * Sets the cursor for each gauge which has a full page of values. The cursor points to the last value of the gauge.
+	 * 
+	 * @param gauges gauge key - gauge map
+	 * @param pageSize
+	 */
+	private void setCursors(Map<Integer, Gauge> gauges, int pageSize){
+		for(Entry<Integer, Gauge> e : gauges.entrySet()){
+			List<GaugeValue> values = e.getValue().getValues();
+			if(values != null && values.size() >= pageSize){
+				GaugeValue last = values.get(values.size() - 1);
+				e.getValue().setCursor(new GaugeValueCursor(e.getKey(), last.getUpdatedTimestamp(), last.getRowId()).toToken());
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param t
+	 * @param gaugeKeys
+	 * @param sortOptions
+	 * @param endDate
+	 * @param startDate
+	 * @param handler called for all value rows of the given gauges
+	 */
+	private void queryGaugeValues(JdbcTemplate t, List<Integer> gaugeKeys, SortOptions sortOptions, Date endDate, Date startDate, RowCallbackHandler handler){
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
+		sql.addSelectColumns(SQL_COLUMNS_GET_GAUGE_VALUES);
+		sql.addJoin(new JoinClause(SQL_JOIN_GAUGE_VALUE_TEXTS));
+		sql.addWhereClause(new AndClause(COLUMN_GAUGE_KEY, gaugeKeys, SQLType.INTEGER));
+		addDateFilter(sql, endDate, startDate);
+		setOrderBy(sql, sortOptions);
+		query(t, sql.toSQLString(), sql.getValues(), sql.getValueTypes(), handler);
+	}
+	
+	/**
+	 * Combines the limited per-gauge queries into a single UNION ALL query.
+	 * 
+	 * When cursors are given, the values are ordered by creation time and row id, and the values of each gauge are retrieved by seeking past the position of the gauge's cursor.
+	 * 
+	 * @param t
+	 * @param gaugeKeys
+	 * @param limits can be null
+	 * @param sortOptions
+	 * @param endDate
+	 * @param startDate
+	 * @param cursors gauge key - cursor map, can be null
+	 * @param since can be null
+	 * @param handler called for the value rows of the given gauges, limited separately for each gauge
+	 */
+	private void queryGaugeValues(JdbcTemplate t, List<Integer> gaugeKeys, Limits limits, SortOptions sortOptions, Date endDate, Date startDate, Map<Integer, GaugeValueCursor> cursors, SyncWatermark since, RowCallbackHandler handler){
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
+		sql.addSelectColumns(SQL_COLUMNS_GET_GAUGE_VALUES);
+		sql.addJoin(new JoinClause(SQL_JOIN_GAUGE_VALUE_TEXTS));
+		OrderDirection direction = getDateOrderDirection(sortOptions);
+		if(cursors == null){
+			setOrderBy(sql, sortOptions);
+		}else{
+			if(direction == null){
+				direction = OrderDirection.ASCENDING; // seeking requires a defined order
+			}
+			sql.addOrderBy(COLUMN_ROW_CREATED, direction);
+			sql.addOrderBy(TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID, direction);
+		}
+		if(limits != null){
+			sql.setLimits(limits);
+		}
+		
+		StringBuilder union = new StringBuilder("SELECT * FROM (");
+		Object[] values = ArrayUtils.EMPTY_OBJECT_ARRAY;
+		int[] types = ArrayUtils.EMPTY_INT_ARRAY;
+		for(Iterator<Integer> iter = gaugeKeys.iterator(); iter.hasNext();){
+			Integer gaugeKey = iter.next();
+			sql.clearWhereClauses();
+			sql.addWhereClause(new AndClause(COLUMN_GAUGE_KEY, gaugeKey, SQLType.INTEGER));
+			addDateFilter(sql, endDate, startDate);
+			if(cursors != null){
+				addSeekFilter(sql, cursors.get(gaugeKey), direction);
+			}
+			if(since != null){
+				sql.addWhereClause(new RawClause(TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID+">?", new Object[]{since.getPosition(gaugeKey)}, new SQLType[]{SQLType.LONG}, ClauseType.AND)); // uses the (gauge_key, gauge_value_id) index
+			}
+			union.append('(');
+			union.append(sql.toSQLString());
+			union.append(')');
+			if(iter.hasNext()){
+				union.append(" UNION ALL ");
+			}
+			values = ArrayUtils.addAll(values, sql.getValues());
+			types = ArrayUtils.addAll(types, sql.getValueTypes());
+		}
+		union.append(") AS "+SQL_ALIAS_GAUGE_VALUES);
+		if(direction != null){ // the order of the sub-query results is not preserved by the union
+			String order = (direction == OrderDirection.DESCENDING ? " DESC" : " ASC");
+			union.append(" ORDER BY "+COLUMN_ROW_CREATED+order);
+			if(cursors != null){
+				union.append(", "+COLUMN_GAUGE_VALUE_ID+order);
+			}
+		}
+		query(t, union.toString(), values, types, handler);
+	}
+	
+	/**
+	 * Writes the meters of the user, including gauges and gauge values, to the given writer as a {@link Meters} JSON object.
+	 * 
+	 * The meters and gauges are retrieved first, after which the values of each gauge are streamed from the database directly to the writer.
+	 * 
+	 * @param authenticatedUser
+	 * @param limits applied separately to the values of each gauge, can be null
+	 * @param sortOptions
+	 * @param tagIds
+	 * @param endDate if not null, only gauge values created at or before the date are written
+	 * @param startDate if not null, only gauge values created at or after the date are written
+	 * @param gson serializer for the meters, gauges and gauge values
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeMeters(UserIdentity authenticatedUser, Limits limits, SortOptions sortOptions, List<String> tagIds, Date endDate, Date startDate, Gson gson, JsonWriter writer) throws IOException {
+		Meters meters = getMeters(authenticatedUser, new DataGroups(Definitions.DATA_GROUP_GAUGES), null, null, tagIds, null, null, null, null, null);
+		writer.beginObject();
+		if(!Meters.isEmpty(meters)){
+			Map<String, GaugeDetails> catalog = getGaugeCatalog();
+			writer.name(service.tut.pori.kiiau.datatypes.Definitions.JSON_NAME_METERS);
+			writer.beginArray();
+			for(Meter meter : meters.getMeters()){
+				List<Gauge> gauges = meter.getGauges();
+				meter.setGauges(null); // gauges are written separately
+				writer.beginObject();
+				writeMembers(gson.toJsonTree(meter).getAsJsonObject(), gson, writer);
+				if(gauges != null){
+					writer.name(service.tut.pori.kiiau.datatypes.Definitions.JSON_NAME_GAUGES);
+					writer.beginArray();
+					for(Gauge gauge : gauges){
+						writer.beginObject();
+						writeMembers(gson.toJsonTree(gauge).getAsJsonObject(), gson, writer);
+						GaugeDetails details = catalog.get(gauge.getId());
+						if(details == null){
+							LOGGER.warn("Gauge not found from catalog, id: "+gauge.getId());
+						}else{
+							writeGaugeValues(details.getGaugeKey(), gauge.getDataType(), limits, sortOptions, endDate, startDate, gson, writer);
+						}
+						writer.endObject();
+					}
+					writer.endArray();
+				}
+				writer.endObject();
+			}
+			writer.endArray();
+		}
+		writer.endObject();
+	}
+	
+	/**
+	 * 
+	 * @param object
+	 * @param gson
+	 * @param writer
+	 * @throws IOException
+	 */
+	static void writeMembers(JsonObject object, Gson gson, JsonWriter writer) throws IOException {
+		for(Entry<String, JsonElement> e : object.entrySet()){
+			writer.name(e.getKey());
+			gson.toJson(e.getValue(), writer);
+		}
+	}
+	
+	/**
+	 * Streams the values of the given gauge to the writer. If the gauge has no values, nothing is written.
+	 * 
+	 * @param gaugeKey
+	 * @param dataType
+	 * @param limits can be null
+	 * @param sortOptions
+	 * @param endDate
+	 * @param startDate
+	 * @param gson
+	 * @param writer
+	 * @throws IOException
+	 */
+	private void writeGaugeValues(int gaugeKey, DataType dataType, Limits limits, SortOptions sortOptions, Date endDate, Date startDate, Gson gson, JsonWriter writer) throws IOException {
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
+		sql.addSelectColumns(SQL_COLUMNS_GET_GAUGE_VALUES);
+		sql.addJoin(new JoinClause(SQL_JOIN_GAUGE_VALUE_TEXTS));
+		sql.addWhereClause(new AndClause(COLUMN_GAUGE_KEY, gaugeKey, SQLType.INTEGER));
+		addDateFilter(sql, endDate, startDate);
+		setOrderBy(sql, sortOptions);
+		if(limits != null){
+			sql.setLimits(limits);
+		}
+		
+		final String sqlString = sql.toSQLString();
+		final Object[] values = sql.getValues();
+		final int[] types = sql.getValueTypes();
+		GaugeValueWriter valueWriter = new GaugeValueWriter(dataType, gson, writer);
+		getJdbcTemplate().query(new PreparedStatementCreator() {
+			@Override
+			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+				PreparedStatement ps = con.prepareStatement(sqlString, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(Integer.MIN_VALUE); // makes the MySQL driver to stream the rows instead of reading the whole result set into memory
+				for(int i=0; i<values.length; ++i){
+					ps.setObject(i+1, values[i], types[i]);
+				}
+				return ps;
+			}
+		}, valueWriter);
+		valueWriter.finish();
+	}
+	
+	/**
+	 * 
+	 * @param set
+	 * @param dataType the data type of the gauge, used for formatting numeric values, if null, the default data type is assumed
+	 * @return gauge value extracted from the current row of the given result set, the columns must be in the order of {@link #SQL_COLUMNS_GET_GAUGE_VALUES}
+	 * @throws SQLException
 	 */
-	private Location extractLocation(Map<String, Object> row){
-		Location location = new Location();
-		for(Entry<String, Object> e : row.entrySet()){
-			switch(e.getKey()){
-				case COLUMN_LOCATION_ID:
-					location.setLocationId((Long) e.getValue());
-					break;
-				case COLUMN_NAME:
-					location.setName((String) e.getValue());
-					break;
-				case COLUMN_FLOOR_PLAN_URL:
-					location.setFloorPlanUrl((String) e.getValue());
-					break;
-				case COLUMN_USER_ID: // ignore
-					break;
-				default:
-					LOGGER.warn("Ignored unknown column: "+e.getKey());
-					break;
-			} // switch
-		} // for
-		return location;
+	static GaugeValue extractGaugeValue(ResultSet set, DataType dataType) throws SQLException {
+		GaugeValue gaugeValue = new GaugeValue();
+		gaugeValue.setRowId(set.getLong(1));
+		setValue(gaugeValue, getDouble(set, 3), set.getString(4), dataType);
+		gaugeValue.setUpdatedTimestamp(new Date(set.getTimestamp(5).getTime()));
+		return gaugeValue;
 	}
 	
 	/**
 	 * 
-	 * @param authenticatedUser
-	 * @param dataGroups
-	 * @param sortOptions 
-	 * @param limits 
-	 * @param tagIds
-	 * @return meters or null if none was found
-	 */
-	public Meters getMeters(UserIdentity authenticatedUser, DataGroups dataGroups, Limits limits, SortOptions sortOptions, List<String> tagIds) {
-		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_METERS);
-		if(tagIds != null && !tagIds.isEmpty()){
-			LOGGER.debug("Adding tag id filter...");
-			sql.addWhereClause(new AndClause(COLUMN_TAG_ID, tagIds.toArray(), SQLType.STRING));
-		}
-		sql.addWhereClause(new AndClause(COLUMN_USER_ID, authenticatedUser.getUserId(), SQLType.LONG));	//get data of logged user
-		sql.addOrderBy(COLUMN_LOCATION_ID, OrderDirection.ASCENDING);
-		sql.addOrderBy(COLUMN_NAME, OrderDirection.ASCENDING);
-		
-		Meters meterList = null;
-		JdbcTemplate template = getJdbcTemplate();
-		meterList = extractMeters(template.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes()), meterList);
-		if(DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGES, dataGroups)){
-			getGauges(meterList, dataGroups, limits, sortOptions);	//get only meters and gauges
-		}
-		return meterList;
-	}
-	
-	/**
-	 * Makes a check if the user has permission to add gauge values which were posted.
-	 * @param authenticatedUser
-	 * @param gaugeIds
-	 * @return true if the user has permissions for the given gauge ids
+	 * @param set
+	 * @return aggregate extracted from the current row of the given result set, the columns must be in the order of {@link #SQL_COLUMNS_GET_ROLLUPS}
+	 * @throws SQLException
 	 */
-	public boolean hasPermissions(UserIdentity authenticatedUser, Set<String> gaugeIds){
-		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGES);
-		sql.addSelectColumn(COLUMN_COUNT);
-		sql.addWhereClause(new AndClause(COLUMN_GAUGE_ID, gaugeIds, SQLType.STRING));
-		sql.addWhereClause(new RawClause(COLUMN_METER_ID+" IN (SELECT "+COLUMN_METER_ID+" FROM "+TABLE_METERS+" WHERE "+COLUMN_USER_ID+"=?)", new Object[]{authenticatedUser.getUserId()}, new SQLType[]{SQLType.LONG}, ClauseType.AND));
-		return (getJdbcTemplate().queryForObject(sql.toSQLString(), sql.getValues(), sql.getValueTypes(), Long.class) == gaugeIds.size());
+	private static GaugeValueRollup extractRollup(ResultSet set) throws SQLException {
+		GaugeValueRollup rollup = new GaugeValueRollup(new Date(set.getTimestamp(2).getTime()));
+		byte[] sketch = set.getBytes(12);
+		rollup.set(set.getLong(3), set.getDouble(4), set.getDouble(5), set.getDouble(6), set.getDouble(7), new Date(set.getTimestamp(8).getTime()), set.getDouble(9), new Date(set.getTimestamp(10).getTime()), set.getDouble(11), (sketch == null ? new QuantileSketch() : QuantileSketch.fromBytes(sketch))); // the sketch is missing until the aggregates created before the sketches are rebuilt
+		return rollup;
 	}
 	
 	/**
+	 * Writes the gauge values of a result set as a JSON array.
 	 * 
-	 * @param meterList
-	 * @param dataGroups
-	 * @param sortOptions 
-	 * @param limits 
 	 */
-	private void getGauges(Meters meterList, DataGroups dataGroups, Limits limits, SortOptions sortOptions){
-		if(Meters.isEmpty(meterList)){
-			return;
+	static class GaugeValueWriter implements RowCallbackHandler {
+		private final DataType _dataType;
+		private final Gson _gson;
+		private boolean _started = false;
+		private final JsonWriter _writer;
+		
+		/**
+		 * 
+		 * @param dataType
+		 * @param gson
+		 * @param writer
+		 */
+		public GaugeValueWriter(DataType dataType, Gson gson, JsonWriter writer) {
+			_dataType = dataType;
+			_gson = gson;
+			_writer = writer;
 		}
-		List<Meter> meters = meterList.getMeters();
-		JdbcTemplate template = getJdbcTemplate();
-		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGES);
-		sql.addOrderBy(COLUMN_GAUGE_INDEX, OrderDirection.ASCENDING);
-		for (Meter meter : meters) {
-			sql.clearWhereClauses();
-			sql.addWhereClause(new AndClause(COLUMN_METER_ID, meter.getMeterId(), SQLType.LONG));
-			List<Gauge> gaugeList = null;
-			gaugeList = extractGauges(template.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes()), gaugeList);
-			meter.setGauges(gaugeList);
-			if(DataGroups.hasDataGroup(DataGroups.DATA_GROUP_ALL, dataGroups) || DataGroups.hasDataGroup(Definitions.DATA_GROUP_GAUGE_VALUES, dataGroups)){
-				getGaugeValues(gaugeList, limits, sortOptions);
+
+		@Override
+		public void processRow(ResultSet set) throws SQLException {
+			try {
+				if(!_started){ // the array is started only if there are values
+					_writer.name(service.tut.pori.kiiau.datatypes.Definitions.JSON_NAME_GAUGE_VALUES);
+					_writer.beginArray();
+					_started = true;
+				}
+				_gson.toJson(extractGaugeValue(set, _dataType), GaugeValue.class, _writer);
+			} catch (IOException ex) {
+				throw new SQLException("Failed to write gauge value.", ex);
 			}
 		}
-	}
+		
+		/**
+		 * Ends the array, if it was started.
+		 * 
+		 * @throws IOException
+		 */
+		public void finish() throws IOException {
+			if(_started){
+				_writer.endArray();
+			}
+		}
+	} // class GaugeValueWriter
 	
 	/**
 	 * 
-	 * @param gaugeList
-	 * @param limits
-	 * @param sortOptions
+	 * @param set
+	 * @return gauge extracted from the current row of the given result set, the columns must be in the order of {@link #SQL_COLUMNS_GET_GAUGES}
+	 * @throws SQLException
 	 */
-	private void getGaugeValues(List<Gauge> gaugeList, Limits limits, SortOptions sortOptions){
-		if(gaugeList == null || gaugeList.isEmpty()){
-			return;
-		}
-		JdbcTemplate template = getJdbcTemplate();
-		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
-		setOrderBy(sql, sortOptions);
-		sql.setLimits(limits);
-		for (Gauge gauge : gaugeList) {
-			sql.clearWhereClauses();
-			sql.addWhereClause(new AndClause(COLUMN_GAUGE_ID, gauge.getId(), SQLType.STRING));
-			List<GaugeValue> gaugeValueList = null;
-			gaugeValueList = extractGaugeValues(template.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes()), gaugeValueList);
-			template.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes());
-			gauge.setValues(gaugeValueList);
-		}
+	private static Gauge extractGauge(ResultSet set) throws SQLException {
+		Gauge gauge = new Gauge();
+		gauge.setId(set.getString(1));
+		gauge.setIndex(set.getInt(3));
+		gauge.setName(set.getString(4));
+		gauge.setDescription(set.getString(5));
+		gauge.setDataType(DataType.fromDataTypeString(set.getString(6)));
+		gauge.setOptionsString(set.getString(7));
+		gauge.setUnit(set.getString(8));
+		gauge.setMin(getDouble(set, 9));
+		gauge.setMax(getDouble(set, 10));
+		gauge.setMinIncrease(getDouble(set, 11));
+		gauge.setMaxIncrease(getDouble(set, 12));
+		int cumulative = set.getInt(13);
+		gauge.setCumulative(set.wasNull() ? null : BooleanUtils.toBoolean(cumulative));
+		return gauge;
 	}
 	
 	/**
-	 * extracts the contents of the given rowmap into the passed list or creates a new list if null was passed
 	 * 
-	 * @param rowMap
-	 * @param meterList can be null
-	 * @return the passed list, a new list or null if nothing was added
+	 * @param set
+	 * @param columnIndex
+	 * @return the value of the given column or null if the value was SQL NULL
+	 * @throws SQLException
 	 */
-	private Meters extractMeters(List<Map<String,Object>> rowMap, Meters meterList){
-		if(rowMap.isEmpty()){
-			return null;
-		}
-		if(meterList == null){
-			meterList = new Meters();
-			List<Meter> meters = new ArrayList<>();
-			for(Iterator<Map<String,Object>> rowIter = rowMap.iterator();rowIter.hasNext();){
-				Meter meter = new Meter();				
-				for(Entry<String,Object> rowEntry : rowIter.next().entrySet()){
-					switch(rowEntry.getKey()){
-						case COLUMN_METER_ID:
-							meter.setMeterId((Long)rowEntry.getValue());
-							break;
-						case COLUMN_TAG_ID:
-							meter.setId((String)rowEntry.getValue());
-							break;
-						case COLUMN_NAME:
-							meter.setName((String)rowEntry.getValue());
-							break;
-						case COLUMN_LOCATION_ID:
-							meter.setLocationId((Long) rowEntry.getValue());
-							break;
-						case COLUMN_USER_ID:
-							meter.setUserId((Long) rowEntry.getValue());
-							break;
-						case COLUMN_LOCATION_X:
-							meter.setLocationX((Double) rowEntry.getValue());
-							break;
-						case COLUMN_LOCATION_Y:
-							meter.setLocationY((Double) rowEntry.getValue());
-							break;
-						default:
-							LOGGER.warn("Ignored unknown column name: "+rowEntry.getKey());
-							break;
-					}
-				}
-				meters.add(meter);
-			}
-			meterList.setMeters(meters);
-		}
-		return meterList;
+	private static Double getDouble(ResultSet set, int columnIndex) throws SQLException {
+		double value = set.getDouble(columnIndex);
+		return (set.wasNull() ? null : value);
 	}
 	
 	/**
-	 * extracts the contents of the given rowmap into the passed list or creates a new list if null was passed
 	 * 
-	 * @param rowMap
-	 * @param gaugeList can be null
-	 * @return the passed list, a new list or null if nothing was added
+	 * @param set
+	 * @param columnIndex
+	 * @return the value of the given column or null if the value was SQL NULL
+	 * @throws SQLException
 	 */
-	private List<Gauge> extractGauges(List<Map<String,Object>> rowMap, List<Gauge> gaugeList){
-		if(rowMap.isEmpty()){
-			return null;
-		}
-		if(gaugeList == null){
-			gaugeList = new ArrayList<>();
-			for(Iterator<Map<String,Object>> rowIter = rowMap.iterator();rowIter.hasNext();){
-				Gauge gauge = new Gauge();				
-				for(Entry<String,Object> rowEntry : rowIter.next().entrySet()){
-					switch(rowEntry.getKey()){
-						case COLUMN_GAUGE_ID:
-							gauge.setId((String)rowEntry.getValue());
-							break;
-						case COLUMN_GAUGE_INDEX:
-							gauge.setIndex((Integer)rowEntry.getValue());
-							break;
-						case COLUMN_NAME:
-							gauge.setName((String)rowEntry.getValue());
-							break;
-						case COLUMN_DESCRIPTION:
-							gauge.setDescription((String)rowEntry.getValue());
-							break;
-						case COLUMN_DATA_TYPE:
-							gauge.setDataType(DataType.fromDataTypeString((String)rowEntry.getValue()));
-							break;
-						case COLUMN_OPTIONS:
-							gauge.setOptionsString((String)rowEntry.getValue());
-							break;
-						case COLUMN_UNIT:
-							gauge.setUnit((String)rowEntry.getValue());
-							break;
-						case COLUMN_MIN:
-							gauge.setMin((Double)rowEntry.getValue());
-							break;
-						case COLUMN_MIN_INCREASE:
-							gauge.setMinIncrease((Double)rowEntry.getValue());
-							break;
-						case COLUMN_MAX:
-							gauge.setMax((Double)rowEntry.getValue());
-							break;
-						case COLUMN_MAX_INCREASE:
-							gauge.setMaxIncrease((Double)rowEntry.getValue());
-							break;
-						case COLUMN_CUMULATIVE:
-							gauge.setCumulative(BooleanUtils.toBooleanObject((Integer)rowEntry.getValue()));
-							break;
-						case COLUMN_METER_ID:
-							//do nothing
-							break;
-						default:
-							LOGGER.warn("Ignored unknown column name: "+rowEntry.getKey());
-							break;
-					}
-				}
-				gaugeList.add(gauge);
-			}
-		}
-		return gaugeList;
+	private static Long getLong(ResultSet set, int columnIndex) throws SQLException {
+		long value = set.getLong(columnIndex);
+		return (set.wasNull() ? null : value);
 	}
 	
 	/**
-	 * extracts the contents of the given rowmap into the passed list or creates a new list if null was passed
+	 * Sets the value for the given gauge value. The text value is used if given, otherwise the numeric value is formatted according to the given data type.
 	 * 
-	 * @param rowMap
-	 * @param gaugeValueList can be null
-	 * @return the passed list, a new list or null if nothing was added
+	 * @param gaugeValue
+	 * @param numericValue can be null
+	 * @param textValue can be null
+	 * @param dataType if null, the default data type is assumed
 	 */
-	private List<GaugeValue> extractGaugeValues(List<Map<String,Object>> rowMap, List<GaugeValue> gaugeValueList){
-		if(rowMap.isEmpty()){
-			return null;
+	static void setValue(GaugeValue gaugeValue, Double numericValue, String textValue, DataType dataType){
+		if(textValue != null){
+			gaugeValue.setValue(textValue);
+		}else if(numericValue != null){
+			gaugeValue.setValue(ValueParser.format(numericValue, (dataType == null || dataType == DataType.STRING ? DataType.DEFAULT_DATATYPE : dataType)));
+			gaugeValue.setNumericValue(numericValue);
 		}
-		if(gaugeValueList == null){
-			gaugeValueList = new ArrayList<>();
-			for(Iterator<Map<String,Object>> rowIter = rowMap.iterator();rowIter.hasNext();){
-				GaugeValue gaugevalue = new GaugeValue();				
-				for(Entry<String,Object> rowEntry : rowIter.next().entrySet()){
-					switch(rowEntry.getKey()){
-						case COLUMN_GAUGE_VALUE_ID:
-							gaugevalue.setRowId((Long)rowEntry.getValue());
-							break;
-						case COLUMN_VALUE:
-							gaugevalue.setValue((String)rowEntry.getValue());
-							break;
-						case COLUMN_ROW_CREATED:
-							gaugevalue.setUpdatedTimestamp((Date)rowEntry.getValue());
-							break;
-						case COLUMN_GAUGE_ID:
-							//do nothing
-							break;
-						default:
-							LOGGER.warn("Ignored unknown column name: "+rowEntry.getKey());
-							break;
-					}
-				}
-				gaugeValueList.add(gaugevalue);
-			}
-		}
-		return gaugeValueList;
 	}
 
 	/**
@@ -526,45 +1612,27 @@ public class UimahalliDAO extends SQLDAO {
 	 * @param gauges
 	 * @return true if data types were successfully resolved
 	 */
-	public boolean resolveDataTypes(final List<Gauge> gauges) {
+	public boolean resolveDataTypes(List<Gauge> gauges) {
 		if(gauges == null || gauges.isEmpty()){
 			LOGGER.error("Empty gauge list.");
 			return false;
 		}
 		
-		final Set<String> ids = new HashSet<>();
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
 		for(Gauge g : gauges){
 			String id = g.getId();
 			if(id == null){
 				LOGGER.error("Gauge without id.");
 				return false;
 			}
-			ids.add(id);
-		}
-		
-		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGES);
-		sql.addSelectColumns(SQL_COLUMNS_RESOLVE_DATA_TYPES);
-		sql.addWhereClause(new AndClause(COLUMN_GAUGE_ID, ids.toArray(), SQLType.STRING));
-		getJdbcTemplate().query(sql.toSQLString(), sql.getValues(), sql.getValueTypes(), new RowCallbackHandler() {
-			@Override
-			public void processRow(ResultSet set) throws SQLException {
-				String id = set.getString(COLUMN_GAUGE_ID);
-				ids.remove(id);
-				DataType dataType = DataType.fromDataTypeString(set.getString(COLUMN_DATA_TYPE));
-				for(Gauge g : gauges){
-					if(id.equals(g.getId())){
-						g.setDataType(dataType);
-					}
-				} // for
+			GaugeDetails details = catalog.get(id);
+			if(details == null){
+				LOGGER.warn("List contained non-existing gauges.");
+				return false;
 			}
-		});
-		
-		if(!ids.isEmpty()){
-			LOGGER.warn("List contained non-existing gauges.");
-			return false;
-		}else{
-			return true;
+			g.setDataType(details.getDataType());
 		}
+		return true;
 	}
 
 	/**
@@ -583,7 +1651,7 @@ public class UimahalliDAO extends SQLDAO {
 	 * @return true if successfully created, false if the given tagId was reserved
 	 */
 	public boolean addMeter(final Meter meter) {
-		return getTransactionTemplate().execute(new TransactionCallback<Boolean>() {
+		boolean added = getTransactionTemplate().execute(new TransactionCallback<Boolean>() {
 
 			@Override
 			public Boolean doInTransaction(TransactionStatus status) {
@@ -598,6 +1666,12 @@ public class UimahalliDAO extends SQLDAO {
 				return true;
 			}
 		});
+		if(added){
+			_gaugeCatalog.invalidate();
+			_measurementCache.clear();
+			_consumptionCache.clear();
+		}
+		return added;
 	}
 	
 	/**
@@ -650,6 +1724,10 @@ public class UimahalliDAO extends SQLDAO {
 		
 		if(sql.execute(getJdbcTemplate()) < 1){
 			LOGGER.debug("Nothing updated for meter id: "+meterId+", tag id: "+tagId);
+		}else{
+			_gaugeCatalog.invalidate();
+			_measurementCache.clear();
+			_consumptionCache.clear();
 		}
 		return true;
 	}
@@ -661,93 +1739,384 @@ public class UimahalliDAO extends SQLDAO {
 	 */
 	public void addGauge(Gauge gauge, Long meterId) {
 		getJdbcTemplate().update(SQL_INSERT_GAUGE, new Object[]{gauge.getId(), meterId, gauge.getIndex(), gauge.getName(), gauge.getDescription(), gauge.getDataType().toDataTypeString(), gauge.getOptionsString(), gauge.getUnit(), gauge.getMin(), gauge.getMax(), gauge.getMinIncrease(), gauge.getMaxIncrease(), BooleanUtils.toIntegerObject(gauge.isCumulative())}, SQL_INSERT_GAUGE_SQL_TYPES);
+		_gaugeCatalog.invalidate();
+		_measurementCache.clear();
+		_consumptionCache.clear();
+	}
+	
+	/**
+	 * Calculates the statistics of the numeric gauges. For cumulative gauges, the consumption per time bucket is calculated instead of the statistics of the readings.
+	 * 
+	 * @param authenticatedUser
+	 * @param endDate
+	 * @param startDate
+	 * @param tagIdFilter
+	 * @param bucket the time bucket for the consumption of cumulative gauges
+	 * @return statistics or null if none available
+	 */
+	public Statistics calculateStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIdFilter, TimeBucket bucket){
+		QUERY_COUNT.get()[0] = 0;
+		JdbcTemplate t = getJdbcTemplate();
+		List<Object[]> rows = selectStatisticsGauges(t, authenticatedUser, tagIdFilter, null);
+		if(rows == null){
+			return null;
+		}
+		
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		boolean rollupsComplete = true;
+		List<Integer> gaugeKeys = new ArrayList<>(rows.size());
+		Map<Integer, String> cumulativeGauges = new HashMap<>();
+		for(Object[] row : rows){
+			GaugeDetails details = catalog.get(row[1]);
+			if(details != null && BooleanUtils.isTrue(details.isCumulative()) && details.getDataType() != DataType.STRING){
+				cumulativeGauges.put((Integer) row[2], (String) row[1]);
+			}else{
+				rollupsComplete &= (details != null && details.isRollupsComplete());
+				gaugeKeys.add((Integer) row[2]);
+			}
+		}
+		Map<Integer, GaugeValueRollup[]> totals = (gaugeKeys.isEmpty() ? new HashMap<Integer, GaugeValueRollup[]>() : calculateTotals(t, gaugeKeys, startDate, endDate, new long[]{startDate.getTime(), endDate.getTime()}, rollupsComplete, true));
+		Map<Integer, List<Consumption>> consumption = calculateConsumption(t, cumulativeGauges, bucket, startDate, endDate);
+		
+		Statistics statistics = new Statistics();
+		MeterStatistics currentMeterStatistics = new MeterStatistics();
+		for(Object[] row : rows){
+			currentMeterStatistics = getMeterStatistics(statistics, currentMeterStatistics, (String) row[0]);
+			List<Consumption> gaugeConsumption = consumption.get(row[2]);
+			GaugeValueRollup[] total = totals.get(row[2]);
+			if(gaugeConsumption != null){
+				if(gaugeConsumption.isEmpty()){
+					LOGGER.debug("No readings for cumulative gauge, id: "+row[1]);
+					continue;
+				}
+				double totalConsumption = 0;
+				for(Consumption c : gaugeConsumption){
+					if(c.getValue() != null){
+						totalConsumption += c.getValue();
+					}
+				}
+				GaugeStatistics gaugeStatistics = new GaugeStatistics();
+				gaugeStatistics.setGaugeId((String) row[1]);
+				gaugeStatistics.setConsumption(gaugeConsumption);
+				gaugeStatistics.setTotalConsumption(totalConsumption);
+				currentMeterStatistics.addGaugeStatistics(gaugeStatistics);
+			}else if(total == null){
+				LOGGER.debug("No gauge statistics for gauge, id: "+row[1]);
+			}else{
+				GaugeStatistics gaugeStatistics = new GaugeStatistics();
+				gaugeStatistics.setGaugeId((String) row[1]);
+				gaugeStatistics.setAverage(total[0].getAverage());
+				double variance = total[0].getVariance();
+				gaugeStatistics.setVariance(variance);
+				gaugeStatistics.setStandardDeviation(Math.sqrt(variance));
+				gaugeStatistics.setMedian(total[0].getQuantile(QUANTILE_MEDIAN));
+				gaugeStatistics.setPercentile5(total[0].getQuantile(QUANTILE_PERCENTILE_5));
+				gaugeStatistics.setPercentile95(total[0].getQuantile(QUANTILE_PERCENTILE_95));
+				currentMeterStatistics.addGaugeStatistics(gaugeStatistics);
+			}
+		} // for meter-gauge id pairs
+		if(!MeterStatistics.isEmpty(currentMeterStatistics)){ // add only if there are statistics
+			statistics.addMeterStatistics(currentMeterStatistics);
+		}
+		LOGGER.debug("Statistics calculated with "+getQueryCount()+" queries.");
+		return (statistics.getMeterStatistics() == null ? null : statistics);
 	}
 	
 	/**
+	 * Calculates the count, average, minimum, maximum and sum of the values of the numeric gauges per time bucket. Buckets without values are omitted.
+	 * 
+	 * The buckets are calculated from the hourly and daily aggregates, only the values in the parts of the range not covered by whole hours are read from the gauge values.
+	 * The gauge values of all gauges are read if the aggregates of any of the gauges are not complete.
 	 * 
 	 * @param authenticatedUser
 	 * @param endDate
 	 * @param startDate
 	 * @param tagIdFilter
+	 * @param gaugeIdFilter
+	 * @param bucket
 	 * @return statistics or null if none available
+	 * @throws IllegalArgumentException on invalid range, see {@link TimeBucket#getBoundaries(Date, Date)}
+	 */
+	public Statistics calculateBucketStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIdFilter, List<String> gaugeIdFilter, TimeBucket bucket) throws IllegalArgumentException {
+		long[] boundaries = bucket.getBoundaries(startDate, endDate);
+		QUERY_COUNT.get()[0] = 0;
+		JdbcTemplate t = getJdbcTemplate();
+		List<Object[]> rows = selectStatisticsGauges(t, authenticatedUser, tagIdFilter, gaugeIdFilter);
+		if(rows == null){
+			return null;
+		}
+		
+		Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		boolean rollupsComplete = true;
+		List<Integer> gaugeKeys = new ArrayList<>(rows.size());
+		for(Object[] row : rows){
+			GaugeDetails details = catalog.get(row[1]);
+			if(details != null && details.getDataType() != DataType.STRING){
+				rollupsComplete &= details.isRollupsComplete();
+				gaugeKeys.add((Integer) row[2]);
+			}
+		}
+		if(gaugeKeys.isEmpty()){
+			LOGGER.debug("No numeric gauges.");
+			return null;
+		}
+		Map<Integer, GaugeValueRollup[]> totals = calculateTotals(t, gaugeKeys, startDate, endDate, boundaries, rollupsComplete, (bucket != TimeBucket.HOUR));
+		
+		Statistics statistics = new Statistics();
+		MeterStatistics currentMeterStatistics = new MeterStatistics();
+		for(Object[] row : rows){
+			currentMeterStatistics = getMeterStatistics(statistics, currentMeterStatistics, (String) row[0]);
+			GaugeValueRollup[] total = totals.get(row[2]);
+			if(total == null){
+				LOGGER.debug("No gauge statistics for gauge, id: "+row[1]);
+				continue;
+			}
+			List<BucketStatistics> buckets = new ArrayList<>();
+			for(int i=0; i<total.length; ++i){
+				GaugeValueRollup rollup = total[i];
+				if(rollup != null){
+					BucketStatistics bucketStatistics = new BucketStatistics();
+					bucketStatistics.setStart(new Date(boundaries[i]));
+					bucketStatistics.setCount(rollup.getCount());
+					bucketStatistics.setAverage(rollup.getAverage());
+					bucketStatistics.setMin(rollup.getMin());
+					bucketStatistics.setMax(rollup.getMax());
+					bucketStatistics.setSum(rollup.getSum());
+					buckets.add(bucketStatistics);
+				}
+			}
+			GaugeStatistics gaugeStatistics = new GaugeStatistics();
+			gaugeStatistics.setGaugeId((String) row[1]);
+			gaugeStatistics.setBuckets(buckets);
+			currentMeterStatistics.addGaugeStatistics(gaugeStatistics);
+		} // for meter-gauge id pairs
+		if(!MeterStatistics.isEmpty(currentMeterStatistics)){ // add only if there are statistics
+			statistics.addMeterStatistics(currentMeterStatistics);
+		}
+		LOGGER.debug("Bucket statistics calculated with "+getQueryCount()+" queries.");
+		return (statistics.getMeterStatistics() == null ? null : statistics);
+	}
+	
+	/**
+	 * 
+	 * @param t
+	 * @param authenticatedUser
+	 * @param tagIdFilter
+	 * @param gaugeIdFilter
+	 * @return tag id, gauge id and gauge key of each gauge of the user, ordered by tag id and gauge index, or null if none was found
 	 */
-	public Statistics calculateStatistics(UserIdentity authenticatedUser, Date endDate, Date startDate, List<String> tagIdFilter){
+	private List<Object[]> selectStatisticsGauges(JdbcTemplate t, UserIdentity authenticatedUser, List<String> tagIdFilter, List<String> gaugeIdFilter){
 		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_METERS);
 		sql.addSelectColumns(SQL_COLUMNS_STATISTICS);
 		sql.addJoin(new JoinClause("JOIN "+TABLE_GAUGES+" ON "+TABLE_METERS+"."+COLUMN_METER_ID+"="+TABLE_GAUGES+"."+COLUMN_METER_ID));
 		sql.addWhereClause(new AndClause(COLUMN_USER_ID, authenticatedUser.getUserId(), SQLType.LONG));
-		sql.addOrderBy(COLUMN_TAG_ID, OrderDirection.ASCENDING); // order by tag id, used in the following loop
 		if(tagIdFilter != null && !tagIdFilter.isEmpty()){
 			LOGGER.debug("Adding tag id filter...");
 			sql.addWhereClause(new AndClause(COLUMN_TAG_ID, tagIdFilter, SQLType.STRING));
 		}
+		if(gaugeIdFilter != null && !gaugeIdFilter.isEmpty()){
+			LOGGER.debug("Adding gauge id filter...");
+			sql.addWhereClause(new AndClause(COLUMN_GAUGE_ID, gaugeIdFilter, SQLType.STRING));
+		}
+		sql.addOrderBy(COLUMN_TAG_ID, OrderDirection.ASCENDING); // order by tag id, the meter statistics are collected in this order
+		sql.addOrderBy(COLUMN_GAUGE_INDEX, OrderDirection.ASCENDING);
 		
-		JdbcTemplate t = getJdbcTemplate();
-		List<Map<String, Object>> rows = t.queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes());
+		final List<Object[]> rows = new ArrayList<>();
+		query(t, sql.toSQLString(), sql.getValues(), sql.getValueTypes(), new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				rows.add(new Object[]{set.getString(1), set.getString(2), set.getInt(3)});
+			}
+		});
 		if(rows.isEmpty()){
 			LOGGER.debug("No gauges available.");
 			return null;
 		}
+		return rows;
+	}
+	
+	/**
+	 * The gauges must be processed in the order of tag id.
+	 * 
+	 * @param statistics
+	 * @param current the statistics of the current meter
+	 * @param tagId the tag id of the current gauge
+	 * @return the given current statistics, or new statistics if the tag id changed, in which case the current statistics are added to the given statistics if not empty
+	 */
+	private static MeterStatistics getMeterStatistics(Statistics statistics, MeterStatistics current, String tagId){
+		if(tagId.equals(current.getTagId())){
+			return current;
+		}
+		MeterStatistics meterStatistics = current;
+		if(!MeterStatistics.isEmpty(current)){ // add only if there are statistics
+			statistics.addMeterStatistics(current);
+			meterStatistics = new MeterStatistics(); // we can re-use the old one only if it was empty
+		}
+		meterStatistics.setTagId(tagId); // in any case, update the current tag id
+		return meterStatistics;
+	}
+	
+	/**
+	 * Calculates the consumption of the given cumulative gauges during the range. The results are cached per gauge, bucket and range.
+	 * 
+	 * The readings of at most {@value #MAX_GAUGES_PER_QUERY} gauges are retrieved with a single query, ordered by gauge and creation time.
+	 * For each gauge, the readings in the range and the closest readings before and after the range are retrieved, and streamed through a {@link ConsumptionCalculator}.
+	 * 
+	 * @param t
+	 * @param gauges gauge key - gauge id map
+	 * @param bucket
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @return gauge key - consumption map, with empty consumption for the gauges without readings covering the range
+	 */
+	private Map<Integer, List<Consumption>> calculateConsumption(JdbcTemplate t, Map<Integer, String> gauges, TimeBucket bucket, Date start, Date end){
+		Map<Integer, List<Consumption>> results = new HashMap<>(gauges.size());
+		if(gauges.isEmpty() || !start.before(end)){
+			for(Integer gaugeKey : gauges.keySet()){
+				results.put(gaugeKey, Collections.<Consumption>emptyList());
+			}
+			return results;
+		}
+		long generation = _consumptionCache.getGeneration();
+		List<Integer> gaugeKeys = new ArrayList<>();
+		for(Entry<Integer, String> e : gauges.entrySet()){
+			List<Consumption> cached = _consumptionCache.get(ConsumptionCache.createKey(e.getValue(), bucket, start.getTime(), end.getTime()));
+			if(cached == null){
+				gaugeKeys.add(e.getKey());
+			}else{
+				results.put(e.getKey(), cached);
+			}
+		}
 		
-		Statistics statistics = new Statistics();
-		Object[] args = {null, startDate, endDate};
-		MeterStatistics currentMeterStatistics = new MeterStatistics();
-		for(Map<String, Object> row : rows){
-			String tagId = (String) row.get(COLUMN_TAG_ID);
-			if(!tagId.equals(currentMeterStatistics.getTagId())){ // the rows are ordered by tag id, so they should progress in order
-				if(!MeterStatistics.isEmpty(currentMeterStatistics)){ // add only if there are statistics
-					statistics.addMeterStatistics(currentMeterStatistics);
-					currentMeterStatistics = new MeterStatistics(); // we can re-use the old one only if it was empty
+		int gaugeCount = gaugeKeys.size();
+		for(int index = 0; index < gaugeCount; index += MAX_GAUGES_PER_QUERY){
+			List<Integer> batch = gaugeKeys.subList(index, Math.min(index + MAX_GAUGES_PER_QUERY, gaugeCount));
+			final Map<Integer, ConsumptionCalculator> calculators = new HashMap<>(batch.size());
+			StringBuilder union = new StringBuilder("SELECT * FROM (");
+			Object[] values = ArrayUtils.EMPTY_OBJECT_ARRAY;
+			int[] types = ArrayUtils.EMPTY_INT_ARRAY;
+			for(Iterator<Integer> iter = batch.iterator(); iter.hasNext();){
+				Integer gaugeKey = iter.next();
+				calculators.put(gaugeKey, new ConsumptionCalculator(bucket, start, end));
+				union.append('(');
+				union.append(SQL_SELECT_CONSUMPTION_READINGS);
+				union.append(')');
+				if(iter.hasNext()){
+					union.append(" UNION ALL ");
 				}
-				currentMeterStatistics.setTagId(tagId);	// in any case, update the current tag id
+				values = ArrayUtils.addAll(values, new Object[]{gaugeKey, gaugeKey, start, start, gaugeKey, end, end});
+				types = ArrayUtils.addAll(types, SQL_SELECT_CONSUMPTION_READINGS_SQL_TYPES);
 			}
-			
-			String gaugeId = (String) row.get(COLUMN_GAUGE_ID);
-			args[0] = gaugeId;
-			Map<String, Object> sRow = t.queryForMap(SQL_CALCULATE_STATISTICS, args, SQL_CALCULATE_STATISTICS_SQL_TYPES);
-			GaugeStatistics gaugeStatistics = extractGaugeStatistics(sRow);
-			if(gaugeStatistics == null){
-				LOGGER.debug("No gauge statistics for gauge, id: "+gaugeId);
-			}else{
-				gaugeStatistics.setGaugeId(gaugeId);
-				currentMeterStatistics.addGaugeStatistics(gaugeStatistics);
-			}	
-		} // for meter-gauge id pairs
-		if(!MeterStatistics.isEmpty(currentMeterStatistics)){ // add only if there are statistics
-			statistics.addMeterStatistics(currentMeterStatistics);
+			union.append(") AS "+SQL_ALIAS_GAUGE_VALUES+" ORDER BY "+COLUMN_GAUGE_KEY+", "+COLUMN_ROW_CREATED);
+			query(t, union.toString(), values, types, new RowCallbackHandler() {
+				@Override
+				public void processRow(ResultSet set) throws SQLException {
+					calculators.get(set.getInt(1)).add(set.getDouble(2), new Date(set.getTimestamp(3).getTime()));
+				}
+			});
+			for(Entry<Integer, ConsumptionCalculator> e : calculators.entrySet()){
+				List<Consumption> consumption = e.getValue().getConsumption();
+				String gaugeId = gauges.get(e.getKey());
+				_consumptionCache.put(ConsumptionCache.createKey(gaugeId, bucket, start.getTime(), end.getTime()), gaugeId, consumption, generation);
+				results.put(e.getKey(), consumption);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Calculates the aggregates of the numeric values of the given gauges per bucket, for the values created after the start and before the end of the range.
+	 * 
+	 * If the aggregates are used, whole days of the range are merged from the daily aggregates, and whole hours at the edges of the days from the hourly aggregates.
+	 * Only the values in the remaining parts at the edges of the range, at most an hour at each edge, are read from the gauge values. Each value and aggregate
+	 * is merged to the bucket containing its creation time or period start, so the bucket boundaries must be aligned to the periods of the used aggregates
+	 * (except the start and the end of the range).
+	 * 
+	 * @param t
+	 * @param gaugeKeys
+	 * @param after the start of the range (exclusive)
+	 * @param before the end of the range (exclusive)
+	 * @param boundaries the boundaries of the buckets, see {@link TimeBucket#getBoundaries(Date, Date)}
+	 * @param useRollups if true, the aggregates are used, the aggregates of all given gauges must be complete
+	 * @param useDailyRollups if true, the daily aggregates are used in addition to the hourly aggregates
+	 * @return gauge key - bucket aggregates map, the map contains only the gauges with values in the range, and the aggregates of buckets without values are null
+	 */
+	private Map<Integer, GaugeValueRollup[]> calculateTotals(JdbcTemplate t, List<Integer> gaugeKeys, Date after, Date before, final long[] boundaries, boolean useRollups, boolean useDailyRollups){
+		final Map<Integer, GaugeValueRollup[]> totals = new HashMap<>(gaugeKeys.size());
+		RowCallbackHandler handler = new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				Date created = new Date(set.getTimestamp(3).getTime());
+				GaugeValueRollup total = getTotal(totals, set.getInt(1), boundaries, created.getTime());
+				if(total != null){
+					total.add(set.getDouble(2), created);
+				}
+			}
+		};
+		
+		SQLSelectBuilder sql = new SQLSelectBuilder(TABLE_GAUGE_VALUES);
+		sql.addSelectColumns(SQL_COLUMNS_STATISTICS_VALUES);
+		sql.addWhereClause(new AndClause(COLUMN_GAUGE_KEY, gaugeKeys, SQLType.INTEGER));
+		Date hourFrom = Period.HOUR.getNext(Period.HOUR.getStart(after)); // the first hour starting after the start of the range
+		Date hourTo = Period.HOUR.getStart(before);
+		if(!useRollups || !hourFrom.before(hourTo)){
+			sql.addWhereClause(new RawClause(COLUMN_VALUE+" IS NOT NULL AND "+COLUMN_ROW_CREATED+">? AND "+COLUMN_ROW_CREATED+"<?", new Object[]{after, before}, new SQLType[]{SQLType.TIMESTAMP, SQLType.TIMESTAMP}, ClauseType.AND));
+			query(t, sql.toSQLString(), sql.getValues(), sql.getValueTypes(), handler);
+			return totals;
 		}
 		
-		return statistics;
+		sql.addWhereClause(new RawClause(COLUMN_VALUE+" IS NOT NULL AND (("+COLUMN_ROW_CREATED+">? AND "+COLUMN_ROW_CREATED+"<?) OR ("+COLUMN_ROW_CREATED+">=? AND "+COLUMN_ROW_CREATED+"<?))", new Object[]{after, hourFrom, hourTo, before}, new SQLType[]{SQLType.TIMESTAMP, SQLType.TIMESTAMP, SQLType.TIMESTAMP, SQLType.TIMESTAMP}, ClauseType.AND));
+		query(t, sql.toSQLString(), sql.getValues(), sql.getValueTypes(), handler);
+		
+		Date dayFrom = Period.DAY.getCeiling(hourFrom);
+		Date dayTo = (useDailyRollups ? Period.DAY.getStart(hourTo) : dayFrom);
+		String range = "("+COLUMN_PERIOD+"=? AND "+COLUMN_PERIOD_START+">=? AND "+COLUMN_PERIOD_START+"<?)";
+		SQLType[] rangeTypes = {SQLType.INTEGER, SQLType.TIMESTAMP, SQLType.TIMESTAMP};
+		RawClause periods = null;
+		if(dayFrom.before(dayTo)){
+			periods = new RawClause("("+range+" OR "+range+" OR "+range+")", new Object[]{Period.HOUR.toInt(), hourFrom, dayFrom, Period.DAY.toInt(), dayFrom, dayTo, Period.HOUR.toInt(), dayTo, hourTo}, ArrayUtils.addAll(ArrayUtils.addAll(rangeTypes, rangeTypes), rangeTypes), ClauseType.AND);
+		}else{
+			periods = new RawClause(range, new Object[]{Period.HOUR.toInt(), hourFrom, hourTo}, rangeTypes, ClauseType.AND);
+		}
+		sql = new SQLSelectBuilder(TABLE_GAUGE_VALUE_ROLLUPS);
+		sql.addSelectColumns(SQL_COLUMNS_GET_ROLLUPS);
+		sql.addWhereClause(new AndClause(COLUMN_GAUGE_KEY, gaugeKeys, SQLType.INTEGER));
+		sql.addWhereClause(periods);
+		query(t, sql.toSQLString(), sql.getValues(), sql.getValueTypes(), new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet set) throws SQLException {
+				GaugeValueRollup rollup = extractRollup(set);
+				GaugeValueRollup total = getTotal(totals, set.getInt(1), boundaries, rollup.getPeriodStart().getTime());
+				if(total != null){
+					total.merge(rollup);
+				}
+			}
+		});
+		return totals;
 	}
 	
 	/**
 	 * 
-	 * @param row
-	 * @return statistics extracted from the given row map
+	 * @param totals
+	 * @param gaugeKey
+	 * @param boundaries
+	 * @param time
+	 * @return the aggregate of the bucket containing the given time from the given map, a new aggregate is added to the map if the bucket has none, or null if the time is outside the buckets
 	 */
-	private GaugeStatistics extractGaugeStatistics(Map<String, Object> row){
-		GaugeStatistics gaugeStatistics = new GaugeStatistics();
-		for(Entry<String, Object> e : row.entrySet()){
-			String column = e.getKey();
-			switch(column){
-				case COLUMN_AVG:
-					gaugeStatistics.setAverage((Double) e.getValue());
-					break;
-				case COLUMN_VAR_POP:
-					gaugeStatistics.setVariance((Double) e.getValue());
-					break;
-				case COLUMN_STDDEV_POP:
-					gaugeStatistics.setStandardDeviation((Double) e.getValue());
-					break;
-				default:
-					if(checkCountColumn(column, e.getValue()) < 1){
-						LOGGER.warn("No statistics.");
-						return null;
-					}
-					break;
-			} // switch
-		} // for statistics
-		return gaugeStatistics;
+	private static GaugeValueRollup getTotal(Map<Integer, GaugeValueRollup[]> totals, int gaugeKey, long[] boundaries, long time){
+		int index = TimeBucket.getBucketIndex(boundaries, time);
+		if(index < 0){
+			return null;
+		}
+		GaugeValueRollup[] buckets = totals.get(gaugeKey);
+		if(buckets == null){
+			buckets = new GaugeValueRollup[boundaries.length - 1];
+			totals.put(gaugeKey, buckets);
+		}
+		if(buckets[index] == null){
+			buckets[index] = new GaugeValueRollup(new Date(boundaries[index]));
+		}
+		return buckets[index];
 	}
 
 	/**
@@ -765,68 +2134,150 @@ public class UimahalliDAO extends SQLDAO {
 		}
 		sql.addWhereClause(new RawClause(COLUMN_TAG_ID+" IN (SELECT "+COLUMN_TAG_ID+" FROM "+TABLE_METERS+" WHERE "+COLUMN_USER_ID+"=?)", new Object[]{authenticatedUser.getUserId()}, new SQLType[]{SQLType.LONG}, ClauseType.AND));
 
+		sql.addSelectColumns(SQL_COLUMNS_GET_ALERTS);
 		sql.addJoin(new JoinClause("LEFT JOIN "+TABLE_GAUGE_VALUES+" ON "+TABLE_ALERTS+"."+COLUMN_GAUGE_VALUE_ID+"="+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID));
-		List<Map<String, Object>> rows = getJdbcTemplate().queryForList(sql.toSQLString(), sql.getValues(), sql.getValueTypes());
+		sql.addJoin(new JoinClause(SQL_JOIN_GAUGE_VALUE_TEXTS));
+		sql.addJoin(new JoinClause("LEFT JOIN "+TABLE_GAUGES+" ON "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_KEY+"="+TABLE_GAUGES+"."+COLUMN_GAUGE_KEY));
+		final Map<String, GaugeDetails> catalog = getGaugeCatalog();
+		List<Alert> rows = getJdbcTemplate().query(sql.toSQLString(), sql.getValues(), sql.getValueTypes(), new RowMapper<Alert>() {
+			@Override
+			public Alert mapRow(ResultSet set, int rowNum) throws SQLException {
+				return extractAlert(set, catalog);
+			}
+		});
 		if(rows.isEmpty()){
 			LOGGER.debug("No alerts.");
 			return null;
 		}
 		
 		Alerts alerts = new Alerts();
-		for(Map<String, Object> row : rows){
-			alerts.addAlert(extractAlert(row));
+		for(Alert alert : rows){
+			alerts.addAlert(alert);
 		}
 		return alerts;
 	}
 	
 	/**
 	 * 
-	 * @param row
-	 * @return alert extracted from the given row map
+	 * @param set
+	 * @param catalog used for resolving the data type of the alert's gauge
+	 * @return alert extracted from the current row of the given result set, the columns must be in the order of {@link #SQL_COLUMNS_GET_ALERTS}
+	 * @throws SQLException
 	 */
-	private Alert extractAlert(Map<String, Object> row){
+	private static Alert extractAlert(ResultSet set, Map<String, GaugeDetails> catalog) throws SQLException {
 		Alert alert = new Alert();
+		alert.setStatus(AlertStatus.fromInt(set.getInt(2)));
+		alert.setType(AlertType.fromInt(set.getInt(3)));
+		alert.setTagId(set.getString(5));
+		alert.setGaugeId(set.getString(6));
+		
 		GaugeValue value = new GaugeValue();
-		for(Entry<String, Object> e : row.entrySet()){
-			switch(e.getKey()){
-				case COLUMN_ALERT_ID: // ignore
-					break;
-				case COLUMN_STATUS:
-					alert.setStatus(AlertStatus.fromInt((int) e.getValue()));
-					break;
-				case COLUMN_TYPE:
-					alert.setType(AlertType.fromInt((int) e.getValue()));
-					break;
-				case COLUMN_GAUGE_VALUE_ID:
-					value.setRowId((Long) e.getValue());
-					break;
-				case COLUMN_VALUE:
-					value.setValue((String) e.getValue());
-					break;
-				case COLUMN_ROW_CREATED:
-					value.setUpdatedTimestamp((Date) e.getValue());
-					break;
-				case COLUMN_TAG_ID:
-					alert.setTagId((String) e.getValue());
-					break;
-				case COLUMN_GAUGE_ID:
-					alert.setGaugeId((String) e.getValue());
-					break;
-				default:
-					LOGGER.warn("Ignored unknown column: "+e.getKey());
-					break;
-			}
+		value.setRowId(set.getLong(4));
+		Timestamp created = set.getTimestamp(9);
+		if(created != null){ // the value may have been removed
+			value.setUpdatedTimestamp(new Date(created.getTime()));
 		}
+		GaugeDetails details = catalog.get(alert.getGaugeId());
+		setValue(value, getDouble(set, 7), set.getString(8), (details == null ? null : details.getDataType()));
 		alert.setValue(value);
 		return alert;
 	}
 	
+	/**
+	 * If the row id of the alert's value is not known, the value is resolved by the gauge id and the value's timestamp.
+	 * 
+	 * For alerts of new values, use {@link #addMeasurements(Meters, List)}, which adds the values and the alerts in the same transaction.
+	 * 
+	 * @param alert
+	 * @throws IllegalArgumentException if the gauge or the value of the alert does not exist
+	 */
+	public void addAlert(Alert alert) throws IllegalArgumentException {
+		insertAlert(getJdbcTemplate(), getGaugeCatalog(), alert);
+	}
+	
 	/**
 	 * 
+	 * @param t
+	 * @param catalog
 	 * @param alert
+	 * @throws IllegalArgumentException if the gauge or the value of the alert does not exist
+	 */
+	private static void insertAlert(JdbcTemplate t, Map<String, GaugeDetails> catalog, Alert alert) throws IllegalArgumentException {
+		GaugeValue value = alert.getValue();
+		Long rowId = value.getRowId();
+		if(rowId == null){
+			GaugeDetails details = catalog.get(alert.getGaugeId());
+			if(details == null){
+				throw new IllegalArgumentException("Non-existing gauge for alert, gauge id: "+alert.getGaugeId());
+			}
+			Date created = toDatabasePrecision(value.getUpdatedTimestamp());
+			if(t.update(SQL_INSERT_ALERT_BY_TIMESTAMP, new Object[]{alert.getStatus().toInt(), alert.getType().toInt(), alert.getTagId(), details.getGaugeKey(), created}, SQL_INSERT_ALERT_BY_TIMESTAMP_SQL_TYPES) < 1){
+				throw new IllegalArgumentException("No gauge value found for alert, gauge id: "+alert.getGaugeId()+", created: "+created);
+			}
+		}else{
+			t.update(SQL_INSERT_ALERT, new Object[]{alert.getStatus().toInt(), alert.getType().toInt(), rowId, alert.getTagId()}, SQL_INSERT_ALERT_SQL_TYPES);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param date
+	 * @return the date truncated to whole seconds, the precision of the creation times of the gauge values in the database
+	 */
+	static Date toDatabasePrecision(Date date){
+		long time = date.getTime();
+		long millis = ((time % 1000) + 1000) % 1000;
+		return (millis == 0 ? date : new Date(time - millis));
+	}
+	
+	/**
+	 * Helper method for limiting the gauge values by creation time. Combined with the gauge key filter, the unique (gauge_key, row_created) index is used for a range scan.
+	 * 
+	 * @param sql
+	 * @param endDate if not null, only rows created at or before the date are included
+	 * @param startDate if not null, only rows created at or after the date are included
+	 */
+	private void addDateFilter(SQLSelectBuilder sql, Date endDate, Date startDate){
+		if(startDate != null){
+			sql.addWhereClause(new RawClause(COLUMN_ROW_CREATED+">=?", new Object[]{startDate}, new SQLType[]{SQLType.TIMESTAMP}, ClauseType.AND));
+		}
+		if(endDate != null){
+			sql.addWhereClause(new RawClause(COLUMN_ROW_CREATED+"<=?", new Object[]{endDate}, new SQLType[]{SQLType.TIMESTAMP}, ClauseType.AND));
+		}
+	}
+	
+	/**
+	 * Helper method for continuing after the position of the given cursor. Combined with the gauge key filter, the unique (gauge_key, row_created) index is used for a range scan.
+	 * 
+	 * @param sql
+	 * @param cursor
+	 * @param direction the order of the values
+	 */
+	private void addSeekFilter(SQLSelectBuilder sql, GaugeValueCursor cursor, OrderDirection direction){
+		String comparison = (direction == OrderDirection.DESCENDING ? "<" : ">");
+		Date rowCreated = cursor.getRowCreated();
+		sql.addWhereClause(new RawClause("("+COLUMN_ROW_CREATED+comparison+"? OR ("+COLUMN_ROW_CREATED+"=? AND "+TABLE_GAUGE_VALUES+"."+COLUMN_GAUGE_VALUE_ID+comparison+"?))", new Object[]{rowCreated, rowCreated, cursor.getGaugeValueId()}, new SQLType[]{SQLType.TIMESTAMP, SQLType.TIMESTAMP, SQLType.LONG}, ClauseType.AND));
+	}
+	
+	/**
+	 * 
+	 * @param sortOptions if null or empty, the default sort options are used
+	 * @return the order direction for the date element or null if ordering by date was not requested
 	 */
-	public void addAlert(Alert alert){
-		getJdbcTemplate().update(SQL_INSERT_ALERT, new Object[]{alert.getStatus().toInt(), alert.getType().toInt(), alert.getValue().getRowId(), alert.getTagId()}, SQL_INSERT_ALERT_SQL_TYPES);
+	static OrderDirection getDateOrderDirection(SortOptions sortOptions){
+		if(sortOptions == null || !sortOptions.hasValues()){
+			sortOptions = DEFAULT_SORT_OPTIONS;
+		}
+		
+		Set<Option> so = sortOptions.getSortOptions(null);
+		if(so != null){
+			for(Option o : so){
+				if(service.tut.pori.kiiau.datatypes.Definitions.JSON_NAME_DATE.equals(o.getElementName())){
+					return o.getOrderDirection();
+				}
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import core.tut.pori.properties.SystemProperty;
+
+/**
+ * Uimahalli service properties, read from the system properties file.
+ * 
+ */
+public class UimahalliProperties extends SystemProperty {
+	/** the default name of the measurement queue spill file, located in the home directory of the user running the service */
+	public static final String DEFAULT_QUEUE_SPILL_FILE_NAME = "uimahalli-measurement-queue.spill";
+	private static final Logger LOGGER = Logger.getLogger(UimahalliProperties.class);
+	private static final String PROPERTY_SERVICE_TUT_PORI_KIIAU = "service.tut.pori.kiiau";
+	private static final String PROPERTY_QUEUE_SPILL_FILE = PROPERTY_SERVICE_TUT_PORI_KIIAU+".queue_spill_file";
+	private File _queueSpillFile = null;
+
+	@Override
+	public void initialize(Properties properties) throws IllegalArgumentException {
+		String spillFile = properties.getProperty(PROPERTY_QUEUE_SPILL_FILE);
+		if(StringUtils.isBlank(spillFile)){
+			_queueSpillFile = new File(System.getProperty("user.home"), DEFAULT_QUEUE_SPILL_FILE_NAME);
+			LOGGER.warn(PROPERTY_QUEUE_SPILL_FILE+" is not set, using: "+_queueSpillFile.getAbsolutePath());
+		}else{
+			_queueSpillFile = new File(spillFile.trim());
+		}
+	}
+
+	/**
+	 * @return the spill file of the measurement queue
+	 */
+	public File getQueueSpillFile() {
+		return _queueSpillFile;
+	}
+}
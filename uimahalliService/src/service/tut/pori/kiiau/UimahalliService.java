@@ -15,6 +15,8 @@
  */
 package service.tut.pori.kiiau;
 
+import org.apache.commons.lang3.BooleanUtils;
+
 import service.tut.pori.kiiau.datatypes.Alert.AlertStatus;
 import service.tut.pori.kiiau.datatypes.Gauge;
 import service.tut.pori.kiiau.datatypes.Meter;
@@ -23,12 +25,15 @@ import service.tut.pori.kiiau.datatypes.Meters;
 import com.google.gson.Gson;
 
 import core.tut.pori.http.JSONResponse;
+import core.tut.pori.http.Response;
 import core.tut.pori.http.annotations.HTTPAuthenticationParameter;
 import core.tut.pori.http.annotations.HTTPMethodParameter;
 import core.tut.pori.http.annotations.HTTPService;
 import core.tut.pori.http.annotations.HTTPServiceMethod;
 import core.tut.pori.http.parameters.AuthenticationParameter;
+import core.tut.pori.http.parameters.BooleanParameter;
 import core.tut.pori.http.parameters.DataGroups;
+import core.tut.pori.http.parameters.IntegerParameter;
 import core.tut.pori.http.parameters.Limits;
 import core.tut.pori.http.parameters.LongParameter;
 import core.tut.pori.http.parameters.SortOptions;
@@ -38,11 +43,18 @@ import core.tut.pori.utils.StringUtils;
 
 /**
  * Service definitions for uimahalli service
- *
+ * 
  */
 @HTTPService(name=Definitions.SERVICE_UIMAHALLI)
 public class UimahalliService {
 	private Gson _parser = JSONFormatter.createGsonSerializer();
+	
+	/**
+	 * Initializes the service, see {@link UimahalliCore#initialize()}
+	 */
+	public UimahalliService(){
+		UimahalliCore.initialize();
+	}
 
 	/**
 	 * 
@@ -51,36 +63,103 @@ public class UimahalliService {
 	 * @param limits 
 	 * @param sortOptions 
 	 * @param tagIds
+	 * @param endDate optional end of the time range (inclusive) for the returned gauge values
+	 * @param startDate optional start of the time range (inclusive) for the returned gauge values
+	 * @param maxPoints optional maximum amount of values returned per gauge, if a gauge has more values, the values are downsampled
+	 * @param stream if true, all gauges and gauge values are written directly from the database to the response, data groups are ignored and max points and cursors cannot be used
+	 * @param cursors optional continuation tokens returned with the previous page, if given, the next page of values is returned for the gauges of the tokens
+	 * @param since optional watermark returned with the previous response, if given, only the values inserted after the previous response are returned. Use 0 for the initial synchronization.
+	 * @param encoding optional encoding of the gauge values, one of {@value service.tut.pori.kiiau.Definitions#ENCODING_OBJECTS} (default), {@value service.tut.pori.kiiau.Definitions#ENCODING_COLUMNAR} or {@value service.tut.pori.kiiau.Definitions#ENCODING_COLUMNAR_DELTA}
 	 * @return response
 	 */
 	@HTTPServiceMethod(name = Definitions.METHOD_GET_MEASUREMENTS, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_GET})
-	public JSONResponse getMeasurements(
+	public Response getMeasurements(
 			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
 			@HTTPMethodParameter(name=DataGroups.PARAMETER_DEFAULT_NAME, required=false) DataGroups dataGroups,
 			@HTTPMethodParameter(name=Limits.PARAMETER_DEFAULT_NAME, required=false) Limits limits,
 			@HTTPMethodParameter(name = Definitions.PARAMETER_SORT, required = false) SortOptions sortOptions,
-			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagIds
+			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagIds,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_END_DATE, required=false) StringParameter endDate,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_START_DATE, required=false) StringParameter startDate,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_MAX_POINTS, required=false) IntegerParameter maxPoints,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_STREAM, required=false) BooleanParameter stream,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_CURSOR, required=false) StringParameter cursors,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_SINCE, required=false) StringParameter since,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_ENCODING, required=false) StringParameter encoding
 			)
 	{
-		return new JSONResponse(UimahalliCore.getMeasurements(authenticatedUser.getUserIdentity(), dataGroups, limits, sortOptions, tagIds.getValues()));
+		if(BooleanUtils.isTrue(stream.getValue())){
+			if(maxPoints.getValue() != null){
+				throw new IllegalArgumentException(Definitions.PARAMETER_MAX_POINTS+" cannot be used with "+Definitions.PARAMETER_STREAM);
+			}
+			if(cursors.hasValues() || since.hasValues() || encoding.hasValues()){
+				throw new IllegalArgumentException(Definitions.PARAMETER_CURSOR+", "+Definitions.PARAMETER_SINCE+" or "+Definitions.PARAMETER_ENCODING+" cannot be used with "+Definitions.PARAMETER_STREAM);
+			}
+			return UimahalliCore.getMeasurementStream(authenticatedUser.getUserIdentity(), limits, sortOptions, tagIds.getValues(), StringUtils.ISOStringToDate(endDate.getValue()), StringUtils.ISOStringToDate(startDate.getValue()));
+		}
+		return new JSONResponse(UimahalliCore.getMeasurements(authenticatedUser.getUserIdentity(), dataGroups, limits, sortOptions, tagIds.getValues(), StringUtils.ISOStringToDate(endDate.getValue()), StringUtils.ISOStringToDate(startDate.getValue()), maxPoints.getValue(), cursors.getValues(), since.getValue(), encoding.getValue()));
 	}
 	
 	/**
 	 * 
 	 * @param authenticatedUser
 	 * @param data 
+	 * @param async if true, the measurements are validated and queued, and the response contains the batch id of the queued measurements
+	 * @param stream if true, the measurements are parsed, validated and stored incrementally, in chunks, without creating the full object graph. The data is still received as a whole. Takes precedence over async.
 	 * @return response
 	 */
 	@HTTPServiceMethod(name = Definitions.METHOD_POST_MEASUREMENTS, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_POST})
 	public JSONResponse postMeasurements (
 			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
-			@HTTPMethodParameter(name=Definitions.PARAMETER_VALUE_CONTENT) StringParameter data
+			@HTTPMethodParameter(name=Definitions.PARAMETER_VALUE_CONTENT) StringParameter data,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_ASYNC, required=false) BooleanParameter async,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_STREAM, required=false) BooleanParameter stream
 			)
 	{
+		if(BooleanUtils.isTrue(stream.getValue())){
+			UimahalliCore.streamMeasurements(authenticatedUser.getUserIdentity(), data.getValue());
+			return null; // return null for default json response
+		}
+		if(BooleanUtils.isTrue(async.getValue())){
+			return new JSONResponse(UimahalliCore.queueMeasurements(authenticatedUser.getUserIdentity(), _parser.fromJson(data.getValue(), Meters.class)));
+		}
 		UimahalliCore.postMeasurements(authenticatedUser.getUserIdentity(), _parser.fromJson(data.getValue(), Meters.class));
 		return null; // return null for default json response
 	}
 	
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param batchId
+	 * @return response
+	 */
+	@HTTPServiceMethod(name = Definitions.METHOD_GET_MEASUREMENT_BATCH, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_GET})
+	public JSONResponse getMeasurementBatch (
+			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_BATCH_ID) StringParameter batchId
+			)
+	{
+		return new JSONResponse(UimahalliCore.getMeasurementBatch(authenticatedUser.getUserIdentity(), batchId.getValue()));
+	}
+	
+	/**
+	 * Returns the meters and gauges with only the latest value of each gauge.
+	 * 
+	 * @param authenticatedUser
+	 * @param tagIds optional tag id filter
+	 * @param locationIds optional location id filter
+	 * @return response
+	 */
+	@HTTPServiceMethod(name = Definitions.METHOD_GET_LATEST_MEASUREMENTS, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_GET})
+	public JSONResponse getLatestMeasurements (
+			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagIds,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_LOCATION_ID, required=false) LongParameter locationIds
+			)
+	{
+		return new JSONResponse(UimahalliCore.getLatestMeasurements(authenticatedUser.getUserIdentity(), tagIds.getValues(), locationIds.getValues()));
+	}
+	
 	/**
 	 * 
 	 * @param authenticatedUser
@@ -181,6 +260,7 @@ public class UimahalliService {
 	 * @param endDate
 	 * @param startDate
 	 * @param tagId
+	 * @param bucket optional time bucket for the consumption of cumulative gauges, one of {@value service.tut.pori.kiiau.Definitions#BUCKET_HOUR}, {@value service.tut.pori.kiiau.Definitions#BUCKET_DAY} (default), {@value service.tut.pori.kiiau.Definitions#BUCKET_WEEK} or {@value service.tut.pori.kiiau.Definitions#BUCKET_MONTH}
 	 * @return response
 	 */
 	@HTTPServiceMethod(name = Definitions.METHOD_DATA_STATISTICS, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_GET})
@@ -188,10 +268,34 @@ public class UimahalliService {
 			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
 			@HTTPMethodParameter(name=Definitions.PARAMETER_END_DATE, required=false) StringParameter endDate,
 			@HTTPMethodParameter(name=Definitions.PARAMETER_START_DATE) StringParameter startDate,
-			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagId
+			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagId,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_BUCKET, required=false) StringParameter bucket
+			)
+	{
+		return new JSONResponse(UimahalliCore.getStatistics(authenticatedUser.getUserIdentity(), StringUtils.ISOStringToDate(endDate.getValue()), StringUtils.ISOStringToDate(startDate.getValue()), tagId.getValues(), bucket.getValue()));
+	}
+	
+	/**
+	 * 
+	 * @param authenticatedUser
+	 * @param endDate
+	 * @param startDate
+	 * @param tagId
+	 * @param gaugeId
+	 * @param bucket optional time bucket, one of {@value service.tut.pori.kiiau.Definitions#BUCKET_HOUR}, {@value service.tut.pori.kiiau.Definitions#BUCKET_DAY} (default), {@value service.tut.pori.kiiau.Definitions#BUCKET_WEEK} or {@value service.tut.pori.kiiau.Definitions#BUCKET_MONTH}
+	 * @return response
+	 */
+	@HTTPServiceMethod(name = Definitions.METHOD_BUCKET_STATISTICS, acceptedMethods = {core.tut.pori.http.Definitions.METHOD_GET})
+	public JSONResponse bucketStatistics (
+			@HTTPAuthenticationParameter(showLoginPrompt=true) AuthenticationParameter authenticatedUser,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_END_DATE, required=false) StringParameter endDate,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_START_DATE) StringParameter startDate,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_TAG_ID, required=false) StringParameter tagId,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_GAUGE_ID, required=false) StringParameter gaugeId,
+			@HTTPMethodParameter(name=Definitions.PARAMETER_BUCKET, required=false) StringParameter bucket
 			)
 	{
-		return new JSONResponse(UimahalliCore.getStatistics(authenticatedUser.getUserIdentity(), StringUtils.ISOStringToDate(endDate.getValue()), StringUtils.ISOStringToDate(startDate.getValue()), tagId.getValues()));
+		return new JSONResponse(UimahalliCore.getBucketStatistics(authenticatedUser.getUserIdentity(), StringUtils.ISOStringToDate(endDate.getValue()), StringUtils.ISOStringToDate(startDate.getValue()), tagId.getValues(), gaugeId.getValues(), bucket.getValue()));
 	}
 	
 	/**
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import java.util.Date;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Statistics of the values of a gauge during a single time bucket.
+ * 
+ */
+@SuppressWarnings("deprecation")
+public class BucketStatistics {
+	@SerializedName(value=Definitions.JSON_NAME_START)
+	private Date _start = null;
+	@SerializedName(value=Definitions.JSON_NAME_COUNT)
+	private Long _count = null;
+	@SerializedName(value=Definitions.JSON_NAME_AVERAGE)
+	private Double _average = null;
+	@SerializedName(value=Definitions.JSON_NAME_MIN)
+	private Double _min = null;
+	@SerializedName(value=Definitions.JSON_NAME_MAX)
+	private Double _max = null;
+	@SerializedName(value=Definitions.JSON_NAME_SUM)
+	private Double _sum = null;
+
+	/**
+	 * @return the start of the bucket
+	 */
+	public Date getStart() {
+		return _start;
+	}
+
+	/**
+	 * @param start the start of the bucket to set
+	 */
+	public void setStart(Date start) {
+		_start = start;
+	}
+
+	/**
+	 * @return the amount of values
+	 */
+	public Long getCount() {
+		return _count;
+	}
+
+	/**
+	 * @param count the count to set
+	 */
+	public void setCount(Long count) {
+		_count = count;
+	}
+
+	/**
+	 * @return the average
+	 */
+	public Double getAverage() {
+		return _average;
+	}
+
+	/**
+	 * @param average the average to set
+	 */
+	public void setAverage(Double average) {
+		_average = average;
+	}
+
+	/**
+	 * @return the smallest value
+	 */
+	public Double getMin() {
+		return _min;
+	}
+
+	/**
+	 * @param min the min to set
+	 */
+	public void setMin(Double min) {
+		_min = min;
+	}
+
+	/**
+	 * @return the largest value
+	 */
+	public Double getMax() {
+		return _max;
+	}
+
+	/**
+	 * @param max the max to set
+	 */
+	public void setMax(Double max) {
+		_max = max;
+	}
+
+	/**
+	 * @return the sum of the values
+	 */
+	public Double getSum() {
+		return _sum;
+	}
+
+	/**
+	 * @param sum the sum to set
+	 */
+	public void setSum(Double sum) {
+		_sum = sum;
+	}
+}
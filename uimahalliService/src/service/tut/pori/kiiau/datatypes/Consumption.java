@@ -0,0 +1,77 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import java.util.Date;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Consumption of a cumulative gauge during a single time bucket.
+ * 
+ */
+@SuppressWarnings("deprecation")
+public class Consumption {
+	@SerializedName(value=Definitions.JSON_NAME_START)
+	private Date _start = null;
+	@SerializedName(value=Definitions.JSON_NAME_VALUE)
+	private Double _value = null;
+	
+	/**
+	 * for serialization
+	 */
+	public Consumption(){
+		// nothing needed
+	}
+	
+	/**
+	 * 
+	 * @param start
+	 * @param value
+	 */
+	public Consumption(Date start, Double value){
+		_start = start;
+		_value = value;
+	}
+
+	/**
+	 * @return the start of the bucket
+	 */
+	public Date getStart() {
+		return _start;
+	}
+
+	/**
+	 * @param start the start of the bucket to set
+	 */
+	public void setStart(Date start) {
+		_start = start;
+	}
+
+	/**
+	 * @return the consumption during the bucket or null if there were no readings covering the bucket
+	 */
+	public Double getValue() {
+		return _value;
+	}
+
+	/**
+	 * @param value the consumption to set
+	 */
+	public void setValue(Double value) {
+		_value = value;
+	}
+}
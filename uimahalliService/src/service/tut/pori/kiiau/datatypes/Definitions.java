@@ -25,6 +25,12 @@ public final class Definitions {
 	/** JSON name/object declaration */
 	public static final String JSON_NAME_CUMULATIVE = "cumulative";
 	/** JSON name/object declaration */
+	public static final String JSON_NAME_COLUMNS = "columns";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_CURSOR = "cursor";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_DELTA = "delta";
+	/** JSON name/object declaration */
 	public static final String JSON_NAME_OPTIONS = "option";
 	/** JSON name/object declaration */
 	public static final String JSON_NAME_MAX = "max";
@@ -79,7 +85,37 @@ public final class Definitions {
 	/** JSON name/object declaration */
 	public static final String JSON_NAME_VARIANCE = "variance";
 	/** JSON name/object declaration */
+	public static final String JSON_NAME_BUCKETS = "buckets";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_CONSUMPTION = "consumption";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_COUNT = "count";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_SUM = "sum";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_TOTAL_CONSUMPTION = "totalConsumption";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_START = "start";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_MEDIAN = "median";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_PERCENTILE_5 = "percentile5";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_PERCENTILE_95 = "percentile95";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_TEXTS = "texts";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_TIMESTAMPS = "timestamps";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_VALUES = "values";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_WATERMARK = "watermark";
+	/** JSON name/object declaration */
 	public static final String JSON_NAME_STANDARD_DEVIATION = "standardDeviation";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_BATCH_ID = "batchId";
+	/** JSON name/object declaration */
+	public static final String JSON_NAME_BATCH_STATUS = "status";
 	/** JSON name/object declaration, the json name/database columns are somewhat ambiguously named, check the implementation for proper meanings */
 	@Deprecated
 	public static final String JSON_NAME_ALERT_TAG_ID = "tagId";
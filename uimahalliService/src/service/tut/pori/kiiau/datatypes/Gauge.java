@@ -61,6 +61,10 @@ public class Gauge {
 	private Double _maxIncrease = null;
 	@SerializedName(value=Definitions.JSON_NAME_CUMULATIVE)
 	private Boolean _cumulative = true;
+	@SerializedName(value=Definitions.JSON_NAME_CURSOR)
+	private String _cursor = null;
+	@SerializedName(value=Definitions.JSON_NAME_COLUMNS)
+	private GaugeValueColumns _columns = null;
 	
 	/**
 	 * Gauge value data type.
@@ -443,6 +447,36 @@ public class Gauge {
 	}
 
 	/**
+	 * @return the continuation token for retrieving the next page of values, or null if there are no more values
+	 */
+	public String getCursor() {
+		return _cursor;
+	}
+
+	/**
+	 * @param cursor the continuation token for retrieving the next page of values
+	 */
+	public void setCursor(String cursor) {
+		_cursor = cursor;
+	}
+
+	/**
+	 * @return the values in columnar representation, or null if the values are given as a list
+	 * @see #getValues()
+	 */
+	public GaugeValueColumns getColumns() {
+		return _columns;
+	}
+
+	/**
+	 * @param columns the values in columnar representation
+	 */
+	public void setColumns(GaugeValueColumns columns) {
+		_columns = columns;
+	}
+
+	/**
+	 * Numeric values are parsed, and the parsed values are set to the gauge values, see {@link GaugeValue#getNumericValue()}
 	 * 
 	 * @return validity status for this gauge and its values
 	 */
@@ -457,33 +491,31 @@ public class Gauge {
 			LOGGER.warn("Id was missing...");
 			return ValueValidity.INVALID;
 		}
-		try{
-			for(Iterator<GaugeValue> iter = _values.iterator(); iter.hasNext();){	// check the values for validity
-				GaugeValue gv = iter.next();
-				if(gv.getUpdatedTimestamp() == null){
-					return ValueValidity.INVALID;
-				}
-				String value = gv.getValue();
-				if(StringUtils.isBlank(value)){
-					return ValueValidity.INVALID;
-				}
-				switch(_dataType){
-					case DOUBLE:
-						Double.valueOf(value);
-						break;
-					case INTEGER:
-						Integer.valueOf(value);
-						break;
-					case STRING:
-						break;
-					default:
-						LOGGER.warn("Unhandled data type: "+_dataType.toDataTypeString());
+		for(Iterator<GaugeValue> iter = _values.iterator(); iter.hasNext();){	// check the values for validity
+			GaugeValue gv = iter.next();
+			if(gv.getUpdatedTimestamp() == null){
+				return ValueValidity.INVALID;
+			}
+			String value = gv.getValue();
+			if(StringUtils.isBlank(value)){
+				return ValueValidity.INVALID;
+			}
+			switch(_dataType){
+				case DOUBLE:
+				case INTEGER:
+					double numericValue = ValueParser.parse(value, _dataType); // always parsed, as a previously parsed value may have been parsed as another type
+					if(Double.isNaN(numericValue)){
+						LOGGER.warn("Invalid "+_dataType.toDataTypeString()+" value for gauge, id: "+_id);
 						return ValueValidity.INVALID;
-				}
+					}
+					gv.setNumericValue(numericValue);
+					break;
+				case STRING:
+					break;
+				default:
+					LOGGER.warn("Unhandled data type: "+_dataType.toDataTypeString());
+					return ValueValidity.INVALID;
 			}
-		}catch(NumberFormatException ex){
-			LOGGER.error(ex, ex);
-			return ValueValidity.INVALID;
 		}
 		return ValueValidity.VALID;
 	}
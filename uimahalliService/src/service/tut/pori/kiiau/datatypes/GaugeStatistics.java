@@ -15,6 +15,8 @@
  */
 package service.tut.pori.kiiau.datatypes;
 
+import java.util.List;
+
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -31,6 +33,18 @@ public class GaugeStatistics {
 	private Double _average = null;
 	@SerializedName(value=Definitions.JSON_NAME_VARIANCE)
 	private Double _variance = null;
+	@SerializedName(value=Definitions.JSON_NAME_MEDIAN)
+	private Double _median = null;
+	@SerializedName(value=Definitions.JSON_NAME_PERCENTILE_5)
+	private Double _percentile5 = null;
+	@SerializedName(value=Definitions.JSON_NAME_PERCENTILE_95)
+	private Double _percentile95 = null;
+	@SerializedName(value=Definitions.JSON_NAME_BUCKETS)
+	private List<BucketStatistics> _buckets = null;
+	@SerializedName(value=Definitions.JSON_NAME_CONSUMPTION)
+	private List<Consumption> _consumption = null;
+	@SerializedName(value=Definitions.JSON_NAME_TOTAL_CONSUMPTION)
+	private Double _totalConsumption = null;
 	
 	/**
 	 * @return the gaugeId
@@ -87,4 +101,88 @@ public class GaugeStatistics {
 	public void setVariance(Double variance) {
 		_variance = variance;
 	}
+
+	/**
+	 * @return the estimated median
+	 */
+	public Double getMedian() {
+		return _median;
+	}
+
+	/**
+	 * @param median the median to set
+	 */
+	public void setMedian(Double median) {
+		_median = median;
+	}
+
+	/**
+	 * @return the estimated 5th percentile
+	 */
+	public Double getPercentile5() {
+		return _percentile5;
+	}
+
+	/**
+	 * @param percentile5 the 5th percentile to set
+	 */
+	public void setPercentile5(Double percentile5) {
+		_percentile5 = percentile5;
+	}
+
+	/**
+	 * @return the estimated 95th percentile
+	 */
+	public Double getPercentile95() {
+		return _percentile95;
+	}
+
+	/**
+	 * @param percentile95 the 95th percentile to set
+	 */
+	public void setPercentile95(Double percentile95) {
+		_percentile95 = percentile95;
+	}
+
+	/**
+	 * @return the statistics per time bucket
+	 */
+	public List<BucketStatistics> getBuckets() {
+		return _buckets;
+	}
+
+	/**
+	 * @param buckets the buckets to set
+	 */
+	public void setBuckets(List<BucketStatistics> buckets) {
+		_buckets = buckets;
+	}
+
+	/**
+	 * @return the consumption per time bucket, only for cumulative gauges
+	 */
+	public List<Consumption> getConsumption() {
+		return _consumption;
+	}
+
+	/**
+	 * @param consumption the consumption to set
+	 */
+	public void setConsumption(List<Consumption> consumption) {
+		_consumption = consumption;
+	}
+
+	/**
+	 * @return the total consumption during the range, only for cumulative gauges
+	 */
+	public Double getTotalConsumption() {
+		return _totalConsumption;
+	}
+
+	/**
+	 * @param totalConsumption the totalConsumption to set
+	 */
+	public void setTotalConsumption(Double totalConsumption) {
+		_totalConsumption = totalConsumption;
+	}
 }
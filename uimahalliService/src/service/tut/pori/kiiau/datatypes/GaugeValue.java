@@ -27,6 +27,7 @@ import com.google.gson.annotations.SerializedName;
  */
 public class GaugeValue {
 	transient private Long _rowId = null;
+	transient private double _numericValue = Double.NaN;
 	@SerializedName(value=Definitions.JSON_NAME_VALUE)
 	private String _value = null;
 	@SerializedName(value=Definitions.JSON_NAME_DATE)
@@ -51,6 +52,18 @@ public class GaugeValue {
 		_updatedTimestamp = updated;
 	}
 	
+	/**
+	 * 
+	 * @param value
+	 * @param numericValue the value parsed as a number
+	 * @param updated
+	 */
+	public GaugeValue(String value, double numericValue, Date updated){
+		_value = value;
+		_numericValue = numericValue;
+		_updatedTimestamp = updated;
+	}
+	
 	/**
 	 * 
 	 * @param id
@@ -92,7 +105,34 @@ public class GaugeValue {
 			_value = null;
 		}else{
 			_value = value;
-		}		
+		}
+		_numericValue = Double.NaN;
+	}
+	
+	/**
+	 * 
+	 * @return the value parsed as a number or {@link Double#NaN} if the value has not been parsed or is not numeric
+	 * @see #hasNumericValue()
+	 */
+	public double getNumericValue() {
+		return _numericValue;
+	}
+
+	/**
+	 * Set the parsed numeric presentation of the value. Note that this does not change the actual value.
+	 * 
+	 * @param numericValue
+	 */
+	public void setNumericValue(double numericValue) {
+		_numericValue = numericValue;
+	}
+	
+	/**
+	 * 
+	 * @return true if the numeric value has been set
+	 */
+	public boolean hasNumericValue() {
+		return !Double.isNaN(_numericValue);
 	}
 
 	/**
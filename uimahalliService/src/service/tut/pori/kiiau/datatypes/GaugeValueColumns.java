@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import java.util.Date;
+import java.util.List;
+
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Columnar representation of the values of a gauge.
+ * 
+ * The values are given as parallel arrays: the creation times of the values as milliseconds since epoch, and the values as numbers
+ * (or as strings for gauges with {@link DataType#STRING} data type). Compared to a list of {@link GaugeValue} objects, the member names
+ * and the date formatting are not repeated for each value.
+ * 
+ * If delta encoding is used, the first timestamp is given as is, and the following timestamps as the difference to the previous timestamp.
+ * The values are never delta encoded, as the difference of two floating point numbers is not exact.
+ */
+public class GaugeValueColumns {
+	@SerializedName(value=Definitions.JSON_NAME_DELTA)
+	private boolean _delta = false;
+	@SerializedName(value=Definitions.JSON_NAME_TEXTS)
+	private String[] _texts = null;
+	@SerializedName(value=Definitions.JSON_NAME_TIMESTAMPS)
+	private long[] _timestamps = null;
+	@SerializedName(value=Definitions.JSON_NAME_VALUES)
+	private Double[] _values = null;
+
+	/**
+	 * required for serialization
+	 */
+	public GaugeValueColumns(){
+		// nothing needed
+	}
+
+	/**
+	 * 
+	 * @param values
+	 * @param dataType if {@link DataType#STRING}, the values are given as strings, otherwise as numbers
+	 * @param delta if true, the timestamps are delta encoded
+	 */
+	public GaugeValueColumns(List<GaugeValue> values, DataType dataType, boolean delta){
+		int count = values.size();
+		_delta = delta;
+		_timestamps = new long[count];
+		boolean text = (dataType == DataType.STRING);
+		if(text){
+			_texts = new String[count];
+		}else{
+			_values = new Double[count];
+		}
+		long previous = 0;
+		for(int i=0; i<count; ++i){
+			GaugeValue value = values.get(i);
+			Date updated = value.getUpdatedTimestamp();
+			long timestamp = (updated == null ? 0 : updated.getTime());
+			_timestamps[i] = (delta ? timestamp - previous : timestamp);
+			previous = timestamp;
+			if(text){
+				_texts[i] = value.getValue();
+			}else if(value.hasNumericValue()){
+				_values[i] = value.getNumericValue();
+			} // else leave as null
+		}
+	}
+
+	/**
+	 * @return true if the timestamps are delta encoded
+	 */
+	public boolean isDelta() {
+		return _delta;
+	}
+
+	/**
+	 * @return the timestamps
+	 */
+	public long[] getTimestamps() {
+		return _timestamps;
+	}
+
+	/**
+	 * @return the numeric values or null if the values are given as strings
+	 */
+	public Double[] getValues() {
+		return _values;
+	}
+
+	/**
+	 * @return the values as strings or null if the values are given as numbers
+	 */
+	public String[] getTexts() {
+		return _texts;
+	}
+}
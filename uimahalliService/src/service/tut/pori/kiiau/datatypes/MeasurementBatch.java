@@ -0,0 +1,89 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import com.google.gson.annotations.SerializedName;
+
+import core.tut.pori.http.JSONResponseData;
+
+/**
+ * Details of an asynchronously processed measurement upload.
+ * 
+ */
+public class MeasurementBatch extends JSONResponseData {
+	@SerializedName(value=Definitions.JSON_NAME_BATCH_ID)
+	private String _batchId = null;
+	@SerializedName(value=Definitions.JSON_NAME_BATCH_STATUS)
+	private BatchStatus _status = null;
+	
+	/**
+	 * Processing status of a batch.
+	 *
+	 */
+	public enum BatchStatus {
+		/** the batch has been accepted, but has not yet been written to the database */
+		QUEUED,
+		/** the batch has been written to the database */
+		COMMITTED,
+		/** writing the batch to the database failed */
+		FAILED
+	} // enum BatchStatus
+	
+	/**
+	 * required for serialization
+	 */
+	public MeasurementBatch(){
+		// nothing needed
+	}
+	
+	/**
+	 * 
+	 * @param batchId
+	 * @param status
+	 */
+	public MeasurementBatch(String batchId, BatchStatus status){
+		_batchId = batchId;
+		_status = status;
+	}
+
+	/**
+	 * @return the batchId
+	 */
+	public String getBatchId() {
+		return _batchId;
+	}
+
+	/**
+	 * @param batchId the batchId to set
+	 */
+	public void setBatchId(String batchId) {
+		_batchId = batchId;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public BatchStatus getStatus() {
+		return _status;
+	}
+
+	/**
+	 * @param status the status to set
+	 */
+	public void setStatus(BatchStatus status) {
+		_status = status;
+	}
+}
@@ -28,6 +28,8 @@ import core.tut.pori.http.JSONResponseData;
 public class Meters extends JSONResponseData {
 	@SerializedName(value=Definitions.JSON_NAME_METERS)
 	private List<Meter> _meters = null;
+	@SerializedName(value=Definitions.JSON_NAME_WATERMARK)
+	private String _watermark = null;
 	
 	/**
 	 * Status of a value validation.
@@ -64,6 +66,22 @@ public class Meters extends JSONResponseData {
 	public void setMeters(List<Meter> meters) {
 		_meters = meters;
 	}
+
+	/**
+	 * 
+	 * @return the synchronization watermark, which can be used for retrieving the values inserted after this response
+	 */
+	public String getWatermark() {
+		return _watermark;
+	}
+
+	/**
+	 * 
+	 * @param watermark
+	 */
+	public void setWatermark(String watermark) {
+		_watermark = watermark;
+	}
 	
 	/**
 	 * 
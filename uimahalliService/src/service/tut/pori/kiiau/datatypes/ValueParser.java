@@ -0,0 +1,184 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.datatypes;
+
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+
+/**
+ * Parser for numeric gauge values. 
+ * 
+ * Invalid values are reported by returning {@link Double#NaN} instead of throwing an exception, which makes validating large batches of (possibly invalid) values cheap.
+ * 
+ * Accepted formats:
+ * <ul>
+ *  <li>{@link DataType#INTEGER}: optional sign followed by decimal digits, the value must fit in a 32-bit signed integer</li>
+ *  <li>{@link DataType#DOUBLE}: optional sign, decimal digits with an optional fraction and an optional exponent, e.g. -1.5e3. The value must be finite.</li>
+ * </ul>
+ * Leading and trailing whitespace is ignored.
+ */
+public final class ValueParser {
+	/**
+	 * 
+	 */
+	private ValueParser(){
+		// nothing needed
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @param dataType
+	 * @return the value parsed as the given type or {@link Double#NaN} if the value was invalid or the type is not numeric
+	 */
+	public static double parse(String value, DataType dataType){
+		if(value == null || dataType == null){
+			return Double.NaN;
+		}
+		switch(dataType){
+			case DOUBLE:
+				return parseDouble(value);
+			case INTEGER:
+				return parseInteger(value);
+			default:
+				return Double.NaN;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @param dataType
+	 * @return the given numeric value formatted as a string of the given type, or null if the value is {@link Double#NaN} or the type is not numeric
+	 */
+	public static String format(double value, DataType dataType){
+		if(Double.isNaN(value) || dataType == null){
+			return null;
+		}
+		switch(dataType){
+			case DOUBLE:
+				return Double.toString(value);
+			case INTEGER:
+				return Long.toString((long) value);
+			default:
+				return null;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return the value or {@link Double#NaN} if the value was not a valid integer
+	 */
+	public static double parseInteger(String value){
+		int start = 0;
+		int end = value.length();
+		while(start < end && Character.isWhitespace(value.charAt(start))){
+			++start;
+		}
+		while(end > start && Character.isWhitespace(value.charAt(end - 1))){
+			--end;
+		}
+		if(start == end){
+			return Double.NaN;
+		}
+		
+		boolean negative = false;
+		char c = value.charAt(start);
+		if(c == '-' || c == '+'){
+			negative = (c == '-');
+			if(++start == end){
+				return Double.NaN;
+			}
+		}
+		long result = 0;
+		for(int i=start; i<end; ++i){
+			c = value.charAt(i);
+			if(c < '0' || c > '9'){
+				return Double.NaN;
+			}
+			result = result * 10 + (c - '0');
+			if(result > Integer.MAX_VALUE + 1L){ // overflow, the extra one allows Integer.MIN_VALUE
+				return Double.NaN;
+			}
+		}
+		if(negative){
+			result = -result;
+		}else if(result > Integer.MAX_VALUE){
+			return Double.NaN;
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return the value or {@link Double#NaN} if the value was not a valid finite decimal number
+	 */
+	public static double parseDouble(String value){
+		int start = 0;
+		int end = value.length();
+		while(start < end && Character.isWhitespace(value.charAt(start))){
+			++start;
+		}
+		while(end > start && Character.isWhitespace(value.charAt(end - 1))){
+			--end;
+		}
+		
+		int i = start;
+		if(i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')){
+			++i;
+		}
+		int digits = 0;
+		for(;i < end && isDigit(value.charAt(i)); ++i){
+			++digits;
+		}
+		if(i < end && value.charAt(i) == '.'){
+			for(++i; i < end && isDigit(value.charAt(i)); ++i){
+				++digits;
+			}
+		}
+		if(digits < 1){
+			return Double.NaN;
+		}
+		if(i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')){
+			if(++i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')){
+				++i;
+			}
+			int exponentDigits = 0;
+			for(;i < end && isDigit(value.charAt(i)); ++i){
+				++exponentDigits;
+			}
+			if(exponentDigits < 1){
+				return Double.NaN;
+			}
+		}
+		if(i != end){
+			return Double.NaN;
+		}
+		
+		double result = Double.parseDouble(value.substring(start, end)); // the syntax has been checked, this cannot throw
+		return (Double.isInfinite(result) ? Double.NaN : result);
+	}
+	
+	/**
+	 * 
+	 * @param c
+	 * @return true if the character is an ASCII digit
+	 */
+	private static boolean isDigit(char c){
+		return (c >= '0' && c <= '9');
+	}
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import service.tut.pori.kiiau.UimahalliDAO;
+import service.tut.pori.kiiau.datatypes.Definitions;
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.Option;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meters.ValueValidity;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import core.tut.pori.users.UserIdentity;
+import core.tut.pori.utils.StringUtils;
+
+/**
+ * Helper class for incrementally parsing and storing measurements in the {@link service.tut.pori.kiiau.datatypes.Meters} JSON format.
+ * 
+ * The gauge values are processed in chunks of the given size, the full object graph is never created. The memory use of the parser does not depend
+ * on the amount of values, provided that the input {@link Reader} is not backed by the whole data in memory. The input is read twice: first the whole input is validated
+ * with {@link #validate(Reader)} without writing anything, and then the values are written to the database in chunks with {@link #parse(Reader)}.
+ * Note that the chunks are written in separate transactions: invalid content never causes a partial write, but if writing a chunk fails (e.g. on a database error),
+ * the chunks preceding the failed chunk will remain in the database.
+ * 
+ * If a gauge object declares its values before its id, the values of that gauge are buffered until the id is known, at most chunk size values can be given before the id.
+ * 
+ * this class is NOT thread-safe
+ * 
+ */
+public class MeasurementStreamParser {
+	private static final Logger LOGGER = Logger.getLogger(MeasurementStreamParser.class);
+	private UserIdentity _authenticatedUser = null;
+	private int _chunkSize = 0;
+	private UimahalliDAO _dao = null;
+	private int _valueCount = 0;
+	private boolean _write = false;
+	
+	/**
+	 * 
+	 * @param authenticatedUser used to validate permissions to the parsed gauges
+	 * @param dao
+	 * @param chunkSize the maximum amount of gauge values kept in memory for a gauge, and written with a single transaction
+	 * @throws IllegalArgumentException on invalid chunk size
+	 */
+	public MeasurementStreamParser(UserIdentity authenticatedUser, UimahalliDAO dao, int chunkSize) throws IllegalArgumentException {
+		if(chunkSize < 1){
+			throw new IllegalArgumentException("Invalid chunk size: "+chunkSize);
+		}
+		_authenticatedUser = authenticatedUser;
+		_dao = dao;
+		_chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Validate the given input without writing anything to the database.
+	 * 
+	 * @param input
+	 * @return the amount of validated gauge values
+	 * @throws IllegalArgumentException on invalid input
+	 */
+	public int validate(Reader input) throws IllegalArgumentException {
+		return process(input, false);
+	}
+	
+	/**
+	 * Validate and write the gauge values of the given input. The input should have been validated with {@link #validate(Reader)}.
+	 * 
+	 * @param input
+	 * @return the amount of written gauge values
+	 * @throws IllegalArgumentException on invalid input
+	 */
+	public int parse(Reader input) throws IllegalArgumentException {
+		return process(input, true);
+	}
+	
+	/**
+	 * 
+	 * @param input
+	 * @param write if false, the values are only validated
+	 * @return the amount of processed gauge values
+	 * @throws IllegalArgumentException on invalid input
+	 */
+	private int process(Reader input, boolean write) throws IllegalArgumentException {
+		_valueCount = 0;
+		_write = write;
+		try(JsonReader reader = new JsonReader(input)){
+			reader.beginObject();
+			while(reader.hasNext()){
+				if(Definitions.JSON_NAME_METERS.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY){
+					reader.beginArray();
+					while(reader.hasNext()){
+						parseMeter(reader);
+					}
+					reader.endArray();
+				}else{
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IOException | IllegalStateException ex) { // IllegalStateException is thrown by JsonReader on unexpected tokens
+			LOGGER.error(ex, ex);
+			throw new IllegalArgumentException("Invalid measurement data.");
+		}
+		LOGGER.debug((write ? "Written" : "Validated")+" gauge values: "+_valueCount);
+		return _valueCount;
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 */
+	private void parseMeter(JsonReader reader) throws IOException {
+		reader.beginObject();
+		while(reader.hasNext()){
+			if(Definitions.JSON_NAME_GAUGES.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY){
+				reader.beginArray();
+				while(reader.hasNext()){
+					parseGauge(reader);
+				}
+				reader.endArray();
+			}else{
+				reader.skipValue(); // the meter details are not needed, the gauge ids identify the target gauges
+			}
+		}
+		reader.endObject();
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 */
+	@SuppressWarnings("deprecation")
+	private void parseGauge(JsonReader reader) throws IOException, IllegalArgumentException {
+		Gauge gauge = new Gauge();
+		boolean resolved = false;
+		int gaugeValueCount = 0;
+		reader.beginObject();
+		while(reader.hasNext()){
+			switch(reader.nextName()){
+				case Definitions.JSON_NAME_GAUGE_ID:
+					gauge.setId(reader.nextString());
+					resolved = resolve(gauge);
+					break;
+				case Definitions.JSON_NAME_OPTIONS:
+					if(reader.peek() == JsonToken.NULL){
+						reader.nextNull();
+					}else{
+						gauge.setOptionsString(reader.nextString());
+					}
+					break;
+				case Definitions.JSON_NAME_GAUGE_VALUES:
+					if(reader.peek() == JsonToken.NULL){
+						reader.nextNull();
+						break;
+					}
+					reader.beginArray();
+					while(reader.hasNext()){
+						gauge.addGaugeValue(parseGaugeValue(reader));
+						if(gauge.getValues().size() >= _chunkSize){
+							if(!resolved){ // the values cannot be validated without the id
+								throw new IllegalArgumentException("Too many gauge values before the gauge id, the maximum is "+_chunkSize);
+							}
+							gaugeValueCount += flush(gauge);
+						}
+					}
+					reader.endArray();
+					break;
+				default:
+					reader.skipValue();
+					break;
+			}
+		}
+		reader.endObject();
+		
+		if(!resolved){
+			throw new IllegalArgumentException("Gauge without id.");
+		}
+		if(Gauge.isValuesEmpty(gauge)){
+			if(gaugeValueCount < 1 && gauge.hasOption(Option.REQUIRED)){
+				throw new IllegalArgumentException("No values for required gauge, id: "+gauge.getId());
+			}
+		}else{
+			flush(gauge);
+		}
+	}
+	
+	/**
+	 * Check permissions and resolve data type for the given gauge
+	 * 
+	 * @param gauge
+	 * @return true on success
+	 * @throws IllegalArgumentException on failure
+	 */
+	private boolean resolve(Gauge gauge) throws IllegalArgumentException {
+		String gaugeId = gauge.getId();
+		if(!_dao.hasPermissions(_authenticatedUser, new HashSet<>(Arrays.asList(gaugeId)))){
+			throw new IllegalArgumentException("Bad gauge id: "+gaugeId);
+		}
+		if(!_dao.resolveDataTypes(Arrays.asList(gauge))){
+			throw new IllegalArgumentException("Bad gauge id: "+gaugeId);
+		}
+		return true;
+	}
+	
+	/**
+	 * validate and write (if writing is enabled) the current values of the gauge, and clear the value list
+	 * 
+	 * @param gauge
+	 * @return the amount of processed values
+	 * @throws IllegalArgumentException on invalid values
+	 */
+	private int flush(Gauge gauge) throws IllegalArgumentException {
+		if(gauge.hasValidValues() != ValueValidity.VALID){
+			throw new IllegalArgumentException("Bad values for gauge, id: "+gauge.getId());
+		}
+		int count = gauge.getValues().size();
+		if(_write){
+			_dao.addGaugeValues(gauge);
+		}
+		gauge.setValues(new ArrayList<GaugeValue>(_chunkSize));
+		_valueCount += count;
+		return count;
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @return the gauge value
+	 * @throws IOException
+	 */
+	private GaugeValue parseGaugeValue(JsonReader reader) throws IOException {
+		GaugeValue value = new GaugeValue();
+		reader.beginObject();
+		while(reader.hasNext()){
+			String name = reader.nextName();
+			if(reader.peek() == JsonToken.NULL){
+				reader.nextNull();
+				continue;
+			}
+			switch(name){
+				case Definitions.JSON_NAME_VALUE:
+					value.setValue(reader.nextString());
+					break;
+				case Definitions.JSON_NAME_DATE:
+					value.setUpdatedTimestamp(StringUtils.ISOStringToDate(reader.nextString()));
+					break;
+				default:
+					reader.skipValue();
+					break;
+			}
+		}
+		reader.endObject();
+		return value;
+	}
+}
@@ -24,7 +24,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.log4j.Logger;
 
-import service.tut.pori.kiiau.Definitions;
 import service.tut.pori.kiiau.UimahalliCore;
 import service.tut.pori.kiiau.datatypes.Alert;
 import service.tut.pori.kiiau.datatypes.Alert.AlertStatus;
@@ -33,7 +32,7 @@ import service.tut.pori.kiiau.datatypes.Gauge;
 import service.tut.pori.kiiau.datatypes.GaugeValue;
 import service.tut.pori.kiiau.datatypes.Meter;
 import service.tut.pori.kiiau.datatypes.Meters;
-import core.tut.pori.http.parameters.DataGroups;
+import service.tut.pori.kiiau.datatypes.ValueParser;
 import core.tut.pori.users.UserIdentity;
 
 /**
@@ -81,7 +80,7 @@ public class WatchLoggerParser {
 		tagId = StringUtils.replace(tagId, "\"", "");
 		
 		//retrieve meter from database, do access check at the same time
-		Meters meters = UimahalliCore.getMeasurements(authenticatedUser, new DataGroups(Definitions.DATA_GROUP_GAUGES), null, null, Arrays.asList(tagId));
+		Meters meters = UimahalliCore.getMeterDetails(authenticatedUser, Arrays.asList(tagId));
 		if(meters == null || meters.getMeters() == null || meters.getMeters().isEmpty()){
 			return null;	//not authorized
 		}
@@ -124,9 +123,12 @@ public class WatchLoggerParser {
 				throw new IllegalArgumentException("Failed to parse date: "+row[1]);
 			}
 			
-			GaugeValue tempValue = new GaugeValue(row[2], rowCreated);
+			double value = ValueParser.parseDouble(row[2]);
+			if(Double.isNaN(value)){
+				throw new IllegalArgumentException("Invalid temperature value: "+row[2]);
+			}
+			GaugeValue tempValue = new GaugeValue(row[2], value, rowCreated);
 			tGauge.addGaugeValue(tempValue);
-			double value = Double.parseDouble(tempValue.getValue());
 			if(value < lowestTemp){
 				lowestTemp = value;
 				lowestTempValue = tempValue;
@@ -135,9 +137,12 @@ public class WatchLoggerParser {
 				highestTempValue = tempValue;
 			}
 			
-			tempValue = new GaugeValue(row[3], rowCreated);
+			value = ValueParser.parseDouble(row[3]);
+			if(Double.isNaN(value)){
+				throw new IllegalArgumentException("Invalid humidity value: "+row[3]);
+			}
+			tempValue = new GaugeValue(row[3], value, rowCreated);
 			hGauge.addGaugeValue(tempValue);
-			value = Double.parseDouble(tempValue.getValue());
 			if(value < lowestHum){
 				lowestHum = value;
 				lowestHumValue = tempValue;
@@ -177,7 +182,7 @@ public class WatchLoggerParser {
 		if(lowestHumValue != null){
 			LOGGER.debug("Humidity value under min limit found.");
 			_lastLowHumidityAlert = new Alert();
-			_lastLowHumidityAlert.setGaugeId(tGauge.getId());
+			_lastLowHumidityAlert.setGaugeId(hGauge.getId());
 			_lastLowHumidityAlert.setTagId(meter.getId());
 			_lastLowHumidityAlert.setStatus(AlertStatus.NEW);
 			_lastLowHumidityAlert.setType(AlertType.LOW_HUMIDITY);
@@ -187,7 +192,7 @@ public class WatchLoggerParser {
 		if(highestHumValue != null){
 			LOGGER.debug("Humidity value over max limit found.");
 			_lastHighHumidityAlert = new Alert();
-			_lastHighHumidityAlert.setGaugeId(tGauge.getId());
+			_lastHighHumidityAlert.setGaugeId(hGauge.getId());
 			_lastHighHumidityAlert.setTagId(meter.getId());
 			_lastHighHumidityAlert.setStatus(AlertStatus.NEW);
 			_lastHighHumidityAlert.setType(AlertType.HIGH_HUMIDITY);
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static service.tut.pori.kiiau.TimeBucketTest.date;
+
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+
+import service.tut.pori.kiiau.datatypes.Consumption;
+
+/**
+ * Tests for {@link ConsumptionCalculator}.
+ * 
+ */
+public class ConsumptionCalculatorTest {
+	private static final double DELTA = 1e-9;
+
+	/**
+	 * The increase over a multi-day interval must be divided between the days in proportion to time.
+	 */
+	@Test
+	public void testIrregularInterval() {
+		ConsumptionCalculator calculator = new ConsumptionCalculator(TimeBucket.DAY, date(2014, Calendar.JANUARY, 1, 0, 0), date(2014, Calendar.JANUARY, 4, 0, 0));
+		calculator.add(100, date(2014, Calendar.JANUARY, 1, 0, 0));
+		calculator.add(130, date(2014, Calendar.JANUARY, 4, 0, 0));
+		List<Consumption> consumption = calculator.getConsumption();
+		assertEquals(3, consumption.size());
+		for(Consumption c : consumption){
+			assertEquals(10, c.getValue(), DELTA);
+		}
+		assertEquals(date(2014, Calendar.JANUARY, 2, 0, 0), consumption.get(1).getStart());
+	}
+
+	/**
+	 * Only the part of the interval within the range is counted.
+	 */
+	@Test
+	public void testReadingsOutsideRange() {
+		ConsumptionCalculator calculator = new ConsumptionCalculator(TimeBucket.DAY, date(2014, Calendar.JANUARY, 2, 0, 0), date(2014, Calendar.JANUARY, 3, 0, 0));
+		calculator.add(0, date(2014, Calendar.JANUARY, 1, 12, 0));
+		calculator.add(20, date(2014, Calendar.JANUARY, 3, 12, 0));
+		List<Consumption> consumption = calculator.getConsumption();
+		assertEquals(1, consumption.size());
+		assertEquals(10, consumption.get(0).getValue(), DELTA);
+	}
+
+	/**
+	 * Decreasing readings start a new series and readings with the same time as the previous are ignored.
+	 */
+	@Test
+	public void testResetAndDuplicate() {
+		ConsumptionCalculator calculator = new ConsumptionCalculator(TimeBucket.DAY, date(2014, Calendar.JANUARY, 1, 0, 0), date(2014, Calendar.JANUARY, 3, 0, 0));
+		calculator.add(500, date(2014, Calendar.JANUARY, 1, 0, 0));
+		calculator.add(510, date(2014, Calendar.JANUARY, 1, 12, 0));
+		calculator.add(999, date(2014, Calendar.JANUARY, 1, 12, 0)); // same time, ignored
+		calculator.add(5, date(2014, Calendar.JANUARY, 2, 0, 0)); // reset
+		calculator.add(12, date(2014, Calendar.JANUARY, 2, 12, 0));
+		List<Consumption> consumption = calculator.getConsumption();
+		assertEquals(2, consumption.size());
+		assertEquals(10, consumption.get(0).getValue(), DELTA);
+		assertEquals(7, consumption.get(1).getValue(), DELTA);
+	}
+
+	/**
+	 * Buckets without readings have no value, and a range without any readings gives no buckets.
+	 */
+	@Test
+	public void testUncovered() {
+		ConsumptionCalculator calculator = new ConsumptionCalculator(TimeBucket.DAY, date(2014, Calendar.JANUARY, 1, 0, 0), date(2014, Calendar.JANUARY, 3, 0, 0));
+		assertTrue(calculator.getConsumption().isEmpty());
+		calculator.add(1, date(2014, Calendar.JANUARY, 1, 0, 0));
+		calculator.add(2, date(2014, Calendar.JANUARY, 1, 6, 0));
+		List<Consumption> consumption = calculator.getConsumption();
+		assertEquals(2, consumption.size());
+		assertEquals(1, consumption.get(0).getValue(), DELTA);
+		assertNull(consumption.get(1).getValue());
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import service.tut.pori.kiiau.datatypes.Gauge;
+import service.tut.pori.kiiau.datatypes.Gauge.DataType;
+import service.tut.pori.kiiau.datatypes.GaugeValue;
+import service.tut.pori.kiiau.datatypes.Meter;
+import service.tut.pori.kiiau.datatypes.Meters;
+
+/**
+ * Tests for {@link Downsampler}.
+ * 
+ */
+public class DownsamplerTest {
+	/**
+	 * The first and the last value are retained, the order is preserved and a single peak is not lost.
+	 */
+	@Test
+	public void testRetainsEndsAndPeak() {
+		List<GaugeValue> values = new ArrayList<>();
+		for(int i=0; i<1000; ++i){
+			values.add(value(i, (i == 517 ? 1000 : Math.sin(i / 50.0))));
+		}
+		List<GaugeValue> sampled = Downsampler.largestTriangleThreeBuckets(values, 50);
+		assertEquals(50, sampled.size());
+		assertSame(values.get(0), sampled.get(0));
+		assertSame(values.get(999), sampled.get(49));
+		assertTrue(sampled.contains(values.get(517)));
+		for(int i=1; i<sampled.size(); ++i){
+			assertTrue(sampled.get(i - 1).getUpdatedTimestamp().before(sampled.get(i).getUpdatedTimestamp()));
+		}
+	}
+
+	/**
+	 * Series not exceeding the limit are returned as-is, values without numeric value are dropped otherwise.
+	 */
+	@Test
+	public void testShortSeries() {
+		List<GaugeValue> values = new ArrayList<>();
+		for(int i=0; i<5; ++i){
+			values.add(value(i, i));
+		}
+		assertSame(values, Downsampler.largestTriangleThreeBuckets(values, 5));
+		values.add(new GaugeValue("invalid", new Date(10000)));
+		List<GaugeValue> sampled = Downsampler.largestTriangleThreeBuckets(values, 5);
+		assertEquals(5, sampled.size());
+		assertEquals(values.subList(0, 5), sampled);
+	}
+
+	/**
+	 * Only the numeric gauges exceeding the limit are downsampled.
+	 */
+	@Test
+	public void testDownsampleMeters() {
+		Gauge numeric = new Gauge("numeric");
+		numeric.setDataType(DataType.DOUBLE);
+		Gauge text = new Gauge("text");
+		text.setDataType(DataType.STRING);
+		for(int i=0; i<100; ++i){
+			numeric.addGaugeValue(value(i, i % 7));
+			text.addGaugeValue(new GaugeValue("text"+i, new Date(i * 1000L)));
+		}
+		Meter meter = new Meter("meter");
+		meter.addGauge(numeric);
+		meter.addGauge(text);
+		List<Meter> meterList = new ArrayList<>();
+		meterList.add(meter);
+		Downsampler.downsample(Meters.getMeters(meterList), 10);
+		assertEquals(10, numeric.getValues().size());
+		assertEquals(100, text.getValues().size());
+	}
+
+	/**
+	 * Limits below the minimum must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidMaxPoints() {
+		Downsampler.downsample(null, Downsampler.MIN_POINTS - 1);
+	}
+
+	/**
+	 * 
+	 * @param second
+	 * @param numericValue
+	 * @return new value
+	 */
+	private static GaugeValue value(int second, double numericValue) {
+		return new GaugeValue(String.valueOf(numericValue), numericValue, new Date(second * 1000L));
+	}
+}
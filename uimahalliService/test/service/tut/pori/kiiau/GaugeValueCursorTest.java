@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GaugeValueCursor}.
+ * 
+ */
+public class GaugeValueCursorTest {
+	/**
+	 * A cursor converted to a token and back must be unchanged.
+	 */
+	@Test
+	public void testTokenRoundTrip() {
+		GaugeValueCursor cursor = new GaugeValueCursor(42, new Date(1400000000123L), 9876543210L);
+		GaugeValueCursor copy = GaugeValueCursor.fromToken(cursor.toToken());
+		assertEquals(cursor.getGaugeKey(), copy.getGaugeKey());
+		assertEquals(cursor.getRowCreated(), copy.getRowCreated());
+		assertEquals(cursor.getGaugeValueId(), copy.getGaugeValueId());
+	}
+
+	/**
+	 * The list conversion keeps the order and returns null for no tokens.
+	 */
+	@Test
+	public void testFromTokens() {
+		assertNull(GaugeValueCursor.fromTokens(null));
+		List<GaugeValueCursor> cursors = GaugeValueCursor.fromTokens(Arrays.asList(new GaugeValueCursor(1, new Date(1), 1).toToken(), new GaugeValueCursor(2, new Date(2), 2).toToken()));
+		assertEquals(2, cursors.size());
+		assertEquals(1, cursors.get(0).getGaugeKey());
+		assertEquals(2, cursors.get(1).getGaugeKey());
+	}
+
+	/**
+	 * Tokens with wrong amount of parts must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPartCount() {
+		GaugeValueCursor.fromToken("1.2");
+	}
+
+	/**
+	 * Tokens with non-numeric parts must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidNumber() {
+		GaugeValueCursor.fromToken("1.2.!");
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link QuantileSketch}.
+ * 
+ */
+public class QuantileSketchTest {
+	/**
+	 * The quantiles of a uniform series must be within the relative accuracy of the sketch.
+	 */
+	@Test
+	public void testQuantileAccuracy() {
+		QuantileSketch sketch = new QuantileSketch();
+		for(int i=1; i<=10000; ++i){
+			sketch.add(i);
+		}
+		assertEquals(10000, sketch.getCount());
+		assertRelative(5000, sketch.getQuantile(0.5));
+		assertRelative(9000, sketch.getQuantile(0.9));
+		assertRelative(9900, sketch.getQuantile(0.99));
+		assertRelative(1, sketch.getQuantile(0));
+		assertRelative(10000, sketch.getQuantile(1));
+	}
+
+	/**
+	 * Negative values and zero must be ordered before the positive values.
+	 */
+	@Test
+	public void testNegativeAndZeroValues() {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(-100);
+		sketch.add(0);
+		sketch.add(100);
+		assertRelative(-100, sketch.getQuantile(0));
+		assertEquals(0, sketch.getQuantile(0.5), 1e-9);
+		assertRelative(100, sketch.getQuantile(1));
+	}
+
+	/**
+	 * Invalid values are ignored.
+	 */
+	@Test
+	public void testInvalidValuesIgnored() {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(Double.NaN);
+		sketch.add(Double.POSITIVE_INFINITY);
+		assertEquals(0, sketch.getCount());
+	}
+
+	/**
+	 * Merging two sketches must equal a sketch of all the values.
+	 */
+	@Test
+	public void testMerge() {
+		Random random = new Random(1);
+		QuantileSketch all = new QuantileSketch();
+		QuantileSketch one = new QuantileSketch();
+		QuantileSketch two = new QuantileSketch();
+		for(int i=0; i<1000; ++i){
+			double value = random.nextGaussian() * 100;
+			all.add(value);
+			(i % 2 == 0 ? one : two).add(value);
+		}
+		one.merge(two);
+		assertEquals(all.getCount(), one.getCount());
+		for(double q = 0; q <= 1; q += 0.1){
+			assertEquals(all.getQuantile(q), one.getQuantile(q), 0);
+		}
+	}
+
+	/**
+	 * The serialized sketch must give the same quantiles as the original.
+	 */
+	@Test
+	public void testBytesRoundTrip() {
+		QuantileSketch sketch = new QuantileSketch();
+		for(int i=-500; i<=500; ++i){
+			sketch.add(i * 1.5);
+		}
+		QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+		assertEquals(sketch.getCount(), copy.getCount());
+		for(double q = 0; q <= 1; q += 0.05){
+			assertEquals(sketch.getQuantile(q), copy.getQuantile(q), 0);
+		}
+	}
+
+	/**
+	 * Truncated data must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testTruncatedBytes() {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(1);
+		sketch.add(2);
+		byte[] bytes = sketch.toBytes();
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		QuantileSketch.fromBytes(truncated);
+	}
+
+	/**
+	 * Quantiles outside of [0, 1] must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidQuantile() {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(1);
+		sketch.getQuantile(1.5);
+	}
+
+	/**
+	 * 
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertRelative(double expected, double actual) {
+		assertTrue("Expected "+expected+", got "+actual, Math.abs(actual - expected) <= Math.abs(expected) * QuantileSketch.RELATIVE_ACCURACY);
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SyncWatermark}.
+ * 
+ */
+public class SyncWatermarkTest {
+	/**
+	 * A watermark converted to a token and back must have the same positions.
+	 */
+	@Test
+	public void testTokenRoundTrip() {
+		SyncWatermark watermark = new SyncWatermark();
+		watermark.advance(1, 100);
+		watermark.advance(7, 123456789012L);
+		SyncWatermark copy = SyncWatermark.fromToken(watermark.toToken());
+		assertEquals(100, copy.getPosition(1));
+		assertEquals(123456789012L, copy.getPosition(7));
+		assertEquals(0, copy.getPosition(2));
+	}
+
+	/**
+	 * The positions never move backwards.
+	 */
+	@Test
+	public void testAdvance() {
+		SyncWatermark watermark = new SyncWatermark();
+		watermark.advance(1, 100);
+		watermark.advance(1, 50);
+		assertEquals(100, watermark.getPosition(1));
+	}
+
+	/**
+	 * The initial token denotes an empty watermark, and blank tokens no watermark.
+	 */
+	@Test
+	public void testInitialToken() {
+		assertEquals(SyncWatermark.INITIAL_TOKEN, new SyncWatermark().toToken());
+		assertEquals(0, SyncWatermark.fromToken(SyncWatermark.INITIAL_TOKEN).getPosition(1));
+		assertNull(SyncWatermark.fromToken(" "));
+	}
+
+	/**
+	 * Entries without a position must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidEntry() {
+		SyncWatermark.fromToken("1-2.3");
+	}
+
+	/**
+	 * Entries with non-numeric parts must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidNumber() {
+		SyncWatermark.fromToken("1-!");
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Tampere University of Technology, Pori Department
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package service.tut.pori.kiiau;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimeBucket}.
+ * 
+ */
+public class TimeBucketTest {
+	/**
+	 * The value strings must be accepted case-insensitively.
+	 */
+	@Test
+	public void testFromString() {
+		for(TimeBucket bucket : TimeBucket.values()){
+			assertEquals(bucket, TimeBucket.fromString(bucket.toValueString()));
+			assertEquals(bucket, TimeBucket.fromString(bucket.toValueString().toUpperCase()));
+		}
+	}
+
+	/**
+	 * Unknown values must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testFromStringInvalid() {
+		TimeBucket.fromString("fortnight");
+	}
+
+	/**
+	 * The start of a bucket must be aligned to the calendar.
+	 */
+	@Test
+	public void testGetStart() {
+		Date date = date(2014, Calendar.JANUARY, 15, 13, 45); // Wednesday
+		assertEquals(date(2014, Calendar.JANUARY, 15, 13, 0), TimeBucket.HOUR.getStart(date));
+		assertEquals(date(2014, Calendar.JANUARY, 15, 0, 0), TimeBucket.DAY.getStart(date));
+		assertEquals(date(2014, Calendar.JANUARY, 13, 0, 0), TimeBucket.WEEK.getStart(date));
+		assertEquals(date(2014, Calendar.JANUARY, 1, 0, 0), TimeBucket.MONTH.getStart(date));
+	}
+
+	/**
+	 * The first and the last bucket must be partial if the range is not aligned.
+	 */
+	@Test
+	public void testGetBoundaries() {
+		Date start = date(2014, Calendar.JANUARY, 15, 12, 0);
+		Date end = date(2014, Calendar.JANUARY, 17, 6, 0);
+		long[] expected = {
+			start.getTime(),
+			date(2014, Calendar.JANUARY, 16, 0, 0).getTime(),
+			date(2014, Calendar.JANUARY, 17, 0, 0).getTime(),
+			end.getTime()
+		};
+		assertArrayEquals(expected, TimeBucket.DAY.getBoundaries(start, end));
+	}
+
+	/**
+	 * A range ending before it starts must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetBoundariesInvalidRange() {
+		Date date = date(2014, Calendar.JANUARY, 15, 12, 0);
+		TimeBucket.DAY.getBoundaries(date, date);
+	}
+
+	/**
+	 * Ranges with too many buckets must be rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetBoundariesTooMany() {
+		TimeBucket.HOUR.getBoundaries(date(2000, Calendar.JANUARY, 1, 0, 0), date(2014, Calendar.JANUARY, 1, 0, 0));
+	}
+
+	/**
+	 * The bucket index is inclusive at the start and exclusive at the end of a bucket.
+	 */
+	@Test
+	public void testGetBucketIndex() {
+		long[] boundaries = {10, 20, 30, 40};
+		assertEquals(-1, TimeBucket.getBucketIndex(boundaries, 9));
+		assertEquals(0, TimeBucket.getBucketIndex(boundaries, 10));
+		assertEquals(0, TimeBucket.getBucketIndex(boundaries, 19));
+		assertEquals(1, TimeBucket.getBucketIndex(boundaries, 20));
+		assertEquals(2, TimeBucket.getBucketIndex(boundaries, 39));
+		assertEquals(-1, TimeBucket.getBucketIndex(boundaries, 40));
+	}
+
+	/**
+	 * 
+	 * @param year
+	 * @param month
+	 * @param day
+	 * @param hour
+	 * @param minute
+	 * @return the date in the default time zone
+	 */
+	static Date date(int year, int month, int day, int hour, int minute) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month, day, hour, minute);
+		return calendar.getTime();
+	}
+}